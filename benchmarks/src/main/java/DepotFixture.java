@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import bench.Depot;
+
+// The bench.Depot the JMH benchmarks run on. Lot capacities are SPACING apart, and every batched command targets
+// the capacity of an existing lot, drawn uniformly or with a Zipf skew towards the smallest lots.
+public class DepotFixture implements Depot {
+    private static final int SPACING = 10;
+
+    private final PlacementList placements = new PlacementList();
+    private ParkingLotManager manager;
+    private int[] capacities; // Argument of each batched command
+    private int[] deleted; // Distinct capacities for the delete batch
+    private int nextTruckID;
+
+    @Override
+    public void populate(String ledger, int lots, int trucksPerLot, double fullFraction, String skew, int batch,
+                         long seed) {
+        Random random = new Random(seed);
+        manager = new ParkingLotManager(EventSink.NONE, new HeapTruckStore(), ledger);
+        nextTruckID = 0;
+
+        for (int i = 0; i < lots; i++) {
+            manager.createParkingLot(capacityOf(i), trucksPerLot);
+        }
+        for (int i = 0; i < lots; i++) {
+            int trucks = random.nextDouble() < fullFraction ? trucksPerLot : trucksPerLot / 2;
+            for (int t = 0; t < trucks; t++) {
+                manager.truckAdder(nextTruckID++, capacityOf(i));
+            }
+            for (int t = 0; t < trucks / 2; t++) {
+                manager.findWaitingLot(capacityOf(i)).ready();
+            }
+        }
+
+        capacities = new int[batch];
+        if (skew.equals("uniform")) {
+            for (int i = 0; i < batch; i++) {
+                capacities[i] = capacityOf(random.nextInt(lots));
+            }
+        } else if (skew.equals("zipf")) {
+            // Lot i is drawn with weight 1 / (i + 1)
+            double[] cumulative = new double[lots];
+            double total = 0;
+            for (int i = 0; i < lots; i++) {
+                total += 1.0 / (i + 1);
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < batch; i++) {
+                int lot = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                capacities[i] = capacityOf(lot < 0 ? -lot - 1 : lot);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown skew: " + skew);
+        }
+
+        // A partial shuffle picks distinct lots to delete
+        int[] order = new int[lots];
+        for (int i = 0; i < lots; i++) {
+            order[i] = i;
+        }
+        deleted = new int[Math.min(batch, lots)];
+        for (int i = 0; i < deleted.length; i++) {
+            int j = i + random.nextInt(lots - i);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+            deleted[i] = capacityOf(order[i]);
+        }
+    }
+
+    private static int capacityOf(int lot) {
+        return (lot + 1) * SPACING;
+    }
+
+    @Override
+    public int addTrucks() {
+        int checksum = 0;
+        for (int capacity : capacities) {
+            checksum += manager.truckAdder(nextTruckID++, capacity);
+        }
+        return checksum;
+    }
+
+    @Override
+    public int readies() {
+        int checksum = 0;
+        for (int capacity : capacities) {
+            ParkingLotManager.ParkingLot lot = manager.findWaitingLot(capacity);
+            checksum += lot == null ? -1 : lot.ready();
+        }
+        return checksum;
+    }
+
+    @Override
+    public int loads() {
+        int checksum = 0;
+        for (int capacity : capacities) {
+            placements.clear();
+            manager.load(capacity, 2 * capacity, placements);
+            checksum += placements.size();
+        }
+        return checksum;
+    }
+
+    @Override
+    public int counts() {
+        int checksum = 0;
+        for (int capacity : capacities) {
+            checksum += manager.countTrucks(capacity);
+        }
+        return checksum;
+    }
+
+    @Override
+    public int deletes() {
+        for (int capacity : deleted) {
+            manager.deleteParkingLot(capacity);
+        }
+        return deleted.length;
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import bench.Replay;
+
+// The bench.Replay the JMH benchmarks run on: the file is decoded once into opcode and argument arrays, and every
+// replay runs them through a CommandExecutor into a sink that only folds the results into a checksum.
+public class ReplayFixture implements Replay {
+    private int[] opcodes = new int[1024];
+    private int[] args0 = new int[1024];
+    private int[] args1 = new int[1024];
+    private int count;
+
+    @Override
+    public void decode(String file) throws IOException {
+        if (!new File(file).exists() && new File("..", file).exists()) {
+            file = new File("..", file).getPath();
+        }
+        count = 0;
+        try (LineCommandReader reader = new LineCommandReader(file)) {
+            while (reader.next()) {
+                int opcode = reader.opcode();
+                if (opcode == Opcode.UNKNOWN) {
+                    continue;
+                }
+                if (count == opcodes.length) {
+                    opcodes = Arrays.copyOf(opcodes, 2 * count);
+                    args0 = Arrays.copyOf(args0, 2 * count);
+                    args1 = Arrays.copyOf(args1, 2 * count);
+                }
+                opcodes[count] = opcode;
+                args0[count] = Opcode.arity(opcode) > 0 ? reader.arg(0) : 0;
+                args1[count] = Opcode.arity(opcode) > 1 ? reader.arg(1) : 0;
+                count++;
+            }
+        }
+    }
+
+    @Override
+    public int replay(String ledger) throws IOException {
+        ChecksumSink sink = new ChecksumSink();
+        CommandExecutor executor = new CommandExecutor(new ParkingLotManager(EventSink.NONE, new HeapTruckStore(), ledger));
+        for (int i = 0; i < count; i++) {
+            executor.execute(opcodes[i], args0[i], args1[i], sink);
+        }
+        return sink.checksum;
+    }
+
+    private static final class ChecksumSink implements ResultSink {
+        int checksum;
+
+        @Override
+        public void value(int value) {
+            checksum = 31 * checksum + value;
+        }
+
+        @Override
+        public void pair(int first, int second) {
+            checksum = 31 * (31 * checksum + first) + second;
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+            for (int i = 0; i < placements.size(); i++) {
+                pair(placements.truckID(i), placements.capacity(i));
+            }
+        }
+
+        @Override
+        public void text(String line) {
+            checksum = 31 * checksum + line.hashCode();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package bench;
+
+// A pre-populated ParkingLotManager and a batch of command arguments for it. The simulator's classes are in the
+// default package, which JMH benchmarks cannot be and named packages cannot import, so the benchmarks reach them
+// through this interface and the default-package DepotFixture that implements it.
+public interface Depot {
+
+    // Builds a fresh manager on the given --ledger engine with `lots` lots of `trucksPerLot` truck slots. A
+    // `fullFraction` of the lots is filled to the limit and the rest to half, and half of every lot's trucks are
+    // made ready. The next `batch` commands target capacities drawn with `skew`: "uniform" or "zipf".
+    void populate(String ledger, int lots, int trucksPerLot, double fullFraction, String skew, int batch, long seed);
+
+    // Each runs the batch with one command and returns a checksum of the results
+    int addTrucks();
+
+    int readies();
+
+    int loads();
+
+    int counts();
+
+    int deletes();
+
+    static Depot create() {
+        return Fixtures.create("DepotFixture", Depot.class);
+    }
+}
@@ -0,0 +1,15 @@
+package bench;
+
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    // Instantiates a default-package class by name; only setup code goes through reflection
+    static <T> T create(String className, Class<T> type) {
+        try {
+            return Class.forName(className).asSubclass(type).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load " + className, e);
+        }
+    }
+}
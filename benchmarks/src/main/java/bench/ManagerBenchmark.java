@@ -0,0 +1,89 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Throughput of each ParkingLotManager command on a pre-populated depot. Every command changes the depot, so each
+// invocation runs a batch of BATCH commands on a depot rebuilt beforehand (outside the measurement); scores are
+// commands per second. The rebuild runs on the benchmark thread, so -prof gc counts its allocations too; the
+// baseline benchmark runs no commands, and its gc.alloc.rate.norm is the share to subtract from the others.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManagerBenchmark {
+    private static final int BATCH = 1000;
+
+    @Param({"1000", "20000"})
+    public int lots;
+
+    @Param({"8"})
+    public int trucksPerLot;
+
+    @Param({"0.0", "0.9"})
+    public double fullFraction;
+
+    @Param({"uniform", "zipf"})
+    public String skew;
+
+    @Param({"avl"})
+    public String ledger;
+
+    private final Depot depot = Depot.create();
+
+    @Setup(Level.Invocation)
+    public void rebuild() {
+        depot.populate(ledger, lots, trucksPerLot, fullFraction, skew, BATCH, 42);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int baseline() {
+        return 0;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int truckAdder() {
+        return depot.addTrucks();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int ready() {
+        return depot.readies();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int load() {
+        return depot.loads();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int countTrucks() {
+        return depot.counts();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int delete() {
+        return depot.deletes();
+    }
+}
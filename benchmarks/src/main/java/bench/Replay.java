@@ -0,0 +1,17 @@
+package bench;
+
+import java.io.IOException;
+
+// Replays a whole command file against a fresh ParkingLotManager, through the default-package ReplayFixture
+public interface Replay {
+
+    // Decodes the file once, so the replays measure execution and not tokenizing
+    void decode(String file) throws IOException;
+
+    // Runs every decoded command on a new manager and returns a checksum of the output
+    int replay(String ledger) throws IOException;
+
+    static Replay create() {
+        return Fixtures.create("ReplayFixture", Replay.class);
+    }
+}
@@ -0,0 +1,46 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole-file replays of the sample inputs, in replays per second. Files are looked up from the working directory
+// and its parent, so other inputs (the large ones, generated traces) can be passed with -p file=<path>.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({"type1-small.txt", "type2-small.txt", "type3-small.txt", "type4-small.txt", "type5-small.txt"})
+    public String file;
+
+    @Param({"avl"})
+    public String ledger;
+
+    private final Replay replay = Replay.create();
+
+    @Setup(Level.Trial)
+    public void decode() throws IOException {
+        replay.decode(file);
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        return replay.replay(ledger);
+    }
+}
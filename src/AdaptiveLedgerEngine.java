@@ -0,0 +1,125 @@
+// Runs on a BitsetLedgerEngine while every key fits a bounded universe, and rebuilds itself when one does not:
+// into a bitset twice as large as needed while the universe stays under MAX_UNIVERSE, and into an IntAvlTree
+// once a key is negative or too large for dense arrays. Node handles change when the engine is rebuilt, which
+// only happens on insert.
+public class AdaptiveLedgerEngine<V> implements LedgerEngine<V> {
+    static final int INITIAL_UNIVERSE = 1 << 12;
+    static final int MAX_UNIVERSE = 1 << 20;
+
+    private LedgerEngine<V> engine = new BitsetLedgerEngine<>(INITIAL_UNIVERSE);
+
+    // Whether the entries still live in a bitset
+    public boolean isBitset() {
+        return engine instanceof BitsetLedgerEngine;
+    }
+
+    @Override
+    public int insert(int key, V value, int weight) {
+        if (engine instanceof BitsetLedgerEngine && !((BitsetLedgerEngine<V>) engine).fits(key)) {
+            if (key >= 0 && key < MAX_UNIVERSE) {
+                rebuild(new BitsetLedgerEngine<>(Math.min(MAX_UNIVERSE, Integer.highestOneBit(key) << 1)));
+            } else {
+                rebuild(new IntAvlTree<>());
+            }
+        }
+        return engine.insert(key, value, weight);
+    }
+
+    private void rebuild(LedgerEngine<V> target) {
+        for (int node = engine.first(); node != NIL; node = engine.successor(node)) {
+            target.insert(engine.key(node), engine.value(node), engine.weight(node));
+        }
+        engine = target;
+    }
+
+    @Override
+    public int size() {
+        return engine.size();
+    }
+
+    @Override
+    public int find(int key) {
+        return engine.find(key);
+    }
+
+    @Override
+    public int first() {
+        return engine.first();
+    }
+
+    @Override
+    public int floor(int key) {
+        return engine.floor(key);
+    }
+
+    @Override
+    public int lower(int key) {
+        return engine.lower(key);
+    }
+
+    @Override
+    public int ceiling(int key) {
+        return engine.ceiling(key);
+    }
+
+    @Override
+    public int higher(int key) {
+        return engine.higher(key);
+    }
+
+    @Override
+    public int successor(int node) {
+        return engine.successor(node);
+    }
+
+    @Override
+    public int key(int node) {
+        return engine.key(node);
+    }
+
+    @Override
+    public V value(int node) {
+        return engine.value(node);
+    }
+
+    @Override
+    public int weight(int node) {
+        return engine.weight(node);
+    }
+
+    @Override
+    public void setWeight(int node, int weight) {
+        engine.setWeight(node, weight);
+    }
+
+    @Override
+    public V delete(int key) {
+        return engine.delete(key);
+    }
+
+    @Override
+    public int sumGreater(int key) {
+        return engine.sumGreater(key);
+    }
+
+    @Override
+    public int sumBetween(int low, int high) {
+        return engine.sumBetween(low, high);
+    }
+
+    // The counters of the current engine; a rebuild starts them over
+    @Override
+    public long rotations() {
+        return engine.rotations();
+    }
+
+    @Override
+    public long aggregateUpdates() {
+        return engine.aggregateUpdates();
+    }
+
+    @Override
+    public long aggregateSteps() {
+        return engine.aggregateSteps();
+    }
+}
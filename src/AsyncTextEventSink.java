@@ -0,0 +1,98 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Semaphore;
+
+// Logs events as the original console messages, formatted and written on a background thread. The simulation
+// thread only copies three ints into an SpscRing, so it never builds a String or takes the console lock.
+public class AsyncTextEventSink extends EventRecorder {
+    private static final int DRAIN = -2; // Record type that asks the writer to flush and report back
+
+    private final SpscRing ring = new SpscRing(1 << 16);
+    private final Semaphore drained = new Semaphore(0);
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private volatile IOException failure;
+    private boolean closed;
+
+    public AsyncTextEventSink(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out), 1 << 16);
+        this.thread = new Thread(this::writeEvents, "event-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    protected void record(int type, int a, int b) {
+        ring.put(type);
+        ring.put(a);
+        ring.put(b);
+        ring.publish();
+    }
+
+    private void writeEvents() {
+        try {
+            int type;
+            while ((type = ring.take()) != SpscRing.END) {
+                if (type == DRAIN) {
+                    ring.release();
+                    writer.flush();
+                    drained.release();
+                    continue;
+                }
+                int a = ring.take();
+                int b = ring.take();
+                ring.release();
+                writer.write(describe(type, a, b));
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            failure = e;
+            ring.abort();
+        } finally {
+            drained.release(); // A drain waiting on a writer that stopped must not wait forever
+        }
+    }
+
+    // Waits until every event recorded so far has been written, and leaves the log running
+    @Override
+    public void drain() throws IOException {
+        if (closed) {
+            return;
+        }
+        ring.put(DRAIN);
+        ring.publish();
+        try {
+            drained.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the event log", e);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    // Waits until every event recorded so far has been written
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ring.put(SpscRing.END);
+        ring.publish();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the event log", e);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.Arrays;
+
+// Ledger engine on a B+tree: entries sit sorted in leaves of up to ORDER keys, chained both ways for in-order
+// walks, and every node keeps the total weight beneath it so a weight sum is one root-to-leaf descent. A node
+// handle is the leaf's id times ORDER plus the entry's position, so it moves whenever a leaf shifts. Deletes
+// drop leaves and inner nodes once they are empty but never merge underfull ones; the height only follows the
+// largest size the tree has reached.
+public class BPlusTreeLedgerEngine<V> implements LedgerEngine<V> {
+    private static final int ORDER = 32; // Entries per leaf and children per inner node
+    private static final int SHIFT = 5; // log2(ORDER)
+
+    private abstract static class Node {
+        Inner parent;
+        int size;
+        int sum;
+    }
+
+    private static final class Leaf extends Node {
+        final int id;
+        final int[] keys = new int[ORDER];
+        final Object[] values = new Object[ORDER];
+        final int[] weights = new int[ORDER];
+        Leaf prev;
+        Leaf next;
+
+        Leaf(int id) {
+            this.id = id;
+        }
+    }
+
+    // keys[i] is the smallest key that may live under children[i + 1]
+    private static final class Inner extends Node {
+        final int[] keys = new int[ORDER - 1];
+        final Node[] children = new Node[ORDER];
+    }
+
+    private Leaf[] leaves = new Leaf[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int highWater;
+
+    private Node root = newLeaf();
+    private int size;
+
+    // Work counters, see LedgerEngine
+    private long aggregateUpdates;
+    private long aggregateSteps;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int find(int key) {
+        Leaf leaf = leafFor(key);
+        int pos = search(leaf, key);
+        return pos < leaf.size && leaf.keys[pos] == key ? handle(leaf, pos) : NIL;
+    }
+
+    @Override
+    public int first() {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[0];
+        }
+        return node.size == 0 ? NIL : handle((Leaf) node, 0);
+    }
+
+    @Override
+    public int floor(int key) {
+        return key == Integer.MAX_VALUE ? last() : lower(key + 1);
+    }
+
+    @Override
+    public int lower(int key) {
+        Leaf leaf = leafFor(key);
+        int pos = search(leaf, key) - 1;
+        if (pos >= 0) {
+            return handle(leaf, pos);
+        }
+        return leaf.prev == null ? NIL : handle(leaf.prev, leaf.prev.size - 1);
+    }
+
+    @Override
+    public int ceiling(int key) {
+        Leaf leaf = leafFor(key);
+        int pos = search(leaf, key);
+        if (pos < leaf.size) {
+            return handle(leaf, pos);
+        }
+        return leaf.next == null ? NIL : handle(leaf.next, 0);
+    }
+
+    @Override
+    public int higher(int key) {
+        return key == Integer.MAX_VALUE ? NIL : ceiling(key + 1);
+    }
+
+    @Override
+    public int successor(int node) {
+        Leaf leaf = leaves[node >>> SHIFT];
+        int pos = (node & (ORDER - 1)) + 1;
+        if (pos < leaf.size) {
+            return node + 1;
+        }
+        return leaf.next == null ? NIL : handle(leaf.next, 0);
+    }
+
+    @Override
+    public int key(int node) {
+        return leaves[node >>> SHIFT].keys[node & (ORDER - 1)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V value(int node) {
+        return (V) leaves[node >>> SHIFT].values[node & (ORDER - 1)];
+    }
+
+    @Override
+    public int weight(int node) {
+        return leaves[node >>> SHIFT].weights[node & (ORDER - 1)];
+    }
+
+    @Override
+    public void setWeight(int node, int weight) {
+        Leaf leaf = leaves[node >>> SHIFT];
+        int pos = node & (ORDER - 1);
+        aggregateUpdates++;
+        aggregateSteps += addToSums(leaf, weight - leaf.weights[pos]);
+        leaf.weights[pos] = weight;
+    }
+
+    @Override
+    public long aggregateUpdates() {
+        return aggregateUpdates;
+    }
+
+    @Override
+    public long aggregateSteps() {
+        return aggregateSteps;
+    }
+
+    @Override
+    public int insert(int key, V value, int weight) {
+        Leaf leaf = leafFor(key);
+        int pos = search(leaf, key);
+        if (pos < leaf.size && leaf.keys[pos] == key) {
+            return NIL;
+        }
+        int tail = leaf.size - pos;
+        System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, tail);
+        System.arraycopy(leaf.values, pos, leaf.values, pos + 1, tail);
+        System.arraycopy(leaf.weights, pos, leaf.weights, pos + 1, tail);
+        leaf.keys[pos] = key;
+        leaf.values[pos] = value;
+        leaf.weights[pos] = weight;
+        leaf.size++;
+        addToSums(leaf, weight);
+        size++;
+
+        if (leaf.size < ORDER) {
+            return handle(leaf, pos);
+        }
+        Leaf right = split(leaf);
+        return pos < leaf.size ? handle(leaf, pos) : handle(right, pos - leaf.size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V delete(int key) {
+        Leaf leaf = leafFor(key);
+        int pos = search(leaf, key);
+        if (pos == leaf.size || leaf.keys[pos] != key) {
+            return null;
+        }
+        V removed = (V) leaf.values[pos];
+        addToSums(leaf, -leaf.weights[pos]);
+        int tail = leaf.size - pos - 1;
+        System.arraycopy(leaf.keys, pos + 1, leaf.keys, pos, tail);
+        System.arraycopy(leaf.values, pos + 1, leaf.values, pos, tail);
+        System.arraycopy(leaf.weights, pos + 1, leaf.weights, pos, tail);
+        leaf.size--;
+        leaf.values[leaf.size] = null;
+        size--;
+
+        if (leaf.size == 0 && leaf != root) {
+            if (leaf.prev != null) {
+                leaf.prev.next = leaf.next;
+            }
+            if (leaf.next != null) {
+                leaf.next.prev = leaf.prev;
+            }
+            freeLeaf(leaf);
+            detach(leaf);
+        }
+        return removed;
+    }
+
+    @Override
+    public int sumGreater(int key) {
+        if (key == Integer.MAX_VALUE) {
+            return 0;
+        }
+        return root.sum - weightBelow(key + 1);
+    }
+
+    @Override
+    public int sumBetween(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        int upTo = high == Integer.MAX_VALUE ? root.sum : weightBelow(high + 1);
+        return upTo - weightBelow(low);
+    }
+
+    // Total weight of the entries with keys < key, summed on the way down
+    private int weightBelow(int key) {
+        int sum = 0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int child = route(inner, key);
+            for (int i = 0; i < child; i++) {
+                sum += inner.children[i].sum;
+            }
+            node = inner.children[child];
+        }
+        Leaf leaf = (Leaf) node;
+        for (int i = 0; i < leaf.size && leaf.keys[i] < key; i++) {
+            sum += leaf.weights[i];
+        }
+        return sum;
+    }
+
+    private int last() {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[node.size - 1];
+        }
+        return node.size == 0 ? NIL : handle((Leaf) node, node.size - 1);
+    }
+
+    private Leaf leafFor(int key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[route(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    // Child of the inner node whose key range holds the key
+    private static int route(Inner inner, int key) {
+        int low = 0;
+        int high = inner.size - 1; // Number of separators
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key < inner.keys[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // First position in the leaf with a key >= key
+    private static int search(Leaf leaf, int key) {
+        int low = 0;
+        int high = leaf.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (leaf.keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Returns how many nodes were updated
+    private static int addToSums(Node node, int delta) {
+        int steps = 0;
+        for (; node != null; node = node.parent) {
+            node.sum += delta;
+            steps++;
+        }
+        return steps;
+    }
+
+    private static int childIndex(Inner parent, Node child) {
+        int i = 0;
+        while (parent.children[i] != child) {
+            i++;
+        }
+        return i;
+    }
+
+    // Moves the upper half of a full leaf into a new right sibling and returns it
+    private Leaf split(Leaf leaf) {
+        Leaf right = newLeaf();
+        int half = ORDER / 2;
+        right.size = ORDER - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+        System.arraycopy(leaf.values, half, right.values, 0, right.size);
+        System.arraycopy(leaf.weights, half, right.weights, 0, right.size);
+        Arrays.fill(leaf.values, half, ORDER, null);
+        leaf.size = half;
+        for (int i = 0; i < right.size; i++) {
+            right.sum += right.weights[i];
+        }
+        leaf.sum -= right.sum;
+
+        right.prev = leaf;
+        right.next = leaf.next;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        attach(leaf, right, right.keys[0]);
+        return right;
+    }
+
+    // Hangs a new right sibling next to a node that was just split, splitting parents that fill up
+    private void attach(Node left, Node right, int separator) {
+        Inner parent = left.parent;
+        if (parent == null) {
+            parent = new Inner();
+            parent.children[0] = left;
+            parent.size = 1;
+            parent.sum = left.sum + right.sum;
+            left.parent = parent;
+            root = parent;
+        }
+        int i = childIndex(parent, left) + 1;
+        System.arraycopy(parent.children, i, parent.children, i + 1, parent.size - i);
+        System.arraycopy(parent.keys, i - 1, parent.keys, i, parent.size - i);
+        parent.children[i] = right;
+        parent.keys[i - 1] = separator;
+        parent.size++;
+        right.parent = parent;
+        if (parent.size < ORDER) {
+            return;
+        }
+
+        // Split the inner node; the middle separator moves up
+        Inner sibling = new Inner();
+        int half = ORDER / 2;
+        sibling.size = ORDER - half;
+        int up = parent.keys[half - 1];
+        System.arraycopy(parent.children, half, sibling.children, 0, sibling.size);
+        System.arraycopy(parent.keys, half, sibling.keys, 0, sibling.size - 1);
+        Arrays.fill(parent.children, half, ORDER, null);
+        parent.size = half;
+        for (int c = 0; c < sibling.size; c++) {
+            sibling.children[c].parent = sibling;
+            sibling.sum += sibling.children[c].sum;
+        }
+        parent.sum -= sibling.sum;
+        attach(parent, sibling, up);
+    }
+
+    // Unlinks an empty node from its parent, dropping parents that empty out and collapsing a one-child root
+    private void detach(Node node) {
+        Inner parent = node.parent;
+        int i = childIndex(parent, node);
+        System.arraycopy(parent.children, i + 1, parent.children, i, parent.size - i - 1);
+        if (parent.size > 1) {
+            int s = i == 0 ? 0 : i - 1;
+            System.arraycopy(parent.keys, s + 1, parent.keys, s, parent.size - s - 2);
+        }
+        parent.size--;
+        parent.children[parent.size] = null;
+
+        if (parent.size == 0 && parent != root) {
+            detach(parent);
+        } else if (parent == root && parent.size == 1) {
+            root = parent.children[0];
+            root.parent = null;
+        }
+    }
+
+    private int handle(Leaf leaf, int pos) {
+        return (leaf.id << SHIFT) | pos;
+    }
+
+    private Leaf newLeaf() {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (highWater == leaves.length) {
+                leaves = Arrays.copyOf(leaves, 2 * leaves.length);
+            }
+            id = highWater++;
+        }
+        Leaf leaf = new Leaf(id);
+        leaves[id] = leaf;
+        return leaf;
+    }
+
+    private void freeLeaf(Leaf leaf) {
+        leaves[leaf.id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, 2 * freeIds.length);
+        }
+        freeIds[freeCount++] = leaf.id;
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Records events to a compact binary file: a header, then per event a one-byte type followed by its two
+// arguments as zigzag varints. EventRecorder.describe turns a record back into its console message.
+public class BinaryEventRecorder extends EventRecorder {
+    static final byte[] MAGIC = {'E', 'V', 'T', 1};
+    private static final int MAX_RECORD = 1 + 2 * Varint.MAX_BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    public BinaryEventRecorder(Path eventFile) throws IOException {
+        this.channel = FileChannel.open(eventFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.put(MAGIC);
+    }
+
+    @Override
+    protected void record(int type, int a, int b) {
+        if (buffer.remaining() < MAX_RECORD) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        buffer.put((byte) type);
+        Varint.putSigned(buffer, a);
+        Varint.putSigned(buffer, b);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void drain() throws IOException {
+        if (channel.isOpen()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
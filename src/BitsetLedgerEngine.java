@@ -0,0 +1,203 @@
+// Ledger engine for keys in a bounded universe [0, universe). Values and weights sit in dense arrays indexed by
+// the key itself, so a key is its own node handle. Which keys are present is kept in a 64-ary hierarchical
+// bitset (van Emde Boas style): level 0 has one bit per key, and every level above has one bit per non-empty
+// word of the level below. Predecessor and successor climb to the first level with a candidate bit and drop
+// back down, one numberOfLeadingZeros or numberOfTrailingZeros per level, four levels for 16M keys.
+public class BitsetLedgerEngine<V> implements LedgerEngine<V> {
+    private final int universe;
+    private final long[][] levels;
+    private final Object[] values;
+    private final int[] weights;
+    private final CapacityIndex sums = new CapacityIndex(); // Weights indexed by key
+    private int size;
+
+    public BitsetLedgerEngine(int universe) {
+        this.universe = universe;
+        this.values = new Object[universe];
+        this.weights = new int[universe];
+
+        int depth = 1;
+        for (int words = (universe + 63) >>> 6; words > 1; words = (words + 63) >>> 6) {
+            depth++;
+        }
+        levels = new long[depth][];
+        int bits = universe;
+        for (int level = 0; level < depth; level++) {
+            levels[level] = new long[(bits + 63) >>> 6];
+            bits = levels[level].length;
+        }
+    }
+
+    // Whether the key can be stored at all
+    public boolean fits(int key) {
+        return key >= 0 && key < universe;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int find(int key) {
+        return fits(key) && contains(key) ? key : NIL;
+    }
+
+    @Override
+    public int first() {
+        return next(0);
+    }
+
+    @Override
+    public int floor(int key) {
+        return key < 0 ? NIL : previous(Math.min(key, universe - 1));
+    }
+
+    @Override
+    public int lower(int key) {
+        return key <= 0 ? NIL : floor(key - 1);
+    }
+
+    @Override
+    public int ceiling(int key) {
+        return key >= universe ? NIL : next(Math.max(key, 0));
+    }
+
+    @Override
+    public int higher(int key) {
+        return key >= universe - 1 ? NIL : ceiling(key + 1);
+    }
+
+    @Override
+    public int successor(int node) {
+        return higher(node);
+    }
+
+    @Override
+    public int key(int node) {
+        return node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V value(int node) {
+        return (V) values[node];
+    }
+
+    @Override
+    public int weight(int node) {
+        return weights[node];
+    }
+
+    @Override
+    public void setWeight(int node, int weight) {
+        sums.add(node, weight - weights[node]);
+        weights[node] = weight;
+    }
+
+    @Override
+    public int insert(int key, V value, int weight) {
+        if (!fits(key)) {
+            throw new IllegalArgumentException("Key " + key + " is outside the universe [0, " + universe + ")");
+        }
+        if (contains(key)) {
+            return NIL;
+        }
+        values[key] = value;
+        weights[key] = weight;
+        sums.add(key, weight);
+        for (int level = 0, i = key; level < levels.length; level++, i >>>= 6) {
+            levels[level][i >>> 6] |= 1L << i;
+        }
+        size++;
+        return key;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V delete(int key) {
+        if (!fits(key) || !contains(key)) {
+            return null;
+        }
+        V removed = (V) values[key];
+        values[key] = null;
+        sums.add(key, -weights[key]);
+        weights[key] = 0;
+
+        // Clear the bit, and the summary bit above it whenever that leaves a word empty
+        for (int level = 0, i = key; level < levels.length; level++, i >>>= 6) {
+            long word = levels[level][i >>> 6] &= ~(1L << i);
+            if (word != 0) {
+                break;
+            }
+        }
+        size--;
+        return removed;
+    }
+
+    @Override
+    public int sumGreater(int key) {
+        return sums.sumGreater(key);
+    }
+
+    @Override
+    public int sumBetween(int low, int high) {
+        return sums.sumRange(low, high);
+    }
+
+    @Override
+    public long aggregateUpdates() {
+        return sums.updates();
+    }
+
+    @Override
+    public long aggregateSteps() {
+        return sums.steps();
+    }
+
+    private boolean contains(int key) {
+        return (levels[0][key >>> 6] & (1L << key)) != 0;
+    }
+
+    // Smallest key >= i, for 0 <= i < universe
+    private int next(int i) {
+        for (int level = 0; level < levels.length; level++) {
+            int w = i >>> 6;
+            if (w >= levels[level].length) {
+                return NIL;
+            }
+            long bits = levels[level][w] & (-1L << i);
+            if (bits != 0) {
+                i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                while (level > 0) {
+                    level--;
+                    i = (i << 6) + Long.numberOfTrailingZeros(levels[level][i]);
+                }
+                return i;
+            }
+            i = w + 1; // First word after this one, as a bit of the level above
+        }
+        return NIL;
+    }
+
+    // Largest key <= i, for 0 <= i < universe
+    private int previous(int i) {
+        for (int level = 0; level < levels.length; level++) {
+            int w = i >>> 6;
+            long bits = levels[level][w] & (-1L >>> (63 - (i & 63)));
+            if (bits != 0) {
+                i = (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                while (level > 0) {
+                    level--;
+                    i = (i << 6) + 63 - Long.numberOfLeadingZeros(levels[level][i]);
+                }
+                return i;
+            }
+            if (w == 0) {
+                return NIL;
+            }
+            i = w - 1; // Last word before this one, as a bit of the level above
+        }
+        return NIL;
+    }
+}
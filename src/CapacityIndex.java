@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+// Fenwick (binary indexed) tree of truck counts indexed directly by lot capacity, so the trucks in any capacity
+// range are two O(log C) prefix sums. It grows by doubling as larger capacities appear. Capacities that are
+// negative or above MAX_CAPACITY cannot be indexed; once one shows up the index reports it no longer covers
+// every lot and callers fall back to the ledger trees.
+public class CapacityIndex {
+    static final int MAX_CAPACITY = 1 << 22;
+
+    private int[] tree = new int[1 + 1024]; // 1-based; capacity c is stored at position c + 1
+    private int size = 1024; // Capacities [0, size) fit, always a power of two
+    private boolean covers = true;
+
+    // Work counters for --metrics: adds that changed a count, and the Fenwick nodes they touched
+    private long updates;
+    private long steps;
+
+    // Whether every count ever added fit in the index
+    public boolean coversAll() {
+        return covers;
+    }
+
+    public void add(int capacity, int delta) {
+        if (delta == 0 || !covers) {
+            return;
+        }
+        if (capacity < 0 || capacity >= MAX_CAPACITY) {
+            covers = false;
+            return;
+        }
+        while (capacity >= size) {
+            grow();
+        }
+        updates++;
+        for (int i = capacity + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+            steps++;
+        }
+    }
+
+    public long updates() {
+        return updates;
+    }
+
+    public long steps() {
+        return steps;
+    }
+
+    // Trucks in lots with capacity in [low, high]
+    public int sumRange(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return prefix(high) - (low == Integer.MIN_VALUE ? 0 : prefix(low - 1));
+    }
+
+    // Trucks in lots with capacity greater than the given one
+    public int sumGreater(int capacity) {
+        return prefix(Integer.MAX_VALUE) - prefix(capacity);
+    }
+
+    // Trucks in lots with capacity <= the given one
+    private int prefix(int capacity) {
+        if (capacity < 0) {
+            return 0;
+        }
+        int total = 0;
+        for (int i = Math.min(capacity, size - 1) + 1; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        return total;
+    }
+
+    // With a power-of-two size the new upper half starts empty, and its last node covers the whole range
+    private void grow() {
+        int total = tree[size];
+        tree = Arrays.copyOf(tree, 1 + 2 * size);
+        size *= 2;
+        tree[size] = total;
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+
+// Runs decoded commands against a ParkingLotManager and hands their results to a ResultSink.
+// Every input mode (text, memory-mapped, trace, pipelined) goes through here, so they all behave the same.
+public class CommandExecutor {
+    private final ParkingLotManager manager;
+    private final PlacementList placements = new PlacementList(); // Reused by every load
+    private final Metrics metrics;
+
+    public CommandExecutor(ParkingLotManager manager) {
+        this.manager = manager;
+        this.metrics = manager.metrics();
+    }
+
+    public void execute(int opcode, int arg0, int arg1, ResultSink out) throws IOException {
+        if (!metrics.isEnabled()) {
+            dispatch(opcode, arg0, arg1, out);
+            manager.publishSnapshot();
+            return;
+        }
+        // The time includes handing the result to the sink
+        long start = System.nanoTime();
+        dispatch(opcode, arg0, arg1, out);
+        manager.publishSnapshot();
+        metrics.commandLatency(opcode, System.nanoTime() - start);
+    }
+
+    private void dispatch(int opcode, int arg0, int arg1, ResultSink out) throws IOException {
+        switch (opcode) {
+            case Opcode.CREATE_PARKING_LOT:
+                handleCreateParkingLot(arg0, arg1);
+                break;
+
+            case Opcode.ADD_TRUCK:
+                handleAddTruck(arg0, arg1, out);
+                break;
+
+            case Opcode.READY:
+                handleReady(arg0, out);
+                break;
+
+            case Opcode.LOAD:
+                // Handle LOAD command
+                handleLoad(arg0, arg1, out);
+                break;
+
+            case Opcode.COUNT:
+                // Handle COUNT command
+                handleCount(arg0, out);
+                break;
+
+            case Opcode.DELETE_PARKING_LOT:
+                // Handle delete_parking_lot command
+                handleDeleteLot(arg0);
+                break;
+
+            case Opcode.COUNT_RANGE:
+                out.value(manager.countRange(arg0, arg1));
+                break;
+
+            case Opcode.COUNT_WAITING:
+                out.value(manager.countWaiting(arg0));
+                break;
+
+            case Opcode.COUNT_READY:
+                out.value(manager.countReady(arg0));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + opcode);
+        }
+    }
+
+    // Create Parking Lot
+    private void handleCreateParkingLot(int loadCapacity, int truckCapacity) {
+        manager.createParkingLot(loadCapacity, truckCapacity);
+    }
+
+    // Add Truck
+    private void handleAddTruck(int truckID, int totalCapacity, ResultSink out) throws IOException {
+        int result = manager.truckAdder(truckID, totalCapacity);
+
+        if (result == -2) {
+            result = -1;
+        }
+
+        out.value(result);
+    }
+
+    // Ready Command
+    private void handleReady(int capacity, ResultSink out) throws IOException {
+        ParkingLotManager.ParkingLot lot = manager.findWaitingLot(capacity);
+
+        if (lot == null)
+            out.value(-1);
+        else {
+            int truckID = lot.ready();
+            out.pair(truckID, lot.getLoadCapacity());
+        }
+    }
+
+    // Load Command
+    private void handleLoad(int capacity, int amount, ResultSink out) throws IOException {
+        placements.clear();
+
+        manager.load(capacity, amount, placements);
+
+        out.placements(placements);
+    }
+
+    // Delete Parking Lot
+    private void handleDeleteLot(int capacity) {
+        manager.deleteParkingLot(capacity);
+    }
+
+    // Count Command
+    private void handleCount(int capacity, ResultSink out) throws IOException {
+        int result = manager.countTrucks(capacity);
+
+        out.value(result);
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Write-ahead journal that lets a long run survive the JVM dying. Every command the run executes is numbered in
+// input order; the ones that change state (create_parking_lot, add_truck, ready, load, delete_parking_lot) are
+// appended before they run, in the trace encoding: an opcode byte and zigzag varint arguments. Records gather in
+// memory and reach the file in groups, each one write behind a header of its length, its record count, the
+// number of the last command it covers, the length of the output once that command ran and a CRC32 of its
+// records. A full group is written when the next command arrives, after its own commands ran, and the output is
+// flushed first, so no group names more output than the file holds. Whether the files are also forced to the
+// disk after a group is the fsync policy:
+//   always         after every group, so a crash of the machine loses at most the group being written
+//   interval:<ms>  after a group once the last force is that old
+//   never          left to the operating system, which still keeps every written group if only the JVM dies
+// Every so many commands the journal checkpoints: it saves the manager's state with StateSnapshot and starts a
+// new journal file, which opens with an empty group recording the output length, then drops the older files.
+// The directory holds checkpoint-<n>.state and journal-<n>.log, named by the number of commands run before them,
+// so recovery restores the latest checkpoint and replays only the journal written since. A torn group at the end
+// of the journal is cut off; the commands it held, and those still in memory when the JVM died, run again when
+// the input is resumed after the last covered command and the output is cut back to the length the last whole
+// group recorded. A run that reaches the end of the input clears the directory, so the next one starts from the
+// top.
+public class CommandJournal implements Closeable {
+    private static final int GROUP_HEADER = 28;
+    private static final int MAX_RECORD = 1 + 2 * Varint.MAX_BYTES;
+
+    private final Path directory;
+    private final ParkingLotManager manager;
+    private final long fsyncInterval; // Nanoseconds, 0 to force after every group, -1 never
+    private final int groupSize;
+    private final long checkpointEvery;
+
+    private FileChannel channel;
+    private final ByteBuffer group;
+    private final CRC32 crc = new CRC32();
+    private int records; // In the group
+    private long position; // Commands run so far
+    private long checkpointAt; // Commands run before the current journal file
+    private DirectOutputWriter output; // Null when the run's output is not tracked
+    private long outputLength; // Output written by the commands run so far, as of the last group
+    private long lastForce = System.nanoTime();
+
+    // Work counters for the end-of-run summary
+    private long groups;
+    private long forces;
+    private long checkpoints;
+    private long recoveredCommands;
+
+    // Opens the journal in the directory, first recovering the manager from what an earlier run left there.
+    // The manager must have no lots yet. fsync is a policy from the list above; groupSize is the most records a
+    // group holds and checkpointEvery the commands between checkpoints, 0 for none.
+    public CommandJournal(Path directory, ParkingLotManager manager, String fsync, int groupSize,
+            long checkpointEvery) throws IOException {
+        if (groupSize < 1 || checkpointEvery < 0) {
+            throw new IllegalArgumentException("The group size must be positive and the checkpoint interval not"
+                    + " negative");
+        }
+        this.directory = directory;
+        this.manager = manager;
+        this.fsyncInterval = parseFsync(fsync);
+        this.groupSize = groupSize;
+        this.checkpointEvery = checkpointEvery;
+        this.group = ByteBuffer.allocateDirect(GROUP_HEADER + groupSize * MAX_RECORD);
+        group.position(GROUP_HEADER);
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    private static long parseFsync(String fsync) {
+        if (fsync == null || fsync.equals("always")) {
+            return 0;
+        } else if (fsync.equals("never")) {
+            return -1;
+        } else if (fsync.startsWith("interval:")) {
+            return Long.parseLong(fsync.substring("interval:".length())) * 1_000_000;
+        }
+        throw new IllegalArgumentException("Unknown fsync policy: " + fsync);
+    }
+
+    // Commands an earlier run already got through; the input resumes after them
+    public long position() {
+        return position;
+    }
+
+    // Bytes of output the commands before position() wrote; a recovered run cuts its output back to them
+    public long outputLength() {
+        return outputLength;
+    }
+
+    // Records the output's length with every group from now on. The output must hold outputLength() bytes.
+    public void track(DirectOutputWriter output) {
+        this.output = output;
+    }
+
+    // Numbers the next input command, and journals it if it changes state. A full group and a due checkpoint are
+    // written first, so they hold every command before this one and its output.
+    public void append(int opcode, int arg0, int arg1) throws IOException {
+        if (records == groupSize) {
+            commit();
+        }
+        if (checkpointEvery > 0 && position - checkpointAt >= checkpointEvery) {
+            checkpoint();
+        }
+        position++;
+        switch (opcode) {
+            case Opcode.CREATE_PARKING_LOT:
+            case Opcode.ADD_TRUCK:
+            case Opcode.LOAD:
+                group.put((byte) opcode);
+                Varint.putSigned(group, arg0);
+                Varint.putSigned(group, arg1);
+                break;
+            case Opcode.READY:
+            case Opcode.DELETE_PARKING_LOT:
+                group.put((byte) opcode);
+                Varint.putSigned(group, arg0);
+                break;
+            default:
+                return; // Queries leave nothing to replay
+        }
+        records++;
+    }
+
+    // Writes the group as one record behind the output it covers and forces both out if the policy says so
+    public void commit() throws IOException {
+        boolean force = fsyncInterval >= 0 && System.nanoTime() - lastForce >= fsyncInterval;
+        if (records > 0) {
+            if (output != null) {
+                if (force) {
+                    output.force();
+                } else {
+                    output.flush();
+                }
+                outputLength = output.length();
+            }
+            writeGroup();
+            groups++;
+        }
+        if (force) {
+            channel.force(false);
+            lastForce = System.nanoTime();
+            forces++;
+        }
+    }
+
+    // Saves the state, switches to a new journal file and drops the files the checkpoint replaces. The new journal
+    // holds its empty group before the checkpoint appears, so a checkpoint's output length is always there.
+    public void checkpoint() throws IOException {
+        commit();
+        Path temporary = directory.resolve("checkpoint.tmp");
+        StateSnapshot.save(manager, temporary);
+        try (FileChannel saved = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            saved.force(true);
+        }
+        if (output != null) {
+            output.force();
+            outputLength = output.length();
+        }
+        channel.close();
+        Files.deleteIfExists(journalFile(position)); // Left by a run that died before its checkpoint moved in
+        openJournal(position);
+        writeGroup();
+        channel.force(false);
+        Files.move(temporary, checkpointFile(position), StandardCopyOption.ATOMIC_MOVE);
+        deleteBefore(position);
+        checkpoints++;
+    }
+
+    // Commits what is left and forces it out whatever the policy
+    @Override
+    public void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            commit();
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    // Ends a run that consumed its whole input: nothing is left to recover, so the files go
+    public void finish() throws IOException {
+        close();
+        deleteBefore(Long.MAX_VALUE);
+    }
+
+    public String summary() {
+        return String.format("Journal: %d commands recovered, %d groups written, %d forced, %d checkpoints",
+                recoveredCommands, groups, forces, checkpoints);
+    }
+
+    // Writes the records gathered so far as one group, which may be empty
+    private void writeGroup() throws IOException {
+        int length = group.position() - GROUP_HEADER;
+        ByteBuffer body = group.duplicate();
+        body.position(GROUP_HEADER).limit(GROUP_HEADER + length);
+        crc.reset();
+        crc.update(body);
+        group.putInt(0, length).putInt(4, records).putLong(8, position).putLong(16, outputLength)
+                .putInt(24, (int) crc.getValue());
+        group.flip();
+        while (group.hasRemaining()) {
+            channel.write(group);
+        }
+        group.clear().position(GROUP_HEADER);
+        records = 0;
+    }
+
+    // Restores the latest checkpoint and replays the journal written after it, cutting off a torn last group
+    private void recover() throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "checkpoint-*.state")) {
+            for (Path file : files) {
+                latest = Math.max(latest, numberOf(file));
+            }
+        }
+        if (latest >= 0) {
+            StateSnapshot.restore(checkpointFile(latest), manager);
+        }
+        checkpointAt = position = Math.max(latest, 0);
+        outputLength = latest > 0 ? -1 : 0; // A checkpoint's length comes from the empty group its journal opens with
+        Path journal = journalFile(checkpointAt);
+        if (Files.exists(journal)) {
+            replay(journal);
+        }
+        if (outputLength < 0) {
+            throw new IOException("The journal of " + checkpointFile(latest) + " is missing its first group");
+        }
+        recoveredCommands = position;
+        openJournal(checkpointAt);
+        deleteBefore(checkpointAt);
+    }
+
+    private void replay(Path journal) throws IOException {
+        CommandExecutor executor = new CommandExecutor(manager);
+        try (FileChannel in = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER);
+            long offset = 0;
+            while (true) {
+                header.clear();
+                if (in.read(header, offset) < GROUP_HEADER) {
+                    break;
+                }
+                int length = header.getInt(0);
+                int count = header.getInt(4);
+                long last = header.getLong(8);
+                long written = header.getLong(16);
+                if (length < 0 || length > in.size() - offset - GROUP_HEADER) {
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                in.read(body, offset + GROUP_HEADER);
+                body.flip();
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != header.getInt(24)) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    int opcode = body.get();
+                    int arg0 = Varint.getSigned(body);
+                    int arg1 = Opcode.arity(opcode) > 1 ? Varint.getSigned(body) : 0;
+                    executor.execute(opcode, arg0, arg1, ResultSink.NONE);
+                }
+                position = last;
+                outputLength = written;
+                offset += GROUP_HEADER + length;
+            }
+            in.truncate(offset); // Whatever follows the last whole group never committed
+        }
+    }
+
+    private void openJournal(long number) throws IOException {
+        channel = FileChannel.open(journalFile(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        checkpointAt = number;
+    }
+
+    // Removes the checkpoints and journals older than the given number
+    private void deleteBefore(long number) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{checkpoint-*.state,journal-*.log}")) {
+            for (Path file : files) {
+                if (numberOf(file) < number) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Path checkpointFile(long number) {
+        return directory.resolve("checkpoint-" + number + ".state");
+    }
+
+    private Path journalFile(long number) {
+        return directory.resolve("journal-" + number + ".log");
+    }
+
+    private static long numberOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.indexOf('.')));
+    }
+}
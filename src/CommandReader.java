@@ -0,0 +1,18 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+// A source of already decoded commands, so Main can run the same dispatch over any input format
+public interface CommandReader extends Closeable {
+
+    // Advances to the next command. Returns false when the input is exhausted.
+    boolean next() throws IOException;
+
+    // Opcode of the current command, Opcode.UNKNOWN if the command word was not recognized
+    int opcode();
+
+    // The i-th integer argument of the current command
+    int arg(int i);
+
+    // The lower-cased command word, only needed to report unknown commands
+    String command();
+}
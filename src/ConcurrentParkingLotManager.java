@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Thread-safe ParkingLotManager for callers that run commands from many threads at once. The lots are striped by
+// load capacity: each stripe is a ParkingLotManager shard (see ShardedRunner) owning a contiguous capacity range,
+// guarded by a StampedLock of its own, so commands on lots of different stripes run in parallel.
+//
+// A command that changes lots write-locks the stripe owning its capacity and asks ParkingLotManager.staysLocal
+// whether it can finish there. If not, it lets go and write-locks every stripe it may reach: those below for
+// add_truck, which relocates to smaller lots, those above for ready, and all of them for load, whose trucks
+// relocate anywhere. Stripes are always locked in ascending capacity order, and only while holding nothing or
+// stripes below, so a relocation holds both lots it moves a truck between without risking a deadlock.
+//
+// Counts first read the Fenwick capacity indexes under optimistic stamps of the stripes they visit and only run
+// again under read locks if a writer got in the way. A torn read of those arrays still ends, while a walk down a
+// ledger tree a writer is rotating may follow a cycle forever, so findLot, findClosestGreater and counts that fall
+// back to the trees always read under read locks. Each command and query therefore takes effect at one instant
+// between its call and its return; LinearizabilityCheck stress-tests that.
+public class ConcurrentParkingLotManager implements ParkingLotManager.ShardGate {
+    // Returned by findLot and findClosestGreater when there is no such lot
+    public static final int NO_LOT = Integer.MIN_VALUE;
+
+    // Query kinds besides the count opcodes
+    private static final int FIND_LOT = -1;
+    private static final int FIND_CLOSEST_GREATER = -2;
+
+    private final int[] starts; // starts[s] is the lowest capacity stripe s owns
+    private final ParkingLotManager[] stripes;
+    private final StampedLock[] locks;
+    private final CommandExecutor[] executors; // Each used only under its stripe's write lock
+    private final ThreadLocal<Pass> passes;
+
+    // The stripes the calling thread may touch during its current command or query
+    private static final class Pass {
+        boolean optimistic;
+        int low; // Locked stripes, when not optimistic
+        int high;
+        final long[] held; // Stamps of the locked stripes
+        final long[] stamps; // Optimistic stamps of the stripes read so far, 0 for the others
+        boolean contended; // The optimistic read met a write-locked stripe or a ledger tree
+
+        Pass(int stripes) {
+            held = new long[stripes];
+            stamps = new long[stripes];
+        }
+
+        boolean validate(StampedLock[] locks) {
+            for (int s = 0; s < stamps.length; s++) {
+                if (stamps[s] != 0 && !locks[s].validate(stamps[s])) {
+                    return false;
+                }
+            }
+            return !contended;
+        }
+    }
+
+    // Cuts short an optimistic read that reached a write-locked stripe or was about to walk a ledger tree
+    private static final class Contended extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Contended() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Contended CONTENDED = new Contended();
+
+    // Splits the capacities from 2 to maxCapacity evenly; the lowest stripe also owns everything below and the
+    // highest everything above
+    public ConcurrentParkingLotManager(int stripes, int maxCapacity, String ledgerEngine) {
+        this(evenBounds(stripes, maxCapacity), ledgerEngine);
+    }
+
+    // bounds[i] is the lowest capacity stripe i + 1 owns. Like the shards of ShardedRunner, every stripe but the
+    // lowest starts at capacity 2 or more.
+    public ConcurrentParkingLotManager(int[] bounds, String ledgerEngine) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (bounds[i] < 2 || (i > 0 && bounds[i] <= bounds[i - 1])) {
+                throw new IllegalArgumentException("Stripe bounds must be increasing and at least 2: "
+                        + Arrays.toString(bounds));
+            }
+        }
+        int count = bounds.length + 1;
+        starts = new int[count];
+        starts[0] = Integer.MIN_VALUE;
+        System.arraycopy(bounds, 0, starts, 1, bounds.length);
+        stripes = new ParkingLotManager[count];
+        locks = new StampedLock[count];
+        executors = new CommandExecutor[count];
+        SharedTruckStore trucks = new SharedTruckStore();
+        for (int s = 0; s < count; s++) {
+            stripes[s] = new ParkingLotManager(EventSink.NONE, trucks.view(), ledgerEngine);
+            locks[s] = new StampedLock();
+            executors[s] = new CommandExecutor(stripes[s]);
+        }
+        for (int s = 0; s < count; s++) {
+            int high = s + 1 < count ? starts[s + 1] - 1 : Integer.MAX_VALUE;
+            stripes[s].link(starts[s], high, s > 0 ? stripes[s - 1] : null, s + 1 < count ? stripes[s + 1] : null,
+                    this);
+        }
+        passes = ThreadLocal.withInitial(() -> new Pass(count));
+    }
+
+    private static int[] evenBounds(int stripes, int maxCapacity) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("The number of stripes must be positive: " + stripes);
+        }
+        int[] bounds = new int[stripes - 1];
+        int n = 0;
+        for (int s = 1; s < stripes; s++) {
+            int bound = (int) (2 + (long) Math.max(0, maxCapacity - 1) * s / stripes);
+            if (n == 0 || bound > bounds[n - 1]) {
+                bounds[n++] = bound;
+            }
+        }
+        return Arrays.copyOf(bounds, n);
+    }
+
+    public int stripes() {
+        return stripes.length;
+    }
+
+    // Runs one command and hands its result to the sink, like CommandExecutor. The sink is called while the
+    // command's stripes are still locked, so it must not call back into this manager.
+    public void execute(int opcode, int arg0, int arg1, ResultSink out) throws IOException {
+        switch (opcode) {
+            case Opcode.COUNT:
+            case Opcode.COUNT_RANGE:
+            case Opcode.COUNT_WAITING:
+            case Opcode.COUNT_READY:
+                out.value(query(opcode, arg0, arg1));
+                return;
+
+            default:
+                break;
+        }
+        int home = stripeOf(opcode == Opcode.ADD_TRUCK ? arg1 : arg0);
+        Pass pass = passes.get();
+        long stamp = locks[home].writeLock();
+        try {
+            if (stripes[home].staysLocal(opcode, arg0, arg1)) {
+                lockedPass(pass, home, home);
+                executors[home].execute(opcode, arg0, arg1, out);
+                return;
+            }
+        } finally {
+            locks[home].unlockWrite(stamp);
+        }
+
+        // The state may change between the two locks, so the command is judged again from scratch
+        int low = opcode == Opcode.READY ? home : 0;
+        int high = opcode == Opcode.ADD_TRUCK ? home : stripes.length - 1;
+        for (int s = low; s <= high; s++) {
+            pass.held[s] = locks[s].writeLock();
+        }
+        try {
+            lockedPass(pass, low, high);
+            executors[home].execute(opcode, arg0, arg1, out);
+        } finally {
+            for (int s = high; s >= low; s--) {
+                locks[s].unlockWrite(pass.held[s]);
+            }
+        }
+    }
+
+    // Capacity of the lot an add_truck with this capacity tries first, the lot with that capacity or else the
+    // closest smaller one, or NO_LOT
+    public int findLot(int capacity) {
+        return query(FIND_LOT, capacity, 0);
+    }
+
+    // Capacity of the closest lot above the given one that has ready trucks, or NO_LOT
+    public int findClosestGreater(int capacity) {
+        return query(FIND_CLOSEST_GREATER, capacity, 0);
+    }
+
+    public int countTrucks(int capacity) {
+        return query(Opcode.COUNT, capacity, 0);
+    }
+
+    public int countRange(int low, int high) {
+        return query(Opcode.COUNT_RANGE, low, high);
+    }
+
+    public int countWaiting(int capacity) {
+        return query(Opcode.COUNT_WAITING, capacity, 0);
+    }
+
+    public int countReady(int capacity) {
+        return query(Opcode.COUNT_READY, capacity, 0);
+    }
+
+    // Answers a count from one optimistic read when no writer touched any stripe it read; the stripes hold still
+    // over the whole read, so the answer stands for any instant of it. A read that catches a stripe mid-update may
+    // see torn counts or throw, but then its stamp no longer validates and the answer is thrown away.
+    private int query(int kind, int arg0, int arg1) {
+        int home = stripeOf(arg0);
+        Pass pass = passes.get();
+        pass.optimistic = true;
+        pass.contended = false;
+        Arrays.fill(pass.stamps, 0);
+        pass.stamps[home] = kind < 0 ? 0 : locks[home].tryOptimisticRead(); // The finds always walk a tree
+        if (pass.stamps[home] != 0) {
+            try {
+                int result = ask(stripes[home], kind, arg0, arg1);
+                if (pass.validate(locks)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (pass.validate(locks)) {
+                    throw e; // A real failure, not a torn read
+                }
+            }
+        }
+
+        // findLot walks down, the others up
+        int low = kind == FIND_LOT ? 0 : home;
+        int high = kind == FIND_LOT ? home
+                : kind == Opcode.COUNT_RANGE ? Math.max(home, stripeOf(arg1)) : stripes.length - 1;
+        for (int s = low; s <= high; s++) {
+            pass.held[s] = locks[s].readLock();
+        }
+        try {
+            lockedPass(pass, low, high);
+            return ask(stripes[home], kind, arg0, arg1);
+        } finally {
+            for (int s = high; s >= low; s--) {
+                locks[s].unlockRead(pass.held[s]);
+            }
+        }
+    }
+
+    private static int ask(ParkingLotManager stripe, int kind, int arg0, int arg1) {
+        switch (kind) {
+            case FIND_LOT:
+                return capacityOf(stripe.findLot(arg0));
+            case FIND_CLOSEST_GREATER:
+                return capacityOf(stripe.findClosestGreater(arg0));
+            case Opcode.COUNT:
+                return stripe.countTrucks(arg0);
+            case Opcode.COUNT_RANGE:
+                return stripe.countRange(arg0, arg1);
+            case Opcode.COUNT_WAITING:
+                return stripe.countWaiting(arg0);
+            default:
+                return stripe.countReady(arg0);
+        }
+    }
+
+    private static int capacityOf(ParkingLotManager.ParkingLot lot) {
+        return lot == null ? NO_LOT : lot.getLoadCapacity();
+    }
+
+    private static void lockedPass(Pass pass, int low, int high) {
+        pass.optimistic = false;
+        pass.low = low;
+        pass.high = high;
+    }
+
+    private int stripeOf(int capacity) {
+        int s = Arrays.binarySearch(starts, capacity);
+        return s >= 0 ? s : -s - 2;
+    }
+
+    // Every step of a command or query into another stripe comes here
+    @Override
+    public void enter(ParkingLotManager shard) {
+        int s = 0;
+        while (stripes[s] != shard) {
+            s++;
+        }
+        Pass pass = passes.get();
+        if (pass.optimistic) {
+            if (pass.stamps[s] == 0 && (pass.stamps[s] = locks[s].tryOptimisticRead()) == 0) {
+                pass.contended = true;
+                throw CONTENDED;
+            }
+        } else if (s < pass.low || s > pass.high) {
+            throw new IllegalStateException("Stripe " + s + " was reached while only stripes " + pass.low + " to "
+                    + pass.high + " were locked");
+        }
+    }
+
+    // A count whose capacity index gave up walks the ledger trees, which needs the read locks
+    @Override
+    public void walk(ParkingLotManager shard) {
+        Pass pass = passes.get();
+        if (pass.optimistic) {
+            pass.contended = true;
+            throw CONTENDED;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Encodes results as ASCII straight into a reusable direct ByteBuffer that is flushed through a FileChannel.
+// Numbers are written digit by digit, so no String is created per result; the bytes match TextResultSink.
+public class DirectOutputWriter implements ResultSink {
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEPARATOR = {' ', '-', ' '};
+    private static final byte[] MIN_VALUE = String.valueOf(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    // Room for "id capacity - " plus a newline, so each piece needs a single capacity check
+    private static final int MAX_PIECE = 2 * MIN_VALUE.length + SEPARATOR.length + 1 + NEWLINE.length;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final byte[] digits = new byte[MIN_VALUE.length];
+
+    public DirectOutputWriter(Path outputFile) throws IOException {
+        this.channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Keeps the first length bytes of an existing output file and writes on after them
+    public DirectOutputWriter(Path outputFile, long length) throws IOException {
+        this.channel = FileChannel.open(outputFile, StandardOpenOption.WRITE);
+        if (channel.size() < length) {
+            channel.close();
+            throw new IOException(outputFile + " is shorter than the " + length + " bytes to keep");
+        }
+        channel.truncate(length);
+        channel.position(length);
+    }
+
+    // Bytes written so far, including those still in the buffer
+    public long length() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    // Flushes the buffer and forces everything written to the disk
+    public void force() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    @Override
+    public void value(int value) throws IOException {
+        ensureRoom();
+        putInt(value);
+        buffer.put(NEWLINE);
+    }
+
+    @Override
+    public void pair(int first, int second) throws IOException {
+        ensureRoom();
+        putInt(first);
+        buffer.put((byte) ' ');
+        putInt(second);
+        buffer.put(NEWLINE);
+    }
+
+    @Override
+    public void placements(PlacementList placements) throws IOException {
+        if (placements.size() == 0) {
+            value(-1);
+            return;
+        }
+        for (int i = 0; i < placements.size(); i++) {
+            ensureRoom();
+            if (i > 0) {
+                buffer.put(SEPARATOR);
+            }
+            putInt(placements.truckID(i));
+            buffer.put((byte) ' ');
+            putInt(placements.capacity(i));
+        }
+        buffer.put(NEWLINE);
+    }
+
+    // Only used for unknown commands, which are rare enough to encode through a String
+    @Override
+    public void text(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; ) {
+            ensureRoom();
+            int length = Math.min(bytes.length - offset, buffer.remaining());
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+        ensureRoom();
+        buffer.put(NEWLINE);
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureRoom() throws IOException {
+        if (buffer.remaining() < MAX_PIECE) {
+            flush();
+        }
+    }
+
+    private void putInt(int value) {
+        if (value == Integer.MIN_VALUE) {
+            buffer.put(MIN_VALUE);
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, start, digits.length - start);
+    }
+}
@@ -0,0 +1,120 @@
+// Base for sinks that keep every event. Each typed event becomes a numeric record (type, a, b), and the record
+// types know the console message ParkingLotManager used to print for them.
+public abstract class EventRecorder implements EventSink {
+    public static final int LOT_INSERTED = 1;
+    public static final int LOT_DELETED = 2;
+    public static final int LOT_NOT_FOUND = 3;
+    public static final int LOT_LEFT_LEDGER = 4;
+    public static final int READY_LOT_INSERTED = 5;
+    public static final int TRUCK_ADDED = 6;
+    public static final int TRUCK_RELOCATING = 7;
+    public static final int NO_SMALLER_LOT = 8;
+    public static final int RELOCATION_FAILED = 9;
+    public static final int TRUCK_READY = 10;
+    public static final int TRUCK_LOADED = 11;
+    public static final int NO_READY_LOT = 12;
+    public static final int COUNT = 13;
+
+    protected abstract void record(int type, int a, int b);
+
+    public static String describe(int type, int a, int b) {
+        switch (type) {
+            case LOT_INSERTED:
+                return "Lot with capacity " + a + " inserted";
+            case LOT_DELETED:
+                return "Lot with capacity " + a + " has been deleted.";
+            case LOT_NOT_FOUND:
+                return "No deletion done, lot with capacity does not exist.";
+            case LOT_LEFT_LEDGER:
+                return "DELETE. Lot " + a + " is deleted from the " + (b != 0 ? "ready" : "waiting") + " ledger.";
+            case READY_LOT_INSERTED:
+                return "Ready lot with capacity " + a + " inserted into readyLedger";
+            case TRUCK_ADDED:
+                return "Truck successfully added to waiting section of the parking lot with " + b + " load capacity";
+            case TRUCK_RELOCATING:
+                return "Unfortunately the lot with " + b + " load capacity is full. We will be relocating the truck";
+            case NO_SMALLER_LOT:
+                return "No smaller parking lot available to assign the truck.";
+            case RELOCATION_FAILED:
+                return "Unable to relocate the truck. No suitable parking lot found.";
+            case TRUCK_READY:
+                return "READY. The truck with ID " + a + " is ready in lot " + b;
+            case TRUCK_LOADED:
+                if (b == -1) {
+                    return "After loading the truck, the truck with ID " + a + " could not be placed.";
+                }
+                return "Truck with ID " + a + " has been placed to lot with capacity " + b;
+            case NO_READY_LOT:
+                return a != 0 ? "No parking lot with capacity found." : "No parking lot with capacity found to load.";
+            case COUNT:
+                return "Total trucks with lot capacity greater than " + a + " is: " + b;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+    }
+
+    @Override
+    public void lotInserted(int capacity) {
+        record(LOT_INSERTED, capacity, 0);
+    }
+
+    @Override
+    public void lotDeleted(int capacity) {
+        record(LOT_DELETED, capacity, 0);
+    }
+
+    @Override
+    public void lotNotFound(int capacity) {
+        record(LOT_NOT_FOUND, capacity, 0);
+    }
+
+    @Override
+    public void lotLeftLedger(int capacity, boolean readyLedger) {
+        record(LOT_LEFT_LEDGER, capacity, readyLedger ? 1 : 0);
+    }
+
+    @Override
+    public void readyLotInserted(int capacity) {
+        record(READY_LOT_INSERTED, capacity, 0);
+    }
+
+    @Override
+    public void truckAdded(int truckID, int lotCapacity) {
+        record(TRUCK_ADDED, truckID, lotCapacity);
+    }
+
+    @Override
+    public void truckRelocating(int truckID, int fullLotCapacity) {
+        record(TRUCK_RELOCATING, truckID, fullLotCapacity);
+    }
+
+    @Override
+    public void noSmallerLot(int truckID) {
+        record(NO_SMALLER_LOT, truckID, 0);
+    }
+
+    @Override
+    public void relocationFailed(int truckID) {
+        record(RELOCATION_FAILED, truckID, 0);
+    }
+
+    @Override
+    public void truckReady(int truckID, int lotCapacity) {
+        record(TRUCK_READY, truckID, lotCapacity);
+    }
+
+    @Override
+    public void truckLoaded(int truckID, int lotCapacity) {
+        record(TRUCK_LOADED, truckID, lotCapacity);
+    }
+
+    @Override
+    public void noReadyLot(boolean spilling) {
+        record(NO_READY_LOT, spilling ? 1 : 0, 0);
+    }
+
+    @Override
+    public void count(int capacity, int total) {
+        record(COUNT, capacity, total);
+    }
+}
@@ -0,0 +1,65 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+// Receives what ParkingLotManager does while it runs, as typed events instead of console messages.
+// The implementation is chosen at startup: NONE costs nothing, the others log or record every event.
+public interface EventSink extends Closeable {
+    EventSink NONE = new NoOpEventSink();
+
+    // Lots
+    void lotInserted(int capacity);
+
+    void lotDeleted(int capacity);
+
+    void lotNotFound(int capacity);
+
+    void lotLeftLedger(int capacity, boolean readyLedger);
+
+    void readyLotInserted(int capacity);
+
+    // Trucks
+    void truckAdded(int truckID, int lotCapacity);
+
+    void truckRelocating(int truckID, int fullLotCapacity);
+
+    void noSmallerLot(int truckID);
+
+    void relocationFailed(int truckID);
+
+    void truckReady(int truckID, int lotCapacity);
+
+    // A truck that was loaded and moved on; a capacity of -1 means no lot could take it
+    void truckLoaded(int truckID, int lotCapacity);
+
+    // Load found no ready lot at all, or ran out of lots while spilling to larger ones
+    void noReadyLot(boolean spilling);
+
+    void count(int capacity, int total);
+
+    // False when events are discarded, so work done only to report them can be skipped
+    default boolean isEnabled() {
+        return true;
+    }
+
+    // Returns once every event recorded so far has been written out; the sink stays open
+    default void drain() throws IOException {
+    }
+
+    // Flushes and releases whatever the sink holds; calling it twice is harmless
+    @Override
+    default void close() throws IOException {
+    }
+
+    // Parses the --events option: none, text (the default) or binary:<file>
+    static EventSink open(String option) throws IOException {
+        if (option == null || option.equals("text")) {
+            return new AsyncTextEventSink(System.out);
+        } else if (option.equals("none")) {
+            return NONE;
+        } else if (option.startsWith("binary:")) {
+            return new BinaryEventRecorder(Paths.get(option.substring("binary:".length())));
+        }
+        throw new IllegalArgumentException("Unknown event sink: " + option);
+    }
+}
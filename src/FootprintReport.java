@@ -0,0 +1,101 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+// Measures how many bytes a parked truck costs in each storage model: the original Truck objects chained in
+// per-lot linked lists, the on-heap HeapTruckStore and the OffHeapTruckStore. The same fleet is spread over the
+// same number of lot queues in every model, and heap and direct memory are sampled before and after.
+public class FootprintReport {
+    // Keeps every model reachable until it has been measured
+    private static volatile Object keep;
+
+    // The truck node the simulator used before trucks were stored by handle
+    private static class LinkedTruck {
+        int truckID;
+        int currentLoad;
+        int totalCapacity;
+        LinkedTruck next;
+    }
+
+    // Head and tail of one lot's linked list
+    private static class LinkedSection {
+        LinkedTruck head;
+        LinkedTruck tail;
+        int numberOfTrucks;
+    }
+
+    public static void main(String[] args) {
+        int trucks = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int lots = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        System.out.println("Footprint of " + trucks + " trucks parked in " + lots + " lots:");
+        report("Truck objects", trucks, measureObjects(trucks, lots));
+        reportStore("heap store", trucks, lots, new HeapTruckStore());
+        reportStore("off-heap store", trucks, lots, new OffHeapTruckStore());
+    }
+
+    private static long[] measureObjects(int trucks, int lots) {
+        long[] before = sample();
+        LinkedSection[] sections = new LinkedSection[lots];
+        for (int i = 0; i < lots; i++) {
+            sections[i] = new LinkedSection();
+        }
+        for (int i = 0; i < trucks; i++) {
+            LinkedTruck truck = new LinkedTruck();
+            truck.truckID = i;
+            truck.totalCapacity = i % 1000 + 1;
+            LinkedSection section = sections[i % lots];
+            if (section.head == null) {
+                section.head = truck;
+            } else {
+                section.tail.next = truck;
+            }
+            section.tail = truck;
+            section.numberOfTrucks++;
+        }
+        keep = sections;
+        long[] after = sample();
+        keep = null;
+        return new long[]{after[0] - before[0], after[1] - before[1]};
+    }
+
+    private static long[] measureStore(TruckStore store, int trucks, int lots) {
+        long[] before = sample();
+        TruckQueue[] sections = new TruckQueue[lots];
+        for (int i = 0; i < lots; i++) {
+            sections[i] = store.newQueue();
+        }
+        for (int i = 0; i < trucks; i++) {
+            sections[i % lots].add(store.allocate(i, 0, i % 1000 + 1));
+        }
+        keep = sections;
+        long[] after = sample();
+        keep = null;
+        return new long[]{after[0] - before[0], after[1] - before[1]};
+    }
+
+    private static void reportStore(String model, int trucks, int lots, TruckStore store) {
+        report(model, trucks, measureStore(store, trucks, lots));
+        System.out.println("  of which " + store.heapBytes() + " heap bytes and " + store.offHeapBytes()
+                + " off-heap bytes are reserved for records");
+    }
+
+    // Heap bytes in use and direct buffer bytes, after letting the collector settle
+    private static long[] sample() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+        return new long[]{heap, direct};
+    }
+
+    private static void report(String model, int trucks, long[] bytes) {
+        System.out.printf("%-15s %6.1f heap bytes/truck, %6.1f off-heap bytes/truck, %6.1f total%n", model,
+                (double) bytes[0] / trucks, (double) bytes[1] / trucks, (double) (bytes[0] + bytes[1]) / trucks);
+    }
+}
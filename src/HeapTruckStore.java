@@ -0,0 +1,100 @@
+import java.util.Arrays;
+
+// Truck records kept as parallel primitive arrays (struct of arrays) on the Java heap.
+// A truck costs four ints instead of a Truck object, and freed handles are reused through a free list.
+public class HeapTruckStore implements TruckStore {
+    private int[] ids;
+    private int[] loads;
+    private int[] capacities;
+    private int[] links; // Next free handle
+    private int highWater; // Handles below this have been handed out at least once
+    private int freeHead = NONE;
+    private int live;
+
+    public HeapTruckStore() {
+        this(1024);
+    }
+
+    public HeapTruckStore(int initialCapacity) {
+        ids = new int[initialCapacity];
+        loads = new int[initialCapacity];
+        capacities = new int[initialCapacity];
+        links = new int[initialCapacity];
+    }
+
+    @Override
+    public int allocate(int truckID, int currentLoad, int totalCapacity) {
+        int handle;
+        if (freeHead != NONE) {
+            handle = freeHead;
+            freeHead = links[handle];
+        } else {
+            if (highWater == ids.length) {
+                int length = 2 * ids.length;
+                ids = Arrays.copyOf(ids, length);
+                loads = Arrays.copyOf(loads, length);
+                capacities = Arrays.copyOf(capacities, length);
+                links = Arrays.copyOf(links, length);
+            }
+            handle = highWater++;
+        }
+        ids[handle] = truckID;
+        loads[handle] = currentLoad;
+        capacities[handle] = totalCapacity;
+        links[handle] = NONE;
+        live++;
+        return handle;
+    }
+
+    @Override
+    public void free(int handle) {
+        links[handle] = freeHead;
+        freeHead = handle;
+        live--;
+    }
+
+    @Override
+    public int id(int handle) {
+        return ids[handle];
+    }
+
+    @Override
+    public int currentLoad(int handle) {
+        return loads[handle];
+    }
+
+    @Override
+    public void setCurrentLoad(int handle, int currentLoad) {
+        loads[handle] = currentLoad;
+    }
+
+    @Override
+    public int totalCapacity(int handle) {
+        return capacities[handle];
+    }
+
+    @Override
+    public int next(int handle) {
+        return links[handle];
+    }
+
+    @Override
+    public void setNext(int handle, int next) {
+        links[handle] = next;
+    }
+
+    @Override
+    public int size() {
+        return live;
+    }
+
+    @Override
+    public long heapBytes() {
+        return 4L * Integer.BYTES * ids.length;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0;
+    }
+}
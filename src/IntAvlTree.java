@@ -0,0 +1,443 @@
+import java.util.Arrays;
+
+// AVL tree over unique int keys whose nodes live in parallel int arrays (key, left, right, parent, height,
+// weight and subtree weight sum) indexed by slot, with freed slots reused through a free list. Lookups walk
+// contiguous arrays instead of chasing node objects, and inserting a key allocates nothing once the arrays
+// have grown. Each node carries a value and an int weight; the subtree sums answer "total weight above a key".
+// Rebalancing retraces from the changed node to the root iteratively, so deep trees cannot overflow the stack.
+public class IntAvlTree<V> implements LedgerEngine<V> {
+
+    private int[] keys;
+    private int[] left; // Doubles as the next-free link of a freed slot
+    private int[] right;
+    private int[] parent;
+    private int[] height;
+    private int[] weight;
+    private int[] sum; // Weight of the node plus its subtrees
+    private Object[] values;
+
+    private int root = NIL;
+    private int highWater; // Slots below this have been handed out at least once
+    private int freeHead = NIL;
+    private int size;
+
+    // Work counters, see LedgerEngine
+    private long rotations;
+    private long aggregateUpdates;
+    private long aggregateSteps;
+
+    public IntAvlTree() {
+        this(16);
+    }
+
+    public IntAvlTree(int initialCapacity) {
+        keys = new int[initialCapacity];
+        left = new int[initialCapacity];
+        right = new int[initialCapacity];
+        parent = new int[initialCapacity];
+        height = new int[initialCapacity];
+        weight = new int[initialCapacity];
+        sum = new int[initialCapacity];
+        values = new Object[initialCapacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int key(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V value(int slot) {
+        return (V) values[slot];
+    }
+
+    @Override
+    public int weight(int slot) {
+        return weight[slot];
+    }
+
+    // Slot holding the key, or NIL
+    @Override
+    public int find(int key) {
+        int node = root;
+        while (node != NIL && keys[node] != key) {
+            node = key < keys[node] ? left[node] : right[node];
+        }
+        return node;
+    }
+
+    @Override
+    public int first() {
+        int node = root;
+        if (node != NIL) {
+            while (left[node] != NIL) {
+                node = left[node];
+            }
+        }
+        return node;
+    }
+
+    // Largest key <= key
+    @Override
+    public int floor(int key) {
+        int node = root;
+        int best = NIL;
+        while (node != NIL) {
+            if (keys[node] <= key) {
+                best = node;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return best;
+    }
+
+    // Largest key < key
+    @Override
+    public int lower(int key) {
+        return key == Integer.MIN_VALUE ? NIL : floor(key - 1);
+    }
+
+    // Smallest key >= key
+    @Override
+    public int ceiling(int key) {
+        int node = root;
+        int best = NIL;
+        while (node != NIL) {
+            if (keys[node] >= key) {
+                best = node;
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return best;
+    }
+
+    // Smallest key > key
+    @Override
+    public int higher(int key) {
+        return key == Integer.MAX_VALUE ? NIL : ceiling(key + 1);
+    }
+
+    // Next slot in key order, or NIL after the last
+    @Override
+    public int successor(int slot) {
+        int node = right[slot];
+        if (node != NIL) {
+            while (left[node] != NIL) {
+                node = left[node];
+            }
+            return node;
+        }
+        node = slot;
+        int above = parent[node];
+        while (above != NIL && right[above] == node) {
+            node = above;
+            above = parent[node];
+        }
+        return above;
+    }
+
+    // Total weight of the nodes with keys greater than key
+    @Override
+    public int sumGreater(int key) {
+        int node = root;
+        int total = 0;
+        while (node != NIL) {
+            if (keys[node] > key) {
+                total += weight[node] + sumOf(right[node]);
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return total;
+    }
+
+    // Total weight of the nodes with keys in [low, high]
+    @Override
+    public int sumBetween(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        int below = low == Integer.MIN_VALUE ? sumOf(root) : sumGreater(low - 1);
+        return below - sumGreater(high);
+    }
+
+    @Override
+    public void setWeight(int slot, int newWeight) {
+        int delta = newWeight - weight[slot];
+        weight[slot] = newWeight;
+        aggregateUpdates++;
+        for (int node = slot; node != NIL; node = parent[node]) {
+            sum[node] += delta;
+            aggregateSteps++;
+        }
+    }
+
+    @Override
+    public long rotations() {
+        return rotations;
+    }
+
+    @Override
+    public long aggregateUpdates() {
+        return aggregateUpdates;
+    }
+
+    @Override
+    public long aggregateSteps() {
+        return aggregateSteps;
+    }
+
+    // Returns the new slot, or NIL if the key is already present (the tree is left unchanged)
+    @Override
+    public int insert(int key, V value, int nodeWeight) {
+        int node = root;
+        int above = NIL;
+        while (node != NIL) {
+            if (key == keys[node]) {
+                return NIL;
+            }
+            above = node;
+            node = key < keys[node] ? left[node] : right[node];
+        }
+
+        int slot = allocate(key, value, nodeWeight);
+        parent[slot] = above;
+        if (above == NIL) {
+            root = slot;
+        } else if (key < keys[above]) {
+            left[above] = slot;
+        } else {
+            right[above] = slot;
+        }
+        retrace(above);
+        return slot;
+    }
+
+    // Merges the new keys with the tree's in one pass and rebuilds it perfectly balanced from the bottom up, in
+    // O(n + count), with slots in key order. When the batch is small next to the tree, count inserts of
+    // O(log n) each are cheaper than the rebuild and are done instead.
+    @Override
+    public void insertSorted(int[] newKeys, V[] newValues, int count) {
+        int total = size + count;
+        if ((long) count * (32 - Integer.numberOfLeadingZeros(total)) < size) {
+            LedgerEngine.super.insertSorted(newKeys, newValues, count);
+            return;
+        }
+
+        int[] mergedKeys = new int[total];
+        int[] mergedWeights = new int[total];
+        Object[] mergedValues = new Object[total];
+        int i = 0;
+        int merged = 0;
+        for (int node = first(); node != NIL; node = successor(node)) {
+            for (; i < count && newKeys[i] < keys[node]; i++, merged++) {
+                mergedKeys[merged] = newKeys[i];
+                mergedValues[merged] = newValues[i];
+            }
+            mergedKeys[merged] = keys[node];
+            mergedValues[merged] = values[node];
+            mergedWeights[merged++] = weight[node];
+        }
+        for (; i < count; i++, merged++) {
+            mergedKeys[merged] = newKeys[i];
+            mergedValues[merged] = newValues[i];
+        }
+
+        while (keys.length < total) {
+            grow();
+        }
+        Arrays.fill(values, null);
+        System.arraycopy(mergedKeys, 0, keys, 0, total);
+        System.arraycopy(mergedWeights, 0, weight, 0, total);
+        System.arraycopy(mergedValues, 0, values, 0, total);
+        highWater = total;
+        freeHead = NIL;
+        size = total;
+        root = build(0, total - 1, NIL);
+    }
+
+    // Links the slots [low, high], which hold keys in order, into a balanced subtree under above and returns its
+    // root. The recursion is as deep as the tree, under 32 levels for any int key set.
+    private int build(int low, int high, int above) {
+        if (low > high) {
+            return NIL;
+        }
+        int middle = (low + high) >>> 1;
+        parent[middle] = above;
+        left[middle] = build(low, middle - 1, middle);
+        right[middle] = build(middle + 1, high, middle);
+        update(middle);
+        return middle;
+    }
+
+    // Returns the value that was removed, or null if the key is absent. A node with two children takes over its
+    // successor's key, value and weight, so slots found before a delete may hold a different key after it.
+    @Override
+    @SuppressWarnings("unchecked")
+    public V delete(int key) {
+        int node = find(key);
+        if (node == NIL) {
+            return null;
+        }
+        V removed = (V) values[node];
+
+        if (left[node] != NIL && right[node] != NIL) {
+            int successor = right[node];
+            while (left[successor] != NIL) {
+                successor = left[successor];
+            }
+            keys[node] = keys[successor];
+            values[node] = values[successor];
+            weight[node] = weight[successor];
+            node = successor;
+        }
+
+        // The node now has at most one child, which takes its place
+        int child = left[node] != NIL ? left[node] : right[node];
+        int above = parent[node];
+        if (child != NIL) {
+            parent[child] = above;
+        }
+        replaceChild(above, node, child);
+        free(node);
+        retrace(above);
+        return removed;
+    }
+
+    private int allocate(int key, V value, int nodeWeight) {
+        int slot;
+        if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = left[slot];
+        } else {
+            if (highWater == keys.length) {
+                grow();
+            }
+            slot = highWater++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        left[slot] = NIL;
+        right[slot] = NIL;
+        height[slot] = 1;
+        weight[slot] = nodeWeight;
+        sum[slot] = nodeWeight;
+        size++;
+        return slot;
+    }
+
+    private void free(int slot) {
+        values[slot] = null;
+        left[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    private void grow() {
+        int length = 2 * keys.length;
+        keys = Arrays.copyOf(keys, length);
+        left = Arrays.copyOf(left, length);
+        right = Arrays.copyOf(right, length);
+        parent = Arrays.copyOf(parent, length);
+        height = Arrays.copyOf(height, length);
+        weight = Arrays.copyOf(weight, length);
+        sum = Arrays.copyOf(sum, length);
+        values = Arrays.copyOf(values, length);
+    }
+
+    // Walks from node to the root, refreshing heights and sums and rotating wherever the balance is off
+    private void retrace(int node) {
+        while (node != NIL) {
+            update(node);
+            int balance = balance(node);
+            if (balance > 1) {
+                if (balance(left[node]) < 0) {
+                    rotateLeft(left[node]);
+                }
+                node = rotateRight(node);
+            } else if (balance < -1) {
+                if (balance(right[node]) > 0) {
+                    rotateRight(right[node]);
+                }
+                node = rotateLeft(node);
+            }
+            node = parent[node];
+        }
+    }
+
+    private int rotateRight(int y) {
+        rotations++;
+        int x = left[y];
+        int between = right[x];
+
+        left[y] = between;
+        if (between != NIL) {
+            parent[between] = y;
+        }
+        right[x] = y;
+        parent[x] = parent[y];
+        replaceChild(parent[y], y, x);
+        parent[y] = x;
+
+        update(y);
+        update(x);
+        return x;
+    }
+
+    private int rotateLeft(int x) {
+        rotations++;
+        int y = right[x];
+        int between = left[y];
+
+        right[x] = between;
+        if (between != NIL) {
+            parent[between] = x;
+        }
+        left[y] = x;
+        parent[y] = parent[x];
+        replaceChild(parent[x], x, y);
+        parent[x] = y;
+
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private void replaceChild(int above, int oldChild, int newChild) {
+        if (above == NIL) {
+            root = newChild;
+        } else if (left[above] == oldChild) {
+            left[above] = newChild;
+        } else {
+            right[above] = newChild;
+        }
+    }
+
+    private void update(int node) {
+        height[node] = 1 + Math.max(heightOf(left[node]), heightOf(right[node]));
+        sum[node] = weight[node] + sumOf(left[node]) + sumOf(right[node]);
+    }
+
+    private int balance(int node) {
+        return heightOf(left[node]) - heightOf(right[node]);
+    }
+
+    private int heightOf(int node) {
+        return node == NIL ? 0 : height[node];
+    }
+
+    private int sumOf(int node) {
+        return node == NIL ? 0 : sum[node];
+    }
+}
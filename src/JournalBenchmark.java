@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// Measures what CommandJournal costs. The input's commands are decoded into arrays once, then executed from them
+// on a fresh manager without the journal and with it under each fsync policy, so the comparison is against
+// execution alone, not parsing. Each configuration runs once per round and reports its median.
+//
+//   java JournalBenchmark <input file> [group size] [checkpoint every] [rounds]
+public class JournalBenchmark {
+    private static final String[] POLICIES = {null, "never", "interval:100", "always"}; // null runs unjournaled
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java JournalBenchmark <input file> [group size] [checkpoint every] [rounds]");
+            return;
+        }
+        int groupSize = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        long checkpointEvery = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        int count = 0;
+        int[][] commands = new int[3][1 << 16];
+        try (CommandReader reader = new MappedCommandReader(Paths.get(args[0]))) {
+            while (reader.next()) {
+                if (reader.opcode() == Opcode.UNKNOWN) {
+                    continue;
+                }
+                if (count == commands[0].length) {
+                    for (int i = 0; i < 3; i++) {
+                        commands[i] = Arrays.copyOf(commands[i], 2 * count);
+                    }
+                }
+                commands[0][count] = reader.opcode();
+                commands[1][count] = Opcode.arity(reader.opcode()) > 0 ? reader.arg(0) : 0;
+                commands[2][count] = Opcode.arity(reader.opcode()) > 1 ? reader.arg(1) : 0;
+                count++;
+            }
+        }
+
+        System.out.printf("%d commands, groups of up to %d records, %s%n", count, groupSize,
+                checkpointEvery > 0 ? "a checkpoint every " + checkpointEvery + " commands" : "no checkpoints");
+        // The configurations take turns, so drift in the machine or the JIT touches them all alike
+        long[][] times = new long[POLICIES.length][rounds];
+        for (int r = -1; r < rounds; r++) {
+            for (int p = 0; p < POLICIES.length; p++) {
+                long time = run(commands, count, POLICIES[p], groupSize, checkpointEvery);
+                if (r >= 0) { // Round -1 warms up
+                    times[p][r] = time;
+                }
+            }
+        }
+        double unjournaled = 0;
+        for (int p = 0; p < POLICIES.length; p++) {
+            Arrays.sort(times[p]);
+            double perSecond = count * 1e9 / times[p][rounds / 2];
+            if (POLICIES[p] == null) {
+                unjournaled = perSecond;
+                System.out.printf("%-14s %12.0f commands/s%n", "unjournaled", perSecond);
+            } else {
+                System.out.printf("%-14s %12.0f commands/s  %+6.1f%%%n", POLICIES[p], perSecond,
+                        100 * (perSecond / unjournaled - 1));
+            }
+        }
+    }
+
+    // Returns the nanoseconds one run took, including closing the journal
+    private static long run(int[][] commands, int count, String policy, int groupSize, long checkpointEvery)
+            throws IOException {
+        Path directory = policy == null ? null : Files.createTempDirectory("journal");
+        ParkingLotManager manager = new ParkingLotManager();
+        CommandExecutor executor = new CommandExecutor(manager);
+        long start = System.nanoTime();
+        CommandJournal journal = directory == null ? null
+                : new CommandJournal(directory, manager, policy, groupSize, checkpointEvery);
+        for (int i = 0; i < count; i++) {
+            if (journal != null) {
+                journal.append(commands[0][i], commands[1][i], commands[2][i]);
+            }
+            executor.execute(commands[0][i], commands[1][i], commands[2][i], ResultSink.NONE);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (directory != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        return elapsed;
+    }
+}
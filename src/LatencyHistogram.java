@@ -0,0 +1,85 @@
+// Log-linear histogram of non-negative longs, HdrHistogram style: values below 2^SUB_BITS get a bucket each, and
+// every power of two above that is split into 2^SUB_BITS equal buckets, so a bucket spans at most 1/16 of its
+// values. Recording is a few shifts and one array increment, and nothing is allocated after construction.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB];
+    private long total;
+    private long sum;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // Adds every value another histogram recorded
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    // Upper end of the bucket holding the given percentile, never above the largest value recorded
+    public long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, lowerBound(i + 1) - 1);
+            }
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) - SUB);
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        if (shift >= 64 - SUB_BITS) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (SUB + (index & (SUB - 1))) << shift;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Random;
+
+// Compares the LedgerEngine implementations the --ledger option can pick, on the same key sets. Keys are drawn
+// below 2^20 so the bitset engine keeps its dense form. Lookups are the floor and ceiling queries the ledgers
+// make; churn is a delete plus an insert, which rebalances; sums are the sumGreater queries behind the count
+// commands, fewer of them because the treemap engine answers each by walking the entries.
+public class LedgerBenchmark {
+    private static final String[] ENGINES = {"avl", "bitset", "treemap", "skiplist", "btree"};
+    private static final int KEY_RANGE = 1 << 20;
+
+    // Lookup results land here so the JIT cannot drop the work
+    private static volatile long blackhole;
+
+    public static void main(String[] args) {
+        int lots = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int sums = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int rounds = 5;
+
+        int[] keys = new Random(1).ints(lots, 0, KEY_RANGE).toArray();
+        int[] queries = new Random(2).ints(operations, 0, KEY_RANGE).toArray();
+
+        System.out.println(lots + " lots, " + operations + " operations and " + sums
+                + " sums per measurement, best of " + rounds + " rounds");
+        long[][] best = new long[ENGINES.length][4];
+        for (int round = 0; round < rounds; round++) {
+            for (int e = 0; e < ENGINES.length; e++) {
+                keepBest(best[e], measure(LedgerEngine.open(ENGINES[e]), keys, queries, sums));
+            }
+        }
+
+        System.out.printf("%-9s %12s %12s %12s %12s%n", "ns/op", "build", "lookup", "churn", "sum");
+        for (int e = 0; e < ENGINES.length; e++) {
+            System.out.printf("%-9s %12.1f %12.1f %12.1f %12.1f%n", ENGINES[e], (double) best[e][0] / lots,
+                    (double) best[e][1] / operations, (double) best[e][2] / operations, (double) best[e][3] / sums);
+        }
+    }
+
+    private static long[] measure(LedgerEngine<Object> tree, int[] keys, int[] queries, int sums) {
+        long[] times = new long[4];
+
+        long start = System.nanoTime();
+        for (int key : keys) {
+            tree.insert(key, null, 1);
+        }
+        times[0] = System.nanoTime() - start;
+
+        long checksum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < queries.length; i++) {
+            int node = (i & 1) == 0 ? tree.floor(queries[i]) : tree.ceiling(queries[i]);
+            checksum += node == LedgerEngine.NIL ? 0 : tree.key(node);
+        }
+        times[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries.length; i++) {
+            int old = keys[i % keys.length];
+            tree.delete(old);
+            tree.insert(old, null, 1);
+        }
+        times[2] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < sums; i++) {
+            checksum += tree.sumGreater(queries[i % queries.length]);
+        }
+        times[3] = System.nanoTime() - start;
+
+        blackhole = checksum + tree.size();
+        return times;
+    }
+
+    private static void keepBest(long[] best, long[] times) {
+        for (int i = 0; i < best.length; i++) {
+            if (best[i] == 0 || times[i] < best[i]) {
+                best[i] = times[i];
+            }
+        }
+    }
+}
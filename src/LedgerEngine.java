@@ -0,0 +1,88 @@
+// Ordered map from unique int keys (lot capacities) to values, with an int weight per entry, that the
+// ParkingLotManager ledgers run on. Entries are addressed by int node handles, which stay valid only until the
+// next insert or delete. Every engine answers the same queries, so they can be swapped at startup.
+public interface LedgerEngine<V> {
+    int NIL = -1; // The node handle for "no such entry"
+
+    int size();
+
+    // Node holding the key, or NIL
+    int find(int key);
+
+    // Node with the smallest key, or NIL when empty
+    int first();
+
+    // Largest key <= key
+    int floor(int key);
+
+    // Largest key < key
+    int lower(int key);
+
+    // Smallest key >= key
+    int ceiling(int key);
+
+    // Smallest key > key
+    int higher(int key);
+
+    // Next node in key order, or NIL after the last
+    int successor(int node);
+
+    int key(int node);
+
+    V value(int node);
+
+    int weight(int node);
+
+    void setWeight(int node, int weight);
+
+    // Returns the new node, or NIL if the key is already present (the engine is left unchanged)
+    int insert(int key, V value, int weight);
+
+    // Inserts count entries of weight 0 whose keys are ascending, distinct and not yet present; the same as
+    // inserting them one at a time, which is what engines without a faster way do
+    default void insertSorted(int[] keys, V[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            insert(keys[i], values[i], 0);
+        }
+    }
+
+    // Returns the value that was removed, or null if the key is absent
+    V delete(int key);
+
+    // Total weight of the entries with keys greater than key
+    int sumGreater(int key);
+
+    // Total weight of the entries with keys in [low, high]
+    int sumBetween(int low, int high);
+
+    // Work counters for --metrics, totals since the engine was created; engines that do not track one report 0.
+    // Rotations are AVL rotations. An aggregate update is a setWeight, and its steps are the nodes whose weight
+    // totals it refreshed.
+    default long rotations() {
+        return 0;
+    }
+
+    default long aggregateUpdates() {
+        return 0;
+    }
+
+    default long aggregateSteps() {
+        return 0;
+    }
+
+    // Parses the --ledger option: "avl" (the default), "bitset", "treemap", "skiplist" or "btree"
+    static <V> LedgerEngine<V> open(String option) {
+        if (option == null || option.equals("avl")) {
+            return new IntAvlTree<>();
+        } else if (option.equals("bitset")) {
+            return new AdaptiveLedgerEngine<>();
+        } else if (option.equals("treemap")) {
+            return new TreeMapLedgerEngine<>();
+        } else if (option.equals("skiplist")) {
+            return new SkipListLedgerEngine<>();
+        } else if (option.equals("btree")) {
+            return new BPlusTreeLedgerEngine<>();
+        }
+        throw new IllegalArgumentException("Unknown ledger engine: " + option);
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+// The original line-by-line reader: every line is trimmed, split into Strings and parsed with parseInt
+public class LineCommandReader implements CommandReader {
+    private final BufferedReader reader;
+    private String[] parts;
+    private int opcode;
+
+    public LineCommandReader(String inputFile) throws IOException {
+        this.reader = new BufferedReader(new FileReader(inputFile));
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        String line;
+        // Read each line (command) from the input file
+        while ((line = reader.readLine()) != null) {
+            // Trim and ignore empty lines or comments
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            // Split the command into parts
+            parts = line.split("\\s+");
+            parts[0] = parts[0].toLowerCase();
+            opcode = Opcode.fromName(parts[0]);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int opcode() {
+        return opcode;
+    }
+
+    @Override
+    public int arg(int i) {
+        return Integer.parseInt(parts[i + 1]);
+    }
+
+    @Override
+    public String command() {
+        return parts[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
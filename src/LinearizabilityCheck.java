@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Stress test for ConcurrentParkingLotManager. Each round builds a fresh manager with a few small lots spread over
+// its stripes, lets several threads run short random command sequences on it at once and records when each command
+// was called and when it returned. It then searches for an order of all the commands in which a single-threaded
+// ParkingLotManager gives every command the result it got, and which keeps real time: a command that returned
+// before another was called comes first (the Wing and Gong check). A thread's own commands keep their order, so
+// each step of the search only tries the next command of every thread.
+//
+// The manager yields at steps into other stripes and the recording sink now and then before the command lets go of
+// its stripes, so the other threads run into those locks and into half-done commands even on one core. A last
+// check parks an add_truck inside one stripe and requires an add_truck and a count on another stripe to finish
+// meanwhile.
+//
+//   java LinearizabilityCheck [rounds] [threads] [commands per thread] [seed]
+public class LinearizabilityCheck {
+    private static final int STRIPES = 4;
+    private static final int MAX_CAPACITY = 40;
+
+    // Queries that are not commands, numbered apart from the opcodes
+    private static final int FIND_LOT = -1;
+    private static final int FIND_CLOSEST_GREATER = -2;
+
+    // One command of a round and what happened to it
+    private static final class Call {
+        final int opcode;
+        final int arg0;
+        final int arg1;
+        String result;
+        long called;
+        long returned;
+
+        Call(int opcode, int arg0, int arg1) {
+            this.opcode = opcode;
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+        }
+
+        @Override
+        public String toString() {
+            String name = opcode == FIND_LOT ? "find_lot" : opcode == FIND_CLOSEST_GREATER ? "find_closest_greater"
+                    : Opcode.name(opcode);
+            return name + " " + arg0 + " " + arg1 + " -> " + result;
+        }
+    }
+
+    // Also yields at every other step into another stripe, where a command is halfway through
+    private static final class Yielding extends ConcurrentParkingLotManager {
+        Yielding() {
+            super(STRIPES, MAX_CAPACITY, null);
+        }
+
+        @Override
+        public void enter(ParkingLotManager shard) {
+            super.enter(shard);
+            if (ThreadLocalRandom.current().nextBoolean()) {
+                Thread.yield();
+            }
+        }
+    }
+
+    // Keeps the result of the last command as the text line the simulator would write
+    private static class Recorder implements ResultSink {
+        private final Random random;
+        String last;
+
+        Recorder(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public void value(int value) {
+            record(String.valueOf(value));
+        }
+
+        @Override
+        public void pair(int first, int second) {
+            record(first + " " + second);
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+            StringBuilder line = new StringBuilder(placements.size() == 0 ? "-1" : "");
+            for (int i = 0; i < placements.size(); i++) {
+                line.append(i > 0 ? " - " : "").append(placements.truckID(i)).append(' ')
+                        .append(placements.capacity(i));
+            }
+            record(line.toString());
+        }
+
+        @Override
+        public void text(String line) {
+            record(line);
+        }
+
+        private void record(String result) {
+            last = result;
+            if (random != null && random.nextInt(4) == 0) {
+                Thread.yield(); // Still holding the command's stripes
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int commands = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        Random random = new Random(seed);
+        long overlapping = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            Call[] setup = setup(random);
+            Call[][] history = new Call[threads][commands];
+            int truckID = 1000;
+            for (Call[] calls : history) {
+                for (int i = 0; i < commands; i++) {
+                    calls[i] = randomCall(random, truckID++);
+                }
+            }
+            run(setup, history, random.nextLong());
+            overlapping += overlaps(history);
+            if (!linearizable(setup, history)) {
+                System.out.println("Round " + round + " is not linearizable. Setup:");
+                for (Call call : setup) {
+                    System.out.println("  " + call);
+                }
+                for (int t = 0; t < threads; t++) {
+                    System.out.println("Thread " + t + ":");
+                    for (Call call : history[t]) {
+                        System.out.println("  [" + call.called + ", " + call.returned + "] " + call);
+                    }
+                }
+                System.exit(1);
+            }
+        }
+        System.out.printf("%d rounds of %d threads x %d commands linearizable (%d overlapping command pairs), %.1f s%n",
+                rounds, threads, commands, overlapping, (System.nanoTime() - start) / 1e9);
+
+        if (!addsRunInParallel()) {
+            System.out.println("An add_truck waited for another stripe's add_truck");
+            System.exit(1);
+        }
+        System.out.println("add_truck and count on another stripe finished while an add_truck held its stripe");
+    }
+
+    // Lots with room for one to three trucks, some trucks parked and some of them ready
+    private static Call[] setup(Random random) {
+        Call[] setup = new Call[8 + 10 + 4];
+        int n = 0;
+        for (int i = 0; i < 8; i++) {
+            setup[n++] = new Call(Opcode.CREATE_PARKING_LOT, 1 + random.nextInt(MAX_CAPACITY), 1 + random.nextInt(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            setup[n++] = new Call(Opcode.ADD_TRUCK, i, 1 + random.nextInt(MAX_CAPACITY));
+        }
+        for (int i = 0; i < 4; i++) {
+            setup[n++] = new Call(Opcode.READY, 1 + random.nextInt(MAX_CAPACITY), 0);
+        }
+        return setup;
+    }
+
+    private static Call randomCall(Random random, int truckID) {
+        int capacity = 1 + random.nextInt(MAX_CAPACITY + 5);
+        int kind = random.nextInt(100);
+        if (kind < 40) {
+            return new Call(Opcode.ADD_TRUCK, truckID, capacity);
+        } else if (kind < 58) {
+            return new Call(Opcode.READY, capacity, 0);
+        } else if (kind < 72) {
+            return new Call(Opcode.LOAD, capacity, 1 + random.nextInt(3 * MAX_CAPACITY));
+        } else if (kind < 78) {
+            return new Call(Opcode.COUNT, capacity, 0);
+        } else if (kind < 82) {
+            return new Call(Opcode.COUNT_RANGE, capacity, capacity + random.nextInt(MAX_CAPACITY));
+        } else if (kind < 85) {
+            return new Call(random.nextBoolean() ? Opcode.COUNT_WAITING : Opcode.COUNT_READY, capacity, 0);
+        } else if (kind < 89) {
+            return new Call(FIND_LOT, capacity, 0);
+        } else if (kind < 93) {
+            return new Call(FIND_CLOSEST_GREATER, capacity, 0);
+        } else if (kind < 97) {
+            return new Call(Opcode.CREATE_PARKING_LOT, capacity, 1 + random.nextInt(3));
+        }
+        return new Call(Opcode.DELETE_PARKING_LOT, capacity, 0);
+    }
+
+    private static void run(Call[] setup, Call[][] history, long seed) throws Exception {
+        ConcurrentParkingLotManager manager = new Yielding();
+        Recorder quiet = new Recorder(null);
+        for (Call call : setup) {
+            manager.execute(call.opcode, call.arg0, call.arg1, quiet);
+        }
+        CyclicBarrier barrier = new CyclicBarrier(history.length);
+        Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[history.length];
+        for (int t = 0; t < history.length; t++) {
+            Call[] calls = history[t];
+            Recorder out = new Recorder(new Random(seed + t));
+            threads[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (Call call : calls) {
+                        call.called = System.nanoTime();
+                        call.result = call(manager, call, out);
+                        call.returned = System.nanoTime();
+                    }
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw new IllegalStateException("A thread failed", failure[0]);
+        }
+    }
+
+    private static String call(ConcurrentParkingLotManager manager, Call call, Recorder out) throws IOException {
+        switch (call.opcode) {
+            case FIND_LOT:
+                return String.valueOf(manager.findLot(call.arg0));
+            case FIND_CLOSEST_GREATER:
+                return String.valueOf(manager.findClosestGreater(call.arg0));
+            default:
+                out.last = "";
+                manager.execute(call.opcode, call.arg0, call.arg1, out);
+                return out.last;
+        }
+    }
+
+    // The same on one single-threaded manager
+    private static String call(ParkingLotManager manager, CommandExecutor executor, Call call, Recorder out)
+            throws IOException {
+        switch (call.opcode) {
+            case FIND_LOT:
+                return String.valueOf(capacityOf(manager.findLot(call.arg0)));
+            case FIND_CLOSEST_GREATER:
+                return String.valueOf(capacityOf(manager.findClosestGreater(call.arg0)));
+            default:
+                out.last = "";
+                executor.execute(call.opcode, call.arg0, call.arg1, out);
+                return out.last;
+        }
+    }
+
+    private static int capacityOf(ParkingLotManager.ParkingLot lot) {
+        return lot == null ? ConcurrentParkingLotManager.NO_LOT : lot.getLoadCapacity();
+    }
+
+    // Pairs of commands of different threads whose calls overlapped in time
+    private static long overlaps(Call[][] history) {
+        long pairs = 0;
+        for (int t = 0; t < history.length; t++) {
+            for (int u = t + 1; u < history.length; u++) {
+                for (Call a : history[t]) {
+                    for (Call b : history[u]) {
+                        if (a.called < b.returned && b.called < a.returned) {
+                            pairs++;
+                        }
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static boolean linearizable(Call[] setup, Call[][] history) throws IOException {
+        int total = 0;
+        for (Call[] calls : history) {
+            total += calls.length;
+        }
+        return search(setup, history, new int[history.length], new Call[total], 0);
+    }
+
+    // Depth-first over the orders that keep real time; next[t] is how many of thread t's commands are placed
+    private static boolean search(Call[] setup, Call[][] history, int[] next, Call[] order, int placed)
+            throws IOException {
+        if (placed == order.length) {
+            return true;
+        }
+        for (int t = 0; t < history.length; t++) {
+            if (next[t] == history[t].length) {
+                continue;
+            }
+            Call call = history[t][next[t]];
+            if (!mayGoNext(history, next, call)) {
+                continue;
+            }
+            order[placed] = call;
+            if (replay(setup, order, placed + 1).equals(call.result)) {
+                next[t]++;
+                boolean found = search(setup, history, next, order, placed + 1);
+                next[t]--;
+                if (found) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // No command still to place returned before this one was called
+    private static boolean mayGoNext(Call[][] history, int[] next, Call call) {
+        for (int u = 0; u < history.length; u++) {
+            if (next[u] < history[u].length && history[u][next[u]].returned < call.called) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Runs the setup and the first commands of the order on a fresh manager; returns the last one's result
+    private static String replay(Call[] setup, Call[] order, int length) throws IOException {
+        ParkingLotManager manager = new ParkingLotManager();
+        CommandExecutor executor = new CommandExecutor(manager);
+        Recorder out = new Recorder(null);
+        for (Call call : setup) {
+            call(manager, executor, call, out);
+        }
+        String result = null;
+        for (int i = 0; i < length; i++) {
+            result = call(manager, executor, order[i], out);
+        }
+        return result;
+    }
+
+    private static boolean addsRunInParallel() throws Exception {
+        ConcurrentParkingLotManager manager = new ConcurrentParkingLotManager(2, 100, null);
+        Recorder quiet = new Recorder(null);
+        manager.execute(Opcode.CREATE_PARKING_LOT, 10, 5, quiet);
+        manager.execute(Opcode.CREATE_PARKING_LOT, 90, 5, quiet);
+
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder parked = new Recorder(null) {
+            @Override
+            public void value(int value) {
+                inside.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Thread holder = new Thread(() -> {
+            try {
+                manager.execute(Opcode.ADD_TRUCK, 1, 10, parked);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        holder.start();
+        inside.await();
+
+        Recorder out = new Recorder(null);
+        Thread other = new Thread(() -> {
+            try {
+                manager.execute(Opcode.ADD_TRUCK, 2, 90, out);
+                manager.execute(Opcode.COUNT, 60, 0, out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        other.start();
+        other.join(TimeUnit.SECONDS.toMillis(5));
+        boolean parallel = !other.isAlive() && "1".equals(out.last);
+        release.countDown();
+        holder.join();
+        other.join();
+        return parallel;
+    }
+}
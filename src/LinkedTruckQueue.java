@@ -0,0 +1,76 @@
+import java.util.NoSuchElementException;
+
+// FIFO of truck handles linked through their TruckStore records. Adding at the tail and removing the head are
+// O(1), and the queue itself is three ints, so a lot's trucks take no heap space outside the store. This is the
+// queue of the off-heap store, whose point is that parked trucks cost the heap nothing; a walk follows one link
+// per truck through the store.
+public class LinkedTruckQueue implements TruckQueue {
+    private final TruckStore trucks;
+    private int head = TruckStore.NONE;
+    private int tail = TruckStore.NONE;
+    private int size;
+
+    public LinkedTruckQueue(TruckStore trucks) {
+        this.trucks = trucks;
+    }
+
+    @Override
+    public void add(int truck) {
+        trucks.setNext(truck, TruckStore.NONE);
+        if (size == 0) {
+            head = truck;
+        } else {
+            trucks.setNext(tail, truck);
+        }
+        tail = truck;
+        size++;
+    }
+
+    @Override
+    public int head() {
+        if (size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return head;
+    }
+
+    @Override
+    public int tail() {
+        if (size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return tail;
+    }
+
+    @Override
+    public int removeHead() {
+        int truck = head();
+        head = trucks.next(truck);
+        size--;
+        if (size == 0) {
+            tail = TruckStore.NONE;
+        }
+        return truck;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // A cursor is the truck handle itself
+    @Override
+    public int start() {
+        return head;
+    }
+
+    @Override
+    public int truck(int cursor) {
+        return cursor;
+    }
+
+    @Override
+    public int next(int cursor) {
+        return trucks.next(cursor);
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+
+// Load generator for SimulatorServer. It creates the lots over one connection, then runs several connections at
+// once, each on its own thread and keeping up to --pipeline requests outstanding. Requests follow
+// WorkloadGenerator's default mix (add_truck 40, ready 25, load 25, count 5, churn 5), each aimed at the
+// capacity of a random lot. Reports the latency percentiles, from sending a request to reading its response,
+// and the requests per second sustained over the run. The first tenth of every connection's requests only
+// warms up and is left out of both.
+//
+//   java LoadClient [--port=N | --unix=<path>] [--connections=N] [--requests=N] [--pipeline=N] [--lots=N]
+public class LoadClient {
+    private static final String USAGE = "Usage: java LoadClient [--port=N | --unix=<path>] [--connections=N]"
+            + " [--requests=N] [--pipeline=N] [--lots=N]";
+
+    private static final int MAX_CAPACITY = 1_000_000;
+    private static final int BUFFER = 64 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int port = 7250;
+        String unixPath = null;
+        int connections = 4;
+        int requests = 1_000_000;
+        int pipeline = 16;
+        int lots = 1000;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--unix=")) {
+                unixPath = arg.substring("--unix=".length());
+            } else if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(arg.substring("--connections=".length()));
+            } else if (arg.startsWith("--requests=")) {
+                requests = Integer.parseInt(arg.substring("--requests=".length()));
+            } else if (arg.startsWith("--pipeline=")) {
+                pipeline = Integer.parseInt(arg.substring("--pipeline=".length()));
+            } else if (arg.startsWith("--lots=")) {
+                lots = Integer.parseInt(arg.substring("--lots=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (connections < 1 || pipeline < 1 || lots < 1) {
+            System.out.println("--connections, --pipeline and --lots must be positive");
+            return;
+        }
+
+        int[] capacities = new SplittableRandom(1).ints(lots, 1, MAX_CAPACITY + 1).toArray();
+        SocketAddress address = SimulatorServer.address(port, unixPath);
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            Connection setup = new Connection(channel, capacities, 0, pipeline);
+            for (int capacity : capacities) {
+                setup.send(Opcode.CREATE_PARKING_LOT, capacity, 8);
+            }
+            setup.drain();
+        }
+
+        Connection[] clients = new Connection[connections];
+        Thread[] threads = new Thread[connections];
+        Throwable[] failure = new Throwable[1];
+        int depth = pipeline;
+        for (int c = 0; c < connections; c++) {
+            int index = c;
+            int share = requests / connections + (c < requests % connections ? 1 : 0);
+            threads[c] = new Thread(() -> {
+                try (SocketChannel channel = SocketChannel.open(address)) {
+                    clients[index] = new Connection(channel, capacities, index + 1, depth);
+                    clients[index].run(share);
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw new IllegalStateException("A connection failed", failure[0]);
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        long errors = 0;
+        long start = Long.MAX_VALUE;
+        long end = 0;
+        for (Connection client : clients) {
+            latency.add(client.latency);
+            errors += client.errors;
+            start = Math.min(start, client.measuredFrom);
+            end = Math.max(end, client.finished);
+        }
+
+        System.out.printf("%d requests over %d connections, %d in flight each, %d lots%n", latency.count(),
+                connections, pipeline, lots);
+        System.out.printf("%.0f requests/s, latency (us) p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                latency.count() * 1e9 / Math.max(1, end - start), latency.percentile(50) / 1e3,
+                latency.percentile(99) / 1e3, latency.percentile(99.9) / 1e3, latency.max() / 1e3);
+        if (errors > 0) {
+            System.out.println(errors + " requests were answered with an error");
+        }
+    }
+
+    // One client connection with its own request stream and latency record
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final int[] capacities;
+        private final SplittableRandom random;
+        private final int pipeline;
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER);
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER);
+        private final long[] sentAt; // Ring of the send times of the outstanding requests
+        private int oldest;
+        private int outstanding;
+        private int truckID;
+        private boolean measuring;
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        long errors;
+        long measuredFrom;
+        long finished;
+
+        Connection(SocketChannel channel, int[] capacities, int index, int pipeline) {
+            this.channel = channel;
+            this.capacities = capacities;
+            this.random = new SplittableRandom(index);
+            this.pipeline = pipeline;
+            this.sentAt = new long[pipeline];
+            this.truckID = index * 10_000_000;
+        }
+
+        void run(int requests) throws IOException {
+            int warmup = requests / 10;
+            for (int sent = 0; sent < requests; sent++) {
+                if (sent == warmup) {
+                    drain();
+                    measuring = true;
+                    measuredFrom = System.nanoTime();
+                }
+                sendRandom();
+            }
+            drain();
+            finished = System.nanoTime();
+        }
+
+        private void sendRandom() throws IOException {
+            int capacity = capacities[random.nextInt(capacities.length)];
+            int kind = random.nextInt(100);
+            if (kind < 40) {
+                send(Opcode.ADD_TRUCK, truckID++, capacity);
+            } else if (kind < 65) {
+                send(Opcode.READY, capacity, 0);
+            } else if (kind < 90) {
+                send(Opcode.LOAD, capacity, capacity * (1 + random.nextInt(4)));
+            } else if (kind < 95) {
+                send(Opcode.COUNT, capacity, 0);
+            } else {
+                send(Opcode.DELETE_PARKING_LOT, capacity, 0);
+                send(Opcode.CREATE_PARKING_LOT, capacity, 8);
+            }
+        }
+
+        // Queues a request, first waiting for a response if the pipeline is full
+        void send(int opcode, int arg0, int arg1) throws IOException {
+            while (outstanding == pipeline) {
+                flush();
+                receive();
+            }
+            WireProtocol.putRequest(out, opcode, arg0, arg1);
+            sentAt[(oldest + outstanding) % pipeline] = System.nanoTime();
+            outstanding++;
+            if (outstanding == pipeline || out.remaining() < 2 * WireProtocol.MAX_REQUEST) {
+                flush();
+            }
+        }
+
+        // Waits for every outstanding response
+        void drain() throws IOException {
+            flush();
+            while (outstanding > 0) {
+                receive();
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        // Reads at least one response
+        private void receive() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("The server closed the connection");
+            }
+            in.flip();
+            int length;
+            while ((length = WireProtocol.openFrame(in, Integer.MAX_VALUE)) >= 0) {
+                int end = in.position() + length;
+                if (in.get() == WireProtocol.ERROR) {
+                    errors++;
+                }
+                in.position(end);
+                long now = System.nanoTime();
+                if (measuring) {
+                    latency.record(now - sentAt[oldest]);
+                }
+                oldest = (oldest + 1) % pipeline;
+                outstanding--;
+            }
+            if (in.position() == 0 && in.limit() == in.capacity()) {
+                // A response longer than the buffer
+                ByteBuffer larger = ByteBuffer.allocate(2 * in.capacity());
+                larger.put(in);
+                in = larger;
+                return;
+            }
+            in.compact();
+        }
+    }
+}
@@ -1,139 +1,257 @@
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class Main {
 
     public static void main(String[] args) {
-        ParkingLotManager manager = new ParkingLotManager();
-
         String inputFile = args[0];
         String outputFile = args[1];
 
-        // Use try-with-resources to ensure files are closed
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-
-            String line;
-            // Read each line (command) from the input file
-            while ((line = reader.readLine()) != null) {
-                // Trim and ignore empty lines or comments
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) {
-                    continue;
-                }
-
-                // Split the command into parts
-                String[] parts = line.split("\\s+");
-                String command = parts[0].toLowerCase();
-
-                String output = ""; // To collect the output for this command
-
-                switch (command) {
-                    case "create_parking_lot":
-                        handleCreateParkingLot(manager, parts);
-                        break;
-
-                    case "add_truck":
-                        output = handleAddTruck(manager, parts);
-                        break;
-
-                    case "ready":
-                        output = handleReady(manager, parts);
-                        break;
-
-                    case "load":
-                        // Handle LOAD command
-                        output = handleLoad(manager, parts);
-                        break;
-
-                    case "count":
-                        // Handle COUNT command
-                        output = handleCount(manager, parts);
-                        break;
+        // Optional flags after the file names
+        boolean mapped = false;
+        boolean pipelined = false;
+        boolean directOutput = false;
+        boolean relocateOnDelete = false;
+        String events = null;
+        String truckStore = null;
+        String ledger = null;
+        String metricsTarget = null; // Where the metrics report goes, "-" for standard output
+        String restoreState = null;
+        String saveState = null;
+        String journalDirectory = null;
+        String resumeDirectory = null;
+        String fsync = null;
+        int groupCommit = 4096;
+        long checkpointEvery = 1_000_000;
+        int shards = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--mmap")) {
+                mapped = true;
+            } else if (args[i].equals("--pipeline")) {
+                pipelined = true;
+            } else if (args[i].equals("--direct-output")) {
+                directOutput = true;
+            } else if (args[i].equals("--relocate-on-delete")) {
+                relocateOnDelete = true;
+            } else if (args[i].startsWith("--events=")) {
+                events = args[i].substring("--events=".length());
+            } else if (args[i].startsWith("--truck-store=")) {
+                truckStore = args[i].substring("--truck-store=".length());
+            } else if (args[i].startsWith("--ledger=")) {
+                ledger = args[i].substring("--ledger=".length());
+            } else if (args[i].equals("--metrics")) {
+                metricsTarget = "-";
+            } else if (args[i].startsWith("--metrics=")) {
+                metricsTarget = args[i].substring("--metrics=".length());
+            } else if (args[i].startsWith("--restore-state=")) {
+                restoreState = args[i].substring("--restore-state=".length());
+            } else if (args[i].startsWith("--save-state=")) {
+                saveState = args[i].substring("--save-state=".length());
+            } else if (args[i].startsWith("--journal=")) {
+                journalDirectory = args[i].substring("--journal=".length());
+            } else if (args[i].startsWith("--resume=")) {
+                resumeDirectory = args[i].substring("--resume=".length());
+            } else if (args[i].startsWith("--fsync=")) {
+                fsync = args[i].substring("--fsync=".length());
+            } else if (args[i].startsWith("--group-commit=")) {
+                groupCommit = Integer.parseInt(args[i].substring("--group-commit=".length()));
+            } else if (args[i].startsWith("--checkpoint-every=")) {
+                checkpointEvery = Long.parseLong(args[i].substring("--checkpoint-every=".length()));
+            } else if (args[i].startsWith("--shards=")) {
+                shards = Integer.parseInt(args[i].substring("--shards=".length()));
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
 
-                    case "delete_parking_lot":
-                        // Handle delete_parking_lot command
-                        handleDeleteLot(manager, parts);
-                        break;
+        // The shards run without events and share one heap truck store
+        if (shards > 0 && (pipelined || events != null || truckStore != null || metricsTarget != null)) {
+            System.out.println("--shards cannot be combined with --pipeline, --events, --truck-store or --metrics");
+            return;
+        }
+        if (shards > 0 && (restoreState != null || saveState != null || relocateOnDelete)) {
+            System.out.println("--shards cannot be combined with --restore-state, --save-state or"
+                    + " --relocate-on-delete");
+            return;
+        }
+        if (journalDirectory != null && (shards > 0 || pipelined || restoreState != null)) {
+            System.out.println("--journal cannot be combined with --shards, --pipeline or --restore-state");
+            return;
+        }
+        if (resumeDirectory != null && (shards > 0 || pipelined || restoreState != null || journalDirectory != null
+                || metricsTarget != null)) {
+            System.out.println("--resume cannot be combined with --shards, --pipeline, --restore-state, --journal"
+                    + " or --metrics");
+            return;
+        }
 
-                    default:
-                        output = "Unknown command: " + command;
-                        break;
+        // A resumed run reads the input from a byte offset and keeps the start of the output, so it opens both
+        // files itself
+        if (resumeDirectory != null) {
+            try (EventSink eventSink = EventSink.open(events)) {
+                ParkingLotManager manager = new ParkingLotManager(eventSink, TruckStore.open(truckStore), ledger);
+                if (relocateOnDelete) {
+                    manager.enableRelocationOnDelete();
                 }
+                String summary = ResumableRun.run(manager, Paths.get(inputFile), Paths.get(outputFile),
+                        Paths.get(resumeDirectory), checkpointEvery);
+                finish(eventSink, manager, saveState, summary, outputFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        // Use try-with-resources to ensure files are closed
+        try (EventSink eventSink = shards > 0 ? EventSink.NONE : EventSink.open(events);
+             CommandReader reader = mapped ? new MappedCommandReader(Paths.get(inputFile)) : new LineCommandReader(inputFile)) {
 
-                if (!output.isEmpty()) {
-                    writer.write(output);
-                    writer.newLine(); // Add a newline for readability
+            Metrics metrics = metricsTarget == null ? Metrics.NONE : new Metrics();
+            ParkingLotManager manager = new ParkingLotManager(eventSink, TruckStore.open(truckStore), ledger, metrics);
+            if (relocateOnDelete) {
+                manager.enableRelocationOnDelete();
+            }
+            if (restoreState != null) {
+                StateSnapshot.restore(Paths.get(restoreState), manager);
+            }
+            String summary = null;
+            if (journalDirectory != null) {
+                CommandJournal journal = new CommandJournal(Paths.get(journalDirectory), manager, fsync, groupCommit,
+                        checkpointEvery);
+                summary = run(manager, reader, Paths.get(outputFile), journal);
+            } else {
+                try (ResultSink out = directOutput ? new DirectOutputWriter(Paths.get(outputFile))
+                        : new TextResultSink(new BufferedWriter(new FileWriter(outputFile)))) {
+                    if (shards > 0) {
+                        summary = ShardedRunner.run(shards, ledger, reader, out);
+                    } else if (pipelined) {
+                        summary = PipelinedRunner.run(manager, reader, out);
+                    } else {
+                        run(manager, reader, out);
+                    }
                 }
             }
 
-            System.out.println("Simulation completed. Outputs are written to " + outputFile);
+            finish(eventSink, manager, saveState, summary, outputFile);
+            if (metrics.isEnabled()) {
+                manager.sampleCounters();
+                metrics.report(metricsTarget);
+            }
 
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Create Parking Lot
-    private static void handleCreateParkingLot(ParkingLotManager manager, String[] parts) {
-        int loadCapacity = Integer.parseInt(parts[1]);
-        int truckCapacity = Integer.parseInt(parts[2]);
-        manager.ledger.insert(manager.new ParkingLot(loadCapacity, truckCapacity));
-    }
-
-    // Add Truck
-    private static String handleAddTruck(ParkingLotManager manager, String[] parts) {
-        int truckID = Integer.parseInt(parts[1]);
-        int totalCapacity = Integer.parseInt(parts[2]);
-        int result = manager.truckAdder(truckID, totalCapacity);
-
-        if (result == -2) {
-            result = -1;
+    // Ends a run: lets the event log finish before printing anything else, then saves the state if asked and
+    // reports the run's summary, if it has one
+    private static void finish(EventSink eventSink, ParkingLotManager manager, String saveState, String summary,
+            String outputFile) throws IOException {
+        eventSink.drain();
+        if (saveState != null) {
+            StateSnapshot.save(manager, Paths.get(saveState));
         }
-
-        return String.valueOf(result);
+        if (summary != null) {
+            System.out.println(summary);
+        }
+        System.out.println("Simulation completed. Outputs are written to " + outputFile);
     }
 
-    // Ready Command
-    private static String handleReady(ParkingLotManager manager, String[] parts) {
-        int capacity = Integer.parseInt(parts[1]);
-        ParkingLotManager.WaitingNode lot = manager.waitingLedger.findLot(capacity);
+    // Runs every command of the reader on the calling thread
+    static void run(ParkingLotManager manager, CommandReader reader, ResultSink out) throws IOException {
+        run(manager, reader, out, null);
+    }
 
-        if (lot == null)
-            return "-1";
-        else {
-            int[] result = lot.lot.ready();
-            return String.valueOf(result[0]) + " " + String.valueOf(result[1]);
+    // Runs the input through the journal, which recovered the manager, and returns its summary. The output is
+    // written like --direct-output so the journal can record its length: a recovered run cuts it back to what the
+    // covered commands wrote and goes on from there. A run that gets through the input clears the journal.
+    static String run(ParkingLotManager manager, CommandReader reader, Path output, CommandJournal journal)
+            throws IOException {
+        try (DirectOutputWriter out = journal.position() > 0 ? new DirectOutputWriter(output, journal.outputLength())
+                : new DirectOutputWriter(output)) {
+            journal.track(out);
+            try {
+                run(manager, reader, out, journal);
+                journal.finish();
+            } finally {
+                journal.close(); // Commits the last group before the summary counts it
+            }
         }
+        return journal.summary();
     }
 
-    // Load Command
-    private static String handleLoad(ParkingLotManager manager, String[] parts) {
-        int capacity = Integer.parseInt(parts[1]);
-        int amount = Integer.parseInt(parts[2]);
-        String output;
+    // Same, journaling every command; the commands the journal already covers are skipped. Runs of consecutive
+    // create_parking_lot commands are gathered and created in bulk, unless a journal or the metrics need each one
+    // to run on its own.
+    static void run(ParkingLotManager manager, CommandReader reader, ResultSink out, CommandJournal journal)
+            throws IOException {
+        CommandExecutor executor = new CommandExecutor(manager);
+        long skip = journal == null ? 0 : journal.position();
+        CreateBatch batch = journal == null && !manager.metrics().isEnabled() ? new CreateBatch() : null;
 
-        ParkingLotManager.ReadyNode lot = manager.readyLedger.findLotMax(capacity);
+        while (reader.next()) {
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            int opcode = reader.opcode();
+            int arg0 = Opcode.arity(opcode) > 0 ? reader.arg(0) : 0;
+            int arg1 = Opcode.arity(opcode) > 1 ? reader.arg(1) : 0;
+            if (journal != null) {
+                journal.append(opcode, arg0, arg1);
+            }
 
-        if (lot == null) {
-            output = "-1";
-        } else {
-            output = manager.load(lot, amount);
+            if (batch != null) {
+                if (opcode == Opcode.CREATE_PARKING_LOT) {
+                    batch.add(arg0, arg1, manager, executor, out);
+                    continue;
+                }
+                batch.flush(manager, executor, out);
+            }
+            if (opcode == Opcode.UNKNOWN) {
+                out.text("Unknown command: " + reader.command());
+            } else {
+                executor.execute(opcode, arg0, arg1, out);
+            }
+        }
+        if (batch != null) {
+            batch.flush(manager, executor, out);
         }
-
-        return output;
     }
 
-    // Delete Parking Lot
-    private static void handleDeleteLot(ParkingLotManager manager, String[] parts) {
-        int capacity = Integer.parseInt(parts[1]);
-        manager.ledger.delete(capacity);
-    }
+    // create_parking_lot commands waiting to run together
+    private static final class CreateBatch {
+        private static final int MAX_SIZE = 1 << 20;
 
-    // Count Command
-    private static String handleCount(ParkingLotManager manager, String[] parts) {
-        int capacity = Integer.parseInt(parts[1]);
-        int result = manager.countTrucks(capacity);
+        private int[] capacities = new int[64];
+        private int[] truckLimits = new int[64];
+        private int size;
 
-        return String.valueOf(result);
+        void add(int capacity, int truckLimit, ParkingLotManager manager, CommandExecutor executor, ResultSink out)
+                throws IOException {
+            if (size == capacities.length) {
+                capacities = Arrays.copyOf(capacities, 2 * size);
+                truckLimits = Arrays.copyOf(truckLimits, 2 * size);
+            }
+            capacities[size] = capacity;
+            truckLimits[size++] = truckLimit;
+            if (size == MAX_SIZE) {
+                flush(manager, executor, out);
+            }
+        }
+
+        // A lone command takes the usual path
+        void flush(ParkingLotManager manager, CommandExecutor executor, ResultSink out) throws IOException {
+            if (size == 1) {
+                executor.execute(Opcode.CREATE_PARKING_LOT, capacities[0], truckLimits[0], out);
+            } else if (size > 1) {
+                manager.createParkingLots(capacities, truckLimits, size);
+                manager.publishSnapshot();
+            }
+            size = 0;
+        }
     }
 }
@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads commands straight out of a memory-mapped input file. The opcode and the integer arguments are decoded
+// from the mapped bytes, so unlike readLine/split/parseInt nothing is allocated per command.
+public class MappedCommandReader implements CommandReader {
+    // Files larger than this are mapped one window at a time
+    private static final int WINDOW_SIZE = 1 << 28;
+    private static final int MAX_ARGS = 2;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart; // File offset of the first byte in the window
+    private int windowSize = WINDOW_SIZE;
+    private int position; // Read position inside the window
+    private int limit;
+
+    // The current command, as positions inside the window
+    private int opcode;
+    private int commandStart;
+    private int commandEnd;
+    private final int[] argStart = new int[MAX_ARGS];
+    private final int[] argEnd = new int[MAX_ARGS];
+    private int argCount;
+
+    public MappedCommandReader(Path inputFile) throws IOException {
+        this(inputFile, 0);
+    }
+
+    // Starts reading at a byte offset, which must be the start of a line
+    public MappedCommandReader(Path inputFile, long offset) throws IOException {
+        this.channel = FileChannel.open(inputFile, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        if (offset < 0 || offset > fileSize) {
+            channel.close();
+            throw new IOException("Offset " + offset + " is outside " + inputFile);
+        }
+        map(offset);
+    }
+
+    // Byte offset of the line after the current command, where a reader opened later would carry on
+    public long offset() {
+        return windowStart + position;
+    }
+
+    // Skips blank lines and comments
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (position >= limit) {
+                if (windowStart + position >= fileSize) {
+                    return false;
+                }
+                map(windowStart + position);
+            }
+
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < limit) {
+                byte b = window.get(lineEnd);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                lineEnd++;
+            }
+
+            // The line continues past the mapped window; map again starting at this line
+            if (lineEnd == limit && windowStart + limit < fileSize) {
+                if (lineStart == 0) {
+                    windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * windowSize);
+                }
+                map(windowStart + lineStart);
+                continue;
+            }
+
+            position = lineEnd < limit ? lineEnd + 1 : lineEnd;
+            if (parseLine(lineStart, lineEnd)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public int opcode() {
+        return opcode;
+    }
+
+    // Arguments are parsed on demand, so commands ignore any extra words like split() did
+    @Override
+    public int arg(int i) {
+        if (i >= argCount) {
+            throw new ArrayIndexOutOfBoundsException("Index " + (i + 1) + " out of bounds for length " + (argCount + 1));
+        }
+        return parseInt(argStart[i], argEnd[i]);
+    }
+
+    @Override
+    public String command() {
+        byte[] bytes = new byte[commandEnd - commandStart];
+        window.get(commandStart, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).toLowerCase();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void map(long offset) throws IOException {
+        long size = Math.min(windowSize, fileSize - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        windowStart = offset;
+        position = 0;
+        limit = (int) size;
+    }
+
+    // Splits a line the same way trim() and split("\\s+") do. Returns false for blank lines and comments.
+    private boolean parseLine(int start, int end) {
+        while (start < end && (window.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (window.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        if (start == end || window.get(start) == '#') {
+            return false;
+        }
+
+        int i = start;
+        while (i < end && !isSeparator(window.get(i))) {
+            i++;
+        }
+        commandStart = start;
+        commandEnd = i;
+        opcode = Opcode.fromBytes(window, commandStart, commandEnd);
+
+        argCount = 0;
+        while (i < end && argCount < MAX_ARGS) {
+            while (isSeparator(window.get(i))) {
+                i++;
+            }
+            argStart[argCount] = i;
+            while (i < end && !isSeparator(window.get(i))) {
+                i++;
+            }
+            argEnd[argCount] = i;
+            argCount++;
+        }
+        return true;
+    }
+
+    // Same characters as the \s regex class
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    // Integer.parseInt over the window bytes, accumulating negatively like the JDK so MIN_VALUE parses
+    private int parseInt(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        byte first = window.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (negative) {
+                limit = Integer.MIN_VALUE;
+            }
+            i++;
+        }
+        if (i == end) {
+            throw numberFormat(start, end);
+        }
+        int result = 0;
+        while (i < end) {
+            int digit = window.get(i++) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw numberFormat(start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormat(start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private NumberFormatException numberFormat(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        return new NumberFormatException("For input string: \"" + new String(bytes, StandardCharsets.UTF_8) + "\"");
+    }
+}
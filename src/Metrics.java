@@ -0,0 +1,96 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+// Opt-in instrumentation (--metrics): a latency histogram per command type, histograms of how far relocations
+// and load spills probe, and work counters of the ledger engines. NONE records nothing, and callers check
+// isEnabled() before taking timestamps, so a run without --metrics pays one well-predicted branch per command.
+public final class Metrics {
+    public static final Metrics NONE = new Metrics(false);
+
+    private final boolean enabled;
+    private final LatencyHistogram[] latency = new LatencyHistogram[Opcode.count()]; // Nanoseconds, by opcode
+    private final LatencyHistogram relocationProbes = new LatencyHistogram(); // Lots looked at per turned-away truck
+    private final LatencyHistogram spillProbes = new LatencyHistogram(); // Ready lots looked at per load
+
+    // Engine work, sampled from the manager right before a report
+    private long rotations;
+    private long aggregateUpdates;
+    private long aggregateSteps;
+
+    public Metrics() {
+        this(true);
+    }
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LatencyHistogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void commandLatency(int opcode, long nanos) {
+        if (enabled) {
+            latency[opcode].record(nanos);
+        }
+    }
+
+    public void relocation(int probes) {
+        if (enabled) {
+            relocationProbes.record(probes);
+        }
+    }
+
+    public void spill(int probes) {
+        if (enabled) {
+            spillProbes.record(probes);
+        }
+    }
+
+    // Totals over every ledger engine and capacity index of a manager, see ParkingLotManager.sampleCounters
+    public void engineCounters(long rotations, long aggregateUpdates, long aggregateSteps) {
+        this.rotations = rotations;
+        this.aggregateUpdates = aggregateUpdates;
+        this.aggregateSteps = aggregateSteps;
+    }
+
+    // Writes the report to a file, or to standard output for "-"
+    public void report(String target) throws IOException {
+        if (target.equals("-")) {
+            PrintWriter out = new PrintWriter(System.out);
+            report(out);
+            out.flush();
+        } else {
+            try (Writer out = new FileWriter(target)) {
+                report(out);
+            }
+        }
+    }
+
+    public void report(Writer out) throws IOException {
+        out.write(String.format("%-20s %12s %10s %10s %10s %10s %10s %12s%n", "command (ns)", "count", "mean",
+                "p50", "p90", "p99", "p99.9", "max"));
+        for (int opcode = 1; opcode < latency.length; opcode++) {
+            if (latency[opcode].count() > 0) {
+                row(out, Opcode.name(opcode), latency[opcode]);
+            }
+        }
+        out.write(String.format("%n%-20s %12s %10s %10s %10s %10s %10s %12s%n", "probes", "count", "mean", "p50",
+                "p90", "p99", "p99.9", "max"));
+        row(out, "relocation", relocationProbes);
+        row(out, "load spill", spillProbes);
+        out.write(String.format("%nrotations %d, aggregate updates %d walking %d nodes (%.2f per update)%n", rotations,
+                aggregateUpdates, aggregateSteps, aggregateUpdates == 0 ? 0.0 : (double) aggregateSteps / aggregateUpdates));
+    }
+
+    private static void row(Writer out, String name, LatencyHistogram histogram) throws IOException {
+        out.write(String.format("%-20s %12d %10.1f %10d %10d %10d %10d %12d%n", name, histogram.count(),
+                histogram.mean(), histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+                histogram.percentile(99.9), histogram.max()));
+    }
+}
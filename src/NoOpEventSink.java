@@ -0,0 +1,60 @@
+// Discards every event. Calls through it inline to nothing, so a run with it matches a build without logging.
+public final class NoOpEventSink implements EventSink {
+
+    @Override
+    public void lotInserted(int capacity) {
+    }
+
+    @Override
+    public void lotDeleted(int capacity) {
+    }
+
+    @Override
+    public void lotNotFound(int capacity) {
+    }
+
+    @Override
+    public void lotLeftLedger(int capacity, boolean readyLedger) {
+    }
+
+    @Override
+    public void readyLotInserted(int capacity) {
+    }
+
+    @Override
+    public void truckAdded(int truckID, int lotCapacity) {
+    }
+
+    @Override
+    public void truckRelocating(int truckID, int fullLotCapacity) {
+    }
+
+    @Override
+    public void noSmallerLot(int truckID) {
+    }
+
+    @Override
+    public void relocationFailed(int truckID) {
+    }
+
+    @Override
+    public void truckReady(int truckID, int lotCapacity) {
+    }
+
+    @Override
+    public void truckLoaded(int truckID, int lotCapacity) {
+    }
+
+    @Override
+    public void noReadyLot(boolean spilling) {
+    }
+
+    @Override
+    public void count(int capacity, int total) {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,118 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Truck records kept outside the Java heap in direct ByteBuffer chunks. Every record is four ints (ID, current
+// load, total capacity, link), so the heap holds only the chunk table however many trucks there are, and the
+// garbage collector never scans or moves the records. Chunks are added as the fleet grows and are never copied.
+public class OffHeapTruckStore implements TruckStore {
+    private static final int RECORD_BYTES = 16;
+    private static final int ID = 0;
+    private static final int LOAD = 4;
+    private static final int CAPACITY = 8;
+    private static final int LINK = 12;
+
+    private static final int CHUNK_BITS = 16; // 65536 records, 1 MB per chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private int highWater; // Handles below this have been handed out at least once
+    private int freeHead = NONE;
+    private int live;
+
+    @Override
+    public int allocate(int truckID, int currentLoad, int totalCapacity) {
+        int handle;
+        if (freeHead != NONE) {
+            handle = freeHead;
+            freeHead = next(handle);
+        } else {
+            if (highWater == chunkCount << CHUNK_BITS) {
+                addChunk();
+            }
+            handle = highWater++;
+        }
+        ByteBuffer chunk = chunks[handle >>> CHUNK_BITS];
+        int offset = (handle & CHUNK_MASK) * RECORD_BYTES;
+        chunk.putInt(offset + ID, truckID);
+        chunk.putInt(offset + LOAD, currentLoad);
+        chunk.putInt(offset + CAPACITY, totalCapacity);
+        chunk.putInt(offset + LINK, NONE);
+        live++;
+        return handle;
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+        }
+        chunks[chunkCount++] = ByteBuffer.allocateDirect(RECORD_BYTES << CHUNK_BITS).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void free(int handle) {
+        setNext(handle, freeHead);
+        freeHead = handle;
+        live--;
+    }
+
+    private int get(int handle, int field) {
+        return chunks[handle >>> CHUNK_BITS].getInt((handle & CHUNK_MASK) * RECORD_BYTES + field);
+    }
+
+    private void set(int handle, int field, int value) {
+        chunks[handle >>> CHUNK_BITS].putInt((handle & CHUNK_MASK) * RECORD_BYTES + field, value);
+    }
+
+    @Override
+    public int id(int handle) {
+        return get(handle, ID);
+    }
+
+    @Override
+    public int currentLoad(int handle) {
+        return get(handle, LOAD);
+    }
+
+    @Override
+    public void setCurrentLoad(int handle, int currentLoad) {
+        set(handle, LOAD, currentLoad);
+    }
+
+    @Override
+    public int totalCapacity(int handle) {
+        return get(handle, CAPACITY);
+    }
+
+    @Override
+    public int next(int handle) {
+        return get(handle, LINK);
+    }
+
+    @Override
+    public void setNext(int handle, int next) {
+        set(handle, LINK, next);
+    }
+
+    // Lot queues link their trucks through the records, so they add nothing to the heap either
+    @Override
+    public TruckQueue newQueue() {
+        return new LinkedTruckQueue(this);
+    }
+
+    @Override
+    public int size() {
+        return live;
+    }
+
+    @Override
+    public long heapBytes() {
+        return 8L * chunks.length; // The chunk table
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return (long) chunkCount * (RECORD_BYTES << CHUNK_BITS);
+    }
+}
@@ -0,0 +1,82 @@
+import java.nio.ByteBuffer;
+
+// Numeric codes for the commands understood by Main, shared by every input reader
+public final class Opcode {
+    public static final int UNKNOWN = 0;
+    public static final int CREATE_PARKING_LOT = 1;
+    public static final int ADD_TRUCK = 2;
+    public static final int READY = 3;
+    public static final int LOAD = 4;
+    public static final int COUNT = 5;
+    public static final int DELETE_PARKING_LOT = 6;
+    public static final int COUNT_RANGE = 7;
+    public static final int COUNT_WAITING = 8;
+    public static final int COUNT_READY = 9;
+
+    private static final String[] NAMES = {
+            null, "create_parking_lot", "add_truck", "ready", "load", "count", "delete_parking_lot",
+            "count_range", "count_waiting", "count_ready"
+    };
+
+    // How many integer arguments each command reads
+    private static final int[] ARITY = {0, 2, 2, 1, 2, 1, 1, 2, 1, 1};
+
+    private static final byte[][] NAME_BYTES = new byte[NAMES.length][];
+
+    static {
+        for (int i = 1; i < NAMES.length; i++) {
+            NAME_BYTES[i] = NAMES[i].getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        }
+    }
+
+    private Opcode() {
+    }
+
+    public static int count() {
+        return NAMES.length;
+    }
+
+    public static String name(int opcode) {
+        return NAMES[opcode];
+    }
+
+    public static int arity(int opcode) {
+        return ARITY[opcode];
+    }
+
+    // Lookup for an already lower-cased command word
+    public static int fromName(String command) {
+        for (int i = 1; i < NAMES.length; i++) {
+            if (NAMES[i].equals(command)) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    // Case-insensitive lookup of the command word stored in buf[start, end), without creating a String
+    public static int fromBytes(ByteBuffer buf, int start, int end) {
+        int length = end - start;
+        for (int i = 1; i < NAME_BYTES.length; i++) {
+            byte[] name = NAME_BYTES[i];
+            if (name.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length) {
+                int b = buf.get(start + j);
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != name[j]) {
+                    break;
+                }
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -1,11 +1,75 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
 public class ParkingLotManager {
 
-    // Initialize the AVL trees for managing parking lots and ready lots
-    public Ledger ledger;
-    public ReadyLedger readyLedger;
-    public WaitingLedger waitingLedger;
+    // The ledgers of every lot, the lots with ready trucks and the lots with waiting trucks
+    private final Ledger ledger;
+    private final ReadyLedger readyLedger;
+    private final WaitingLedger waitingLedger;
+
+    // Where everything the manager does is reported
+    private final EventSink events;
+
+    // Every truck in a lot lives here; lots queue their trucks by handle
+    private final TruckStore trucks;
+
+    // The --ledger option every ledger opens its engine with
+    private final String ledgerEngine;
+
+    // Probe lengths go here when --metrics is on
+    private final Metrics metrics;
+
+    // Persistent copy of the truck counts that snapshot readers query, null until enableSnapshots
+    private PersistentCountTree snapshots;
+
+    // Whether a deleted lot's trucks move to the smaller lots instead of leaving with it
+    private boolean relocateOnDelete;
+
+    // Lots a load drew trucks from and lots its trucks moved to, reused by every load
+    private final ArrayList<ParkingLot> touchedLots = new ArrayList<>();
+    private final ArrayList<ParkingLot> filledLots = new ArrayList<>();
+
+    // Sharding (see ShardedRunner): the capacities this manager owns, the shards owning the capacities below and
+    // above, and the gate every step into another shard goes through. A manager on its own owns every capacity.
+    private int lowCapacity = Integer.MIN_VALUE;
+    private int highCapacity = Integer.MAX_VALUE;
+    private ParkingLotManager below;
+    private ParkingLotManager above;
+    private ShardGate gate;
+
+    // Lets a command in one shard read or change another shard's lots
+    public interface ShardGate {
+        // Returns once the command running on the calling thread may touch the shard
+        void enter(ParkingLotManager shard);
+
+        // Returns once the calling thread may walk the shard's ledger trees, which it has already entered
+        default void walk(ParkingLotManager shard) {
+        }
+    }
 
     public ParkingLotManager() {
+        this(EventSink.NONE);
+    }
+
+    public ParkingLotManager(EventSink events) {
+        this(events, new HeapTruckStore());
+    }
+
+    public ParkingLotManager(EventSink events, TruckStore trucks) {
+        this(events, trucks, null);
+    }
+
+    // ledgerEngine is a --ledger option value: which LedgerEngine the ledgers run on, null for the default
+    public ParkingLotManager(EventSink events, TruckStore trucks, String ledgerEngine) {
+        this(events, trucks, ledgerEngine, Metrics.NONE);
+    }
+
+    public ParkingLotManager(EventSink events, TruckStore trucks, String ledgerEngine, Metrics metrics) {
+        this.events = events;
+        this.trucks = trucks;
+        this.ledgerEngine = ledgerEngine;
+        this.metrics = metrics;
         this.ledger = new Ledger();
         this.readyLedger = new ReadyLedger();
         this.waitingLedger = new WaitingLedger();
@@ -14,21 +78,22 @@ public class ParkingLotManager {
     public class ParkingLot {
         private int load_capacity;
         private int truck_capacity;
-        private LinkedList waitingSection;
-        private LinkedList readySection;
+        private TruckQueue waitingSection;
+        private TruckQueue readySection;
         private boolean isInReadyLedger = false; // Indicates if the lot is in readyLedger
         public boolean isInWaitingLedger = false; // Indicates if the lot is in waitingLedger
+        private boolean isFilled = false; // Indicates if the running load moved trucks here (see filledLots)
 
         // Parking Lot Constructor
         public ParkingLot(int load_capacity, int truck_capacity) {
             this.load_capacity = load_capacity;
             this.truck_capacity = truck_capacity;
-            this.waitingSection = new LinkedList();
-            this.readySection = new LinkedList();
+            this.waitingSection = trucks.newQueue();
+            this.readySection = trucks.newQueue();
         }
 
         public int getTruckNum() {
-            return waitingSection.getNumberOfTrucks() + readySection.getNumberOfTrucks();
+            return waitingSection.size() + readySection.size();
         }
 
         public int capacityStatus() {
@@ -53,714 +118,714 @@ public class ParkingLotManager {
         }
 
         // Truck adder to the parking lot, all trucks must enter from the waiting section. Also checks if the lot is full.
-        public int addTruckToWaiting(Truck truck) {
-            int result;
+        // The truck is a TruckStore handle.
+        public int addTruckToWaiting(int truck) {
             if (getTruckNum() < truck_capacity) {
-                waitingSection.addTruck(truck);
-                System.out.println("Truck successfully added to waiting section of the parking lot with " + load_capacity + " load capacity");
+                waitingSection.add(truck);
+                ledger.updateAvailability(this);
+                events.truckAdded(trucks.id(truck), load_capacity);
 
                 // Insert this parking lot into waitingLedger if not already there
                 if (!isInWaitingLedger) {
-                    ParkingLotManager.this.waitingLedger.insert(new WaitingNode(this));
+                    ParkingLotManager.this.waitingLedger.insert(this);
                     isInWaitingLedger = true;
                 }
 
                 // After adding the truck, update totalTrucks in the WaitingLedger
-                WaitingNode node = waitingLedger.findNode(this.load_capacity);
-                if (node != null) {
-                    updateTotalTrucksUpwards(node);
-                }
+                waitingLedger.updateTotalTrucks(this);
 
                 return load_capacity;
             } else {
-                System.out.println("Unfortunately the lot with " + load_capacity + " load capacity is full. We will be relocating the truck");
+                events.truckRelocating(trucks.id(truck), load_capacity);
                 if (load_capacity == 1) {
                     return -1;
                 }
-                result = ledger.assigner(truck, load_capacity);
-                if (result == -1) {
-                    System.out.println("Unable to relocate the truck. No suitable parking lot found.");
-                    return -2;
-                }
-                return result;
+                return ledger.assigner(truck, load_capacity);
             }
 
 
         }
 
-        private void updateTotalTrucksUpwards(WaitingNode node) {
-            while (node != null) {
-                node.totalTrucks = getTotalTrucks(node.left) + getTotalTrucks(node.right) + node.lot.waitingSection.getNumberOfTrucks();
-                node = node.parent;
-            }
-        }
-
-        private void updateTotalTrucksUpwards(ReadyNode node) {
-            while (node != null) {
-                node.totalTrucks = getTotalTrucks(node.left) + getTotalTrucks(node.right) + node.lot.readySection.getNumberOfTrucks();
-                node = node.parent;
-            }
-        }
-
-
-        // Ready Command
-        public int[] ready() {
+        // Ready Command, returns the ID of the truck that became ready
+        public int ready() {
 
             // Remove truck from waiting section
-            Truck truck = waitingSection.removeHeadTruck();
+            int truck = waitingSection.removeHead();
 
             // Update totalTrucks in WaitingLedger
-            WaitingNode waitingNode = ParkingLotManager.this.waitingLedger.findNode(this.load_capacity);
-            if (waitingNode != null) {
-                updateTotalTrucksUpwards(waitingNode);
-            }
+            ParkingLotManager.this.waitingLedger.updateTotalTrucks(this);
 
-            readySection.addTruck(truck); // Add to ready section
+            readySection.add(truck); // Add to ready section
 
             // Remove this parking lot from waitingLedger if waitingSection is now empty
-            if (waitingSection.getNumberOfTrucks() == 0 && isInWaitingLedger) {
+            if (waitingSection.size() == 0 && isInWaitingLedger) {
                 ParkingLotManager.this.waitingLedger.delete(getLoadCapacity());
                 isInWaitingLedger = false;
             }
 
             // Insert this parking lot into readyLedger if not already there
             if (!isInReadyLedger) {
-                ParkingLotManager.this.readyLedger.insert(new ReadyNode(this));
+                ParkingLotManager.this.readyLedger.insert(this);
                 isInReadyLedger = true;
             }
 
             // Update totalTrucks in ReadyLedger
-            ReadyNode readyNode = ParkingLotManager.this.readyLedger.findNode(this.load_capacity);
-            if (readyNode != null) {
-                updateTotalTrucksUpwards(readyNode);
-            }
+            ParkingLotManager.this.readyLedger.updateTotalTrucks(this);
 
-            System.out.println("READY. The truck with ID " + truck.getTruckID() + " is ready in lot " + load_capacity);
+            events.truckReady(trucks.id(truck), load_capacity);
 
-            return new int[]{truck.getTruckID(), load_capacity};
+            return trucks.id(truck);
         }
 
         public int getLoadCapacity() {
             return load_capacity;
         }
-    }
-
-    public String load(ReadyNode load_node, int amount) {
 
-        if ((load_node == null) || (load_node.lot.load_capacity == 0)) {
-            System.out.println("No parking lot with capacity found to load.");
-            return "-1";
+        // The shard whose ledgers hold this lot
+        private ParkingLotManager owner() {
+            return ParkingLotManager.this;
         }
+    }
 
-        StringBuilder result1 = new StringBuilder();
-        StringBuilder result2 = new StringBuilder();
-        StringBuilder result3 = new StringBuilder();
-
-        ParkingLot load_lot = load_node.lot;
+    // Makes this manager the shard owning the capacities [low, high]. The neighbours own the ranges right below and
+    // above it, or are null at the ends; every lookup that runs out of lots continues in them.
+    public void link(int low, int high, ParkingLotManager below, ParkingLotManager above, ShardGate gate) {
+        this.lowCapacity = low;
+        this.highCapacity = high;
+        this.below = below;
+        this.above = above;
+        this.gate = gate;
+    }
 
-        // Loop to find a lot with available trucks
-        while (load_node != null && load_lot.readySection.getNumberOfTrucks() == 0) {
-            int temp_capacity = load_lot.load_capacity;
-            load_node = readyLedger.findClosestGreater(temp_capacity);
-            if (load_node != null) {
-                load_lot = load_node.lot;
-            }
+    // The shard owning a capacity, entered
+    private ParkingLotManager shardOf(int capacity) {
+        ParkingLotManager shard = this;
+        while (capacity < shard.lowCapacity) {
+            shard = shard.below;
         }
-
-        if (load_node == null) {
-            System.out.println("No parking lot with capacity found to load.");
-            return "-1";
+        while (capacity > shard.highCapacity) {
+            shard = shard.above;
         }
+        return enter(shard);
+    }
 
-        int ready = load_lot.readySection.getNumberOfTrucks();
-        int current_amount = amount;
-        int truckLoadResult; // How much the truck loaded
-        Truck local_truck; // The iterated truck
-        int load_capacity = load_lot.load_capacity;
-        ParkingLot newLot;
-
-        int iteration_amount; // How many trucks will be filled with full load amount
-        int remaining_amount; // The amount of load that is not full load amount
-
-        int result_capacity;
-
-        if ((ready * load_capacity) < amount) {
-            iteration_amount = ready;
-            remaining_amount = 0;
-        } else {
-            iteration_amount = amount / load_capacity;
-            remaining_amount = amount % load_capacity;
+    private ParkingLotManager enter(ParkingLotManager shard) {
+        if (shard != this) {
+            gate.enter(shard);
         }
+        return shard;
+    }
 
-        // If at least one truck can be loaded with the total capacity the lot can deliver
-        if (iteration_amount >= 1) {
-            for (int i = 0; i < iteration_amount; i++) {
-                // If there are more ready trucks than amount break
-                if (current_amount == 0) {
-                    break;
-                }
-
-                // Fill trucks with load capacity
-                truckLoadResult = load_lot.readySection.getHead().loadTruck(load_lot.load_capacity);
-                current_amount -= truckLoadResult;
-
-                // Relocate loaded or emptied truck to a new lot
-                local_truck = load_lot.readySection.removeHeadTruck();
-
-                // Check if readySection is empty after removal
-                if (load_lot.readySection.getNumberOfTrucks() == 0 && load_lot.isInReadyLedger) {
-                    readyLedger.delete(load_lot.getLoadCapacity());
-                    load_lot.isInReadyLedger = false;
-                }
+    private void walkTrees() {
+        if (gate != null) {
+            gate.walk(this);
+        }
+    }
 
-                // Update totalTrucks in ReadyLedger
-                ReadyNode readyNode = readyLedger.findNode(load_lot.getLoadCapacity());
-                if (readyNode != null) {
-                    load_lot.updateTotalTrucksUpwards(readyNode);
-                }
+    // Whether a command routed to this shard can run without touching another shard, judged from this shard
+    // alone before it runs. A false answer may be too cautious, but a true one is never wrong.
+    public boolean staysLocal(int opcode, int arg0, int arg1) {
+        switch (opcode) {
+            case Opcode.ADD_TRUCK:
+                return below == null || addStaysLocal(arg1);
+            case Opcode.READY:
+                return above == null || waitingLedger.tree.ceiling(arg0) != LedgerEngine.NIL;
+            case Opcode.LOAD:
+                return loadStaysLocal(arg0, arg1);
+            case Opcode.COUNT:
+            case Opcode.COUNT_WAITING:
+            case Opcode.COUNT_READY:
+                return above == null;
+            case Opcode.COUNT_RANGE:
+                return above == null || arg1 < above.lowCapacity;
+            default:
+                return true;
+        }
+    }
 
-                newLot = ledger.findLot(local_truck.getRemainingLoad());
-
-                // Loop to find a suitable lot
-                while (newLot != null) {
-                    if (newLot.capacityStatus() != 0) {
-                        // The lot has capacity; proceed to add the truck
-                        break;
-                    } else {
-                        // The lot is full; find the next suitable lot
-                        int temp_capacity = newLot.getLoadCapacity();
-                        newLot = ledger.findClosestSmaller(temp_capacity);
-                    }
-                }
+    // The truck parks in the lot findLot picks, or relocates to an available smaller lot in this shard. Shards
+    // other than the lowest own no capacity below 2, so the capacity-1 rules never apply here.
+    private boolean addStaysLocal(int capacity) {
+        int node = ledger.tree.find(capacity);
+        if (node == LedgerEngine.NIL) {
+            node = ledger.tree.lower(capacity);
+        }
+        if (node == LedgerEngine.NIL) {
+            return false;
+        }
+        ParkingLot lot = ledger.tree.value(node);
+        return lot.capacityStatus() > 0 || ledger.available.lower(lot.load_capacity) != LedgerEngine.NIL;
+    }
 
-                // Check if a suitable lot was found
-                if (newLot == null) {
-                    System.out.println("After loading the truck, the truck with ID " + local_truck.getTruckID() + " could not be placed.");
-                    result_capacity = -1;
-                } else {
-                    newLot.addTruckToWaiting(local_truck);
-                    result_capacity = newLot.load_capacity;
-                    System.out.println("Truck with ID " + local_truck.getTruckID() + " has been placed to lot with capacity " + newLot.getLoadCapacity());
+    // Replays the load's walk over the ready trucks without changing anything. Each truck must relocate within
+    // this shard: its remaining capacity falls in the shard and the largest available lot below it has more free
+    // slots than trucks relocated before it, so it is still available whichever lots those trucks took.
+    private boolean loadStaysLocal(int capacity, int amount) {
+        LedgerEngine<ParkingLot> ready = readyLedger.tree;
+        int node = ready.ceiling(capacity);
+        if (node == LedgerEngine.NIL) {
+            return above == null;
+        }
+        int current = amount;
+        int relocated = 0;
+        for (; node != LedgerEngine.NIL && current != 0; node = ready.successor(node)) {
+            ParkingLot lot = ready.value(node);
+            if (lot.load_capacity <= 0 || current < 0) {
+                return false; // Left to the exact path
+            }
+            TruckQueue section = lot.readySection;
+            for (int n = section.size(), c = section.start(); n > 0 && current != 0; n--, c = section.next(c)) {
+                int truck = section.truck(c);
+                int loadAmount = Math.min(current, lot.load_capacity);
+                int remaining = trucks.remainingLoad(truck);
+                int after = loadAmount == remaining ? trucks.totalCapacity(truck) : remaining - loadAmount;
+                if (!relocatesLocally(after, relocated)) {
+                    return false;
                 }
-
-                result1.append(local_truck.getTruckID()).append(" ").append(result_capacity).append(" - ");
+                current -= loadAmount;
+                relocated++;
             }
         }
+        return current == 0 || above == null;
+    }
 
-        // If there is remaining load
-        if (remaining_amount != 0) {
-            // Fill trucks with remaining capacity
-            truckLoadResult = load_lot.readySection.getHead().loadTruck(remaining_amount);
-            current_amount = 0;
-
-            // Relocate loaded or emptied truck to a new lot
-            local_truck = load_lot.readySection.removeHeadTruck();
-
-            // Check if readySection is empty after removal
-            if (load_lot.readySection.getNumberOfTrucks() == 0 && load_lot.isInReadyLedger) {
-                readyLedger.delete(load_lot.getLoadCapacity());
-                load_lot.isInReadyLedger = false;
-            }
-
-            // Update totalTrucks in ReadyLedger
-            ReadyNode readyNode = readyLedger.findNode(load_lot.getLoadCapacity());
-            if (readyNode != null) {
-                load_lot.updateTotalTrucksUpwards(readyNode);
-            }
+    private boolean relocatesLocally(int remainingLoad, int relocated) {
+        if (remainingLoad < lowCapacity || remainingLoad > highCapacity) {
+            return false;
+        }
+        int node = ledger.available.floor(remainingLoad);
+        if (node == LedgerEngine.NIL) {
+            return below == null; // The truck leaves the simulation
+        }
+        return below == null || ledger.available.value(node).capacityStatus() > relocated;
+    }
 
-            newLot = ledger.findLot(local_truck.getRemainingLoad());
+    public Metrics metrics() {
+        return metrics;
+    }
 
-            // Loop to find a suitable lot
-            while (newLot != null) {
-                if (newLot.capacityStatus() != 0) {
-                    // Found lot with capacity
-                    break;
-                } else {
-                    // The lot is full; find the next suitable lot
-                    int temp_capacity = newLot.getLoadCapacity();
-                    newLot = ledger.findClosestSmaller(temp_capacity);
-                }
-            }
+    // Hands the work counters of every ledger engine and capacity index to the metrics, ahead of a report
+    public void sampleCounters() {
+        LedgerEngine<?>[] engines = {ledger.tree, ledger.available, readyLedger.tree, waitingLedger.tree};
+        long rotations = 0;
+        long updates = 0;
+        long steps = 0;
+        for (TruckCountLedger counted : new TruckCountLedger[]{readyLedger, waitingLedger}) {
+            updates += counted.counts.updates();
+            steps += counted.counts.steps();
+        }
+        for (LedgerEngine<?> engine : engines) {
+            rotations += engine.rotations();
+            updates += engine.aggregateUpdates();
+            steps += engine.aggregateSteps();
+        }
+        metrics.engineCounters(rotations, updates, steps);
+    }
 
-            // Check if a suitable lot was found
-            if (newLot == null) {
-                System.out.println("After loading the truck, the truck with ID " + local_truck.getTruckID() + " could not be placed.");
-                result_capacity = -1;
-            } else {
-                newLot.addTruckToWaiting(local_truck);
-                result_capacity = newLot.load_capacity;
-                System.out.println("Truck with ID " + local_truck.getTruckID() + " has been placed to lot with capacity " + newLot.getLoadCapacity());
+    // Starts mirroring the truck counts into a persistent tree, seeded with the current counts, so other threads
+    // can query snapshots of them while this manager runs. Call it before those threads start.
+    public void enableSnapshots() {
+        snapshots = new PersistentCountTree();
+        for (TruckCountLedger counted : new TruckCountLedger[]{readyLedger, waitingLedger}) {
+            for (int node = counted.tree.first(); node != LedgerEngine.NIL; node = counted.tree.successor(node)) {
+                counted.mirror(counted.tree.key(node), counted.tree.weight(node));
             }
-
-            result2.append(local_truck.getTruckID()).append(" ").append(result_capacity).append(" - ");
         }
+        snapshots.publish();
+    }
 
-        // If there is still load but the current lot cannot fulfill it
-        while (current_amount != 0) {
-            load_node = readyLedger.findClosestGreater(load_capacity);
-
-            if (load_node != null) {
-                load_lot = load_node.lot;
-            } else {
-                break;
-            }
+    // From now on, delete_parking_lot moves the lot's trucks to the closest smaller lots with room, the way
+    // add_truck relocates a truck turned away by a full lot, and only the trucks no lot takes leave. Only for a
+    // manager on its own: neither the shards of a ShardedRunner nor the stripes of a ConcurrentParkingLotManager
+    // route a delete into the lots below it.
+    public void enableRelocationOnDelete() {
+        relocateOnDelete = true;
+    }
 
-            // Loop to find a lot with available trucks
-            while (load_node != null && load_lot.readySection.getNumberOfTrucks() == 0) {
-                int temp_capacity = load_lot.load_capacity;
-                load_node = readyLedger.findClosestGreater(temp_capacity);
-                if (load_node != null) {
-                    load_lot = load_node.lot;
-                }
-            }
+    // Makes the counts as of now visible to new snapshots; CommandExecutor calls it after every command
+    public void publishSnapshot() {
+        if (snapshots != null) {
+            snapshots.publish();
+        }
+    }
 
-            if (load_node != null) {
-                // Found a lot with available trucks
-                int loadCapacity = load_lot.load_capacity;
-                int loadAmount = Math.min(current_amount, loadCapacity);
+    // The truck counts as of the last publish, safe to query from any thread
+    public PersistentCountTree.Snapshot snapshot() {
+        if (snapshots == null) {
+            throw new IllegalStateException("Snapshots are not enabled");
+        }
+        return snapshots.snapshot();
+    }
 
-                // Load the truck
-                Truck truck = load_lot.readySection.getHead();
-                truckLoadResult = truck.loadTruck(loadAmount);
-                current_amount -= truckLoadResult;
+    // What StateSnapshot saves of every lot
+    public interface LotVisitor {
+        void lot(int loadCapacity, int truckLimit, boolean inWaitingLedger, boolean inReadyLedger, int waiting,
+                int ready);
 
-                // Relocate the truck
-                local_truck = load_lot.readySection.removeHeadTruck();
+        // The trucks of the lot just visited, the waiting ones and then the ready ones, each in queue order
+        void truck(int truckID, int currentLoad, int totalCapacity);
+    }
 
-                // Check if readySection is empty after removal
-                if (load_lot.readySection.getNumberOfTrucks() == 0 && load_lot.isInReadyLedger) {
-                    readyLedger.delete(load_lot.getLoadCapacity());
-                    load_lot.isInReadyLedger = false;
-                }
+    // Walks every lot in ascending capacity order
+    public void visitLots(LotVisitor visitor) {
+        for (int node = ledger.tree.first(); node != LedgerEngine.NIL; node = ledger.tree.successor(node)) {
+            ParkingLot lot = ledger.tree.value(node);
+            visitor.lot(lot.load_capacity, lot.truck_capacity, lot.isInWaitingLedger, lot.isInReadyLedger,
+                    lot.waitingSection.size(), lot.readySection.size());
+            visitTrucks(lot.waitingSection, visitor);
+            visitTrucks(lot.readySection, visitor);
+        }
+    }
 
-                // Update totalTrucks in ReadyLedger
-                ReadyNode readyNode = readyLedger.findNode(load_lot.getLoadCapacity());
-                if (readyNode != null) {
-                    load_lot.updateTotalTrucksUpwards(readyNode);
-                }
+    private void visitTrucks(TruckQueue section, LotVisitor visitor) {
+        for (int n = section.size(), c = section.start(); n > 0; n--, c = section.next(c)) {
+            int truck = section.truck(c);
+            visitor.truck(trucks.id(truck), trucks.currentLoad(truck), trucks.totalCapacity(truck));
+        }
+    }
 
-                ParkingLot destinationLot = ledger.findLot(local_truck.getRemainingLoad());
+    public int lotCount() {
+        return ledger.tree.size();
+    }
 
-                // Find a suitable lot for the relocated truck
-                while (destinationLot != null && destinationLot.capacityStatus() == 0) {
-                    int tempCapacity = destinationLot.getLoadCapacity();
-                    destinationLot = ledger.findClosestSmaller(tempCapacity);
-                }
+    // Restoring a saved state, lot by lot: restoreLot, then restoreTruck for each of its trucks in queue order,
+    // then insertRestored. Nothing is reported to the events.
+    public ParkingLot restoreLot(int loadCapacity, int truckLimit) {
+        return new ParkingLot(loadCapacity, truckLimit);
+    }
 
-                if (destinationLot == null) {
-                    System.out.println("After loading the truck, the truck with ID " + local_truck.getTruckID() + " could not be placed.");
-                    result_capacity = -1;
-                } else {
-                    destinationLot.addTruckToWaiting(local_truck);
-                    result_capacity = destinationLot.load_capacity;
-                    System.out.println("Truck with ID " + local_truck.getTruckID() + " has been placed to lot with capacity " + destinationLot.getLoadCapacity());
-                }
+    public void restoreTruck(ParkingLot lot, boolean ready, int truckID, int currentLoad, int totalCapacity) {
+        (ready ? lot.readySection : lot.waitingSection).add(trucks.allocate(truckID, currentLoad, totalCapacity));
+    }
 
-                // Accumulate the result
-                result3.append(local_truck.getTruckID()).append(" ").append(result_capacity).append(" - ");
-            } else {
-                // No suitable parking lot found
-                System.out.println("No parking lot with capacity found.");
-                break;
-            }
+    public void insertRestored(ParkingLot lot, boolean inWaitingLedger, boolean inReadyLedger) {
+        if (ledger.tree.insert(lot.load_capacity, lot, 0) == LedgerEngine.NIL) {
+            throw new IllegalStateException("Duplicate lot: " + lot.load_capacity);
         }
-
-        // Combine all results
-        String finalResult = result1.toString() + result2.toString() + result3.toString();
-
-        // Remove trailing " - " if present
-        if (finalResult.endsWith(" - ")) {
-            finalResult = finalResult.substring(0, finalResult.length() - 3);
+        if (lot.capacityStatus() > 0) {
+            ledger.available.insert(lot.load_capacity, lot, 0);
         }
-
-        // If no load was processed, return "-1"
-        if (finalResult.isEmpty()) {
-            return "-1";
+        if (inWaitingLedger) {
+            waitingLedger.add(lot);
+            lot.isInWaitingLedger = true;
         }
+        if (inReadyLedger) {
+            readyLedger.add(lot);
+            lot.isInReadyLedger = true;
+        }
+    }
 
-        return finalResult;
+    public void createParkingLot(int loadCapacity, int truckCapacity) {
+        ledger.insert(new ParkingLot(loadCapacity, truckCapacity));
     }
 
-    public int countTrucks(int capacity) {
-        int waitingCount = countWaitingTrucks(waitingLedger.root, capacity);
-        int readyCount = countReadyTrucks(readyLedger.root, capacity);
-        int total = waitingCount + readyCount;
-        System.out.println("Total trucks with lot capacity greater than " + capacity + " is: " + total);
-        return total;
+    // Creates count lots at once, with the same lots and events as create_parking_lot for each in turn
+    public void createParkingLots(int[] capacities, int[] truckLimits, int count) {
+        ledger.insertAll(capacities, truckLimits, count);
     }
 
-    private int countWaitingTrucks(WaitingNode node, int capacity) {
-        if (node == null) {
-            return 0;
-        }
-        if (node.lot.getLoadCapacity() > capacity) {
-            // Include totalTrucks from the right subtree
-            int count = getTotalTrucks(node.right);
+    public void deleteParkingLot(int loadCapacity) {
+        ledger.delete(loadCapacity);
+    }
 
-            // Include trucks from this parking lot's waiting section
-            count += node.lot.waitingSection.getNumberOfTrucks();
+    // Lot a ready command with this capacity moves a truck in, or null if no lot has waiting trucks
+    public ParkingLot findWaitingLot(int capacity) {
+        return waitingLedger.findLot(capacity);
+    }
 
-            // Traverse the left subtree
-            count += countWaitingTrucks(node.left, capacity);
+    // Lot an add_truck with this capacity tries first: the lot with that capacity or else the closest smaller one
+    public ParkingLot findLot(int capacity) {
+        return ledger.findLot(capacity);
+    }
 
-            return count;
-        } else {
-            // Skip left subtree, traverse right subtree
-            return countWaitingTrucks(node.right, capacity);
-        }
+    // Closest lot with ready trucks whose capacity is greater than the given one
+    public ParkingLot findClosestGreater(int capacity) {
+        return readyLedger.findClosestGreater(capacity);
     }
 
-    private int countReadyTrucks(ReadyNode node, int capacity) {
-        if (node == null) {
-            return 0;
+    // Load command for the ready lots from the given capacity up
+    public void load(int capacity, int amount, PlacementList placements) {
+        ParkingLot lot = readyLedger.findLotMax(capacity);
+        if (lot != null) {
+            load(lot, amount, placements);
         }
-        if (node.lot.getLoadCapacity() > capacity) {
-            // Include totalTrucks from the right subtree
-            int count = getTotalTrucks(node.right);
-
-            // Include trucks from this parking lot's ready section
-            count += node.lot.readySection.getNumberOfTrucks();
+    }
 
-            // Traverse the left subtree
-            count += countReadyTrucks(node.left, capacity);
+    // Load command. Every moved truck is appended to placements; if nothing could be loaded it stays empty.
+    // The ready lots are drained in ascending capacity order in one in-order walk of the ReadyLedger: the first lot
+    // delivers full loads plus a remainder, then any load left over spills to the larger lots one truck at a time.
+    // Trucks still relocate one by one, since each may take a slot another just freed, but the ReadyLedger itself
+    // is left untouched until the walk ends and is then updated once per lot that was drawn from.
+    public void load(ParkingLot load_lot, int amount, PlacementList placements) {
 
-            return count;
-        } else {
-            // Skip left subtree, traverse right subtree
-            return countReadyTrucks(node.right, capacity);
+        if ((load_lot == null) || (load_lot.load_capacity == 0)) {
+            events.noReadyLot(false);
+            return;
         }
-    }
 
-    public int truckAdder(int truckID, int loadCapacity) {
-        Truck truck = new Truck(truckID, loadCapacity);
-        return truckAdder(truck);
-    }
+        // Loop to find a lot with available trucks
+        int probes = 1;
+        while (load_lot != null && load_lot.readySection.size() == 0) {
+            load_lot = readyLedger.findClosestGreater(load_lot.load_capacity);
+            probes++;
+        }
 
-    public int truckAdder(Truck truck) {
-        ParkingLot lot = ledger.findLot(truck.getTotalCapacity());
-        if (lot == null) {
-            return -1;
-        } else {
-            return lot.addTruckToWaiting(truck);
+        if (load_lot == null) {
+            metrics.spill(probes);
+            events.noReadyLot(false);
+            return;
         }
-    }
 
-    // AVL tree structure for parking lots
-    public class Ledger {
-        private LedgerNode root;
+        int ready = load_lot.readySection.size();
+        int current_amount = amount;
+        int load_capacity = load_lot.load_capacity;
 
-        public ParkingLot findLot(int loadCapacity) {
-            LedgerNode current = root;
-            LedgerNode min = minValueNode(root);
+        int iteration_amount; // How many trucks will be filled with full load amount
+        int remaining_amount; // The amount of load that is not full load amount
 
-            if (min != null && min.lot.load_capacity == loadCapacity) {
-                return min.lot;
-            }
+        if ((ready * load_capacity) < amount) {
+            iteration_amount = ready;
+            remaining_amount = 0;
+        } else {
+            iteration_amount = amount / load_capacity;
+            remaining_amount = amount % load_capacity;
+        }
 
-            while (current != null) {
-                if (loadCapacity < current.getLoadCapacity()) {
-                    current = current.left;
-                } else if (loadCapacity > current.getLoadCapacity()) {
-                    current = current.right;
-                } else {
-                    return current.lot;
-                }
-            }
+        touchedLots.clear();
+        touchedLots.add(load_lot);
+        filledLots.clear();
 
-            LedgerNode closestSmallerNode = findClosestSmallerNode(loadCapacity);
-            return closestSmallerNode != null ? closestSmallerNode.lot : null;
+        // Fill trucks with the full load capacity
+        for (int i = 0; i < iteration_amount && current_amount != 0; i++) {
+            current_amount -= loadAndRelocate(load_lot, load_capacity, placements);
         }
 
-        public LedgerNode findClosestSmallerNode(int capacity) {
-            LedgerNode current = root;
-            LedgerNode closestSmaller = null;
+        // Fill one more truck with what is left
+        if (remaining_amount != 0) {
+            loadAndRelocate(load_lot, remaining_amount, placements);
+            current_amount = 0;
+        }
 
-            if (capacity == 1) {
-                return null;
+        // If there is still load but the current lot cannot fulfill it, spill to the larger lots in order
+        // The walk goes on in the shards above once a shard runs out of lots.
+        if (current_amount != 0) {
+            ParkingLotManager shard = shardOf(load_capacity);
+            int node = shard.readyLedger.firstNodeAbove(load_capacity);
+            while (current_amount != 0 && node == LedgerEngine.NIL && shard.above != null) {
+                shard = enter(shard.above);
+                node = shard.readyLedger.firstNodeAbove(load_capacity);
             }
+            while (current_amount != 0 && node != LedgerEngine.NIL) {
+                ParkingLot spill_lot = shard.readyLedger.lotOf(node);
+                touchedLots.add(spill_lot);
 
-            while (current != null) {
-                if (current.getLoadCapacity() < capacity) {
-                    closestSmaller = current;
-                    current = current.right;
-                } else {
-                    current = current.left;
+                while (current_amount != 0 && spill_lot.readySection.size() > 0) {
+                    int loadAmount = Math.min(current_amount, spill_lot.load_capacity);
+                    current_amount -= loadAndRelocate(spill_lot, loadAmount, placements);
+                }
+                node = shard.readyLedger.nextNode(node);
+                while (current_amount != 0 && node == LedgerEngine.NIL && shard.above != null) {
+                    shard = enter(shard.above);
+                    node = shard.readyLedger.firstNodeAbove(load_capacity);
                 }
+                probes++;
             }
-            return closestSmaller;
         }
+        metrics.spill(probes);
 
-        public ParkingLot findClosestSmaller(int capacity) {
-            LedgerNode node = findClosestSmallerNode(capacity);
-            return node != null ? node.lot : null;
+        // Drained lots leave the ReadyLedger, the rest get their new truck counts
+        for (int i = 0; i < touchedLots.size(); i++) {
+            ParkingLot lot = touchedLots.get(i);
+            if (lot.readySection.size() == 0 && lot.isInReadyLedger) {
+                lot.owner().readyLedger.delete(lot.getLoadCapacity());
+                lot.isInReadyLedger = false;
+            } else {
+                lot.owner().readyLedger.updateTotalTrucks(lot);
+            }
         }
 
-        // Function to find and assign trucks to lots with the closest smaller capacity for lots that are full
-        public int assigner(Truck truck, int capacity) {
-            ParkingLot nextLot = findClosestSmaller(capacity);
-            if (nextLot == null) {
-                System.out.println("No smaller parking lot available to assign the truck.");
-                return -2;
+        // Lots the trucks moved to enter the WaitingLedger or get their new truck counts, once each
+        for (int i = 0; i < filledLots.size(); i++) {
+            ParkingLot lot = filledLots.get(i);
+            lot.isFilled = false;
+            if (lot.isInWaitingLedger) {
+                lot.owner().waitingLedger.updateTotalTrucks(lot);
             } else {
-                int response = -1;
-                ParkingLot prevLot = null;
-
-                // Add truck to the found lot
-                response = nextLot.addTruckToWaiting(truck);
-
-                // Iterate because the found lot can also be full
-                while (response == -1) {
-                    if (nextLot == null) {
-                        return -1;
-                    }
-
-                    if (nextLot.load_capacity == 1) {
-                        return -1;
-                    }
-
-                    response = nextLot.addTruckToWaiting(truck);
+                lot.owner().waitingLedger.insert(lot);
+                lot.isInWaitingLedger = true;
+            }
+        }
+    }
 
-                    if ((response == -1) || (nextLot.load_capacity != 1)) {
-                        prevLot = nextLot;
-                        nextLot = findClosestSmaller(prevLot.getLoadCapacity());
-                    }
-                }
-                return response;
+    // Loads the lot's first ready truck and moves it to the largest lot with room for its remaining capacity,
+    // or out of the simulation if there is none. Returns how much was loaded.
+    // Each truck needs its own query of the availability index, since its remaining capacity is its own and the
+    // trucks before it may have taken the last slots of a lot, so a load of k trucks costs O(k log n). The index
+    // itself only changes when a lot fills up or gets its first free slot back, and the WaitingLedger and its
+    // counts are left to load, which updates every lot that took trucks once.
+    private int loadAndRelocate(ParkingLot lot, int loadAmount, PlacementList placements) {
+        int truck = lot.readySection.removeHead();
+        int truckLoadResult = trucks.load(truck, loadAmount);
+
+        // The lot just freed a slot, which the truck itself may take again
+        lot.owner().ledger.updateAvailability(lot);
+        ParkingLot newLot = ledger.findAvailable(trucks.remainingLoad(truck));
+
+        if (newLot == null) {
+            events.truckLoaded(trucks.id(truck), -1);
+            placements.add(trucks.id(truck), -1);
+            trucks.free(truck); // The truck leaves the simulation
+        } else {
+            newLot.waitingSection.add(truck);
+            newLot.owner().ledger.updateAvailability(newLot);
+            events.truckAdded(trucks.id(truck), newLot.getLoadCapacity());
+            if (!newLot.isFilled) {
+                newLot.isFilled = true;
+                filledLots.add(newLot);
             }
+            events.truckLoaded(trucks.id(truck), newLot.getLoadCapacity());
+            placements.add(trucks.id(truck), newLot.getLoadCapacity());
         }
+        return truckLoadResult;
+    }
+
+    public int countTrucks(int capacity) {
+        int total = countAbove(capacity, true, true);
+        events.count(capacity, total);
+        return total;
+    }
 
-        // Helper function to get the height of a node
-        private int height(LedgerNode node) {
-            return node == null ? 0 : node.height;
+    // Trucks, waiting or ready, in lots with a load capacity in [low, high]
+    public int countRange(int low, int high) {
+        ParkingLotManager shard = shardOf(low);
+        int total = shard.waitingLedger.countTrucksBetween(low, high) + shard.readyLedger.countTrucksBetween(low, high);
+        while (shard.above != null && shard.above.lowCapacity <= high) {
+            shard = enter(shard.above);
+            total += shard.waitingLedger.countTrucksBetween(low, high) + shard.readyLedger.countTrucksBetween(low, high);
         }
+        return total;
+    }
 
-        // Right rotation for balancing
-        private LedgerNode rightRotate(LedgerNode y) {
-            LedgerNode x = y.left;
-            LedgerNode T2 = x.right;
+    // Waiting trucks in lots with a load capacity greater than the given one
+    public int countWaiting(int capacity) {
+        return countAbove(capacity, true, false);
+    }
 
-            // Perform rotation
-            x.right = y;
-            y.left = T2;
+    // Ready trucks in lots with a load capacity greater than the given one
+    public int countReady(int capacity) {
+        return countAbove(capacity, false, true);
+    }
 
-            // Update parents
-            if (T2 != null) {
-                T2.parent = y;
+    // Sums the chosen sections over the shard owning the capacity and every shard above it
+    private int countAbove(int capacity, boolean waiting, boolean ready) {
+        ParkingLotManager shard = shardOf(capacity);
+        int total = 0;
+        while (true) {
+            if (waiting) {
+                total += shard.waitingLedger.countTrucksAbove(capacity);
             }
-            x.parent = y.parent;
-            y.parent = x;
-
-            // Update the child pointer in the parent
-            if (x.parent != null) {
-                if (x.parent.left == y) {
-                    x.parent.left = x;
-                } else if (x.parent.right == y) {
-                    x.parent.right = x;
-                }
-            } else {
-                root = x; // x becomes the new root
+            if (ready) {
+                total += shard.readyLedger.countTrucksAbove(capacity);
             }
-
-            // Update heights
-            y.height = Math.max(height(y.left), height(y.right)) + 1;
-            x.height = Math.max(height(x.left), height(x.right)) + 1;
-
-            return x; // New root after rotation
+            if (shard.above == null) {
+                return total;
+            }
+            shard = enter(shard.above);
         }
+    }
 
-        // Left rotation for balancing
-        private LedgerNode leftRotate(LedgerNode x) {
-            LedgerNode y = x.right;
-            LedgerNode T2 = y.left;
-
-            // Perform rotation
-            y.left = x;
-            x.right = T2;
+    public int truckAdder(int truckID, int loadCapacity) {
+        return truckAdder(trucks.allocate(truckID, 0, loadCapacity));
+    }
 
-            // Update parents
-            if (T2 != null) {
-                T2.parent = x;
-            }
-            y.parent = x.parent;
-            x.parent = y;
-
-            // Update the child pointer in the parent
-            if (y.parent != null) {
-                if (y.parent.left == x) {
-                    y.parent.left = y;
-                } else if (y.parent.right == x) {
-                    y.parent.right = y;
-                }
-            } else {
-                root = y; // y becomes the new root
-            }
+    public int truckAdder(Truck truck) {
+        return truckAdder(trucks.allocate(truck.getTruckID(), truck.getCurrentLoad(), truck.getTotalCapacity()));
+    }
 
-            // Update heights
-            x.height = Math.max(height(x.left), height(x.right)) + 1;
-            y.height = Math.max(height(y.left), height(y.right)) + 1;
+    private int truckAdder(int truck) {
+        ParkingLot lot = ledger.findLot(trucks.totalCapacity(truck));
+        int result = lot == null ? -1 : lot.addTruckToWaiting(truck);
 
-            return y; // New root after rotation
+        // Negative results mean no lot took the truck, unless the lot that did has a negative capacity
+        if (result < 0 && !ledger.isLastParked(result, truck)) {
+            trucks.free(truck);
         }
+        return result;
+    }
 
-        // Get balance factor of a node
-        private int getBalance(LedgerNode node) {
-            return node == null ? 0 : height(node.left) - height(node.right);
-        }
+    // AVL tree of every parking lot, keyed by load capacity
+    public class Ledger {
+        private final LedgerEngine<ParkingLot> tree = LedgerEngine.open(ledgerEngine);
+        private final LedgerEngine<ParkingLot> available = LedgerEngine.open(ledgerEngine); // Lots with a free truck slot
 
-        // Method to insert a parking lot to the Ledger
-        public void insert(ParkingLot newLot) {
-            LedgerNode newNode = new LedgerNode(newLot);
-            root = insert(root, newNode);
-            if (root != null) {
-                root.parent = null;
+        // The lookups below search every shard: they start in the one owning the capacity and step down while
+        // a shard has no match.
+        public ParkingLot findLot(int loadCapacity) {
+            Ledger owner = shardOf(loadCapacity).ledger;
+            int node = owner.tree.find(loadCapacity);
+            if (node != LedgerEngine.NIL) {
+                return owner.tree.value(node);
             }
+            return findClosestSmaller(loadCapacity);
         }
 
-        // Internal recursive insert function with balancing
-        private LedgerNode insert(LedgerNode node, LedgerNode newNode) {
-            if (node == null) {
-                System.out.println("Lot with capacity " + newNode.getLoadCapacity() + " inserted");
-                return newNode; // Insert new node at the correct position
+        public ParkingLot findClosestSmaller(int capacity) {
+            if (capacity == 1) {
+                return null;
             }
-
-            // Recursion that traverses based on load capacity
-            if (newNode.getLoadCapacity() < node.getLoadCapacity()) {
-                node.left = insert(node.left, newNode);
-                if (node.left != null)
-                    node.left.parent = node;
-            } else if (newNode.getLoadCapacity() > node.getLoadCapacity()) {
-                node.right = insert(node.right, newNode);
-                if (node.right != null)
-                    node.right.parent = node;
-            } else {
-                return node; // Duplicate lots are not allowed
+            ParkingLotManager shard = shardOf(capacity);
+            int node;
+            while ((node = shard.ledger.tree.lower(capacity)) == LedgerEngine.NIL && shard.below != null) {
+                shard = enter(shard.below);
             }
+            return lotAt(shard.ledger.tree, node);
+        }
 
-            // Update height of nodes in backtracking/unwinding
-            node.height = 1 + Math.max(height(node.left), height(node.right));
-
-            // Check balance factor and perform rotations as the recursion unwinds
-            int balance = getBalance(node);
-
-            // Left-Left Case
-            if (balance > 1 && newNode.getLoadCapacity() < node.left.getLoadCapacity()) {
-                return rightRotate(node);
+        // The lot findLot would reach by stepping down past full lots, in one query of the availability index.
+        // Like findLot and findClosestSmaller, the walk never continues below a lot with capacity 1.
+        public ParkingLot findAvailable(int loadCapacity) {
+            ParkingLotManager shard = shardOf(loadCapacity);
+            int node;
+            while ((node = shard.ledger.available.floor(loadCapacity)) == LedgerEngine.NIL && shard.below != null) {
+                shard = enter(shard.below);
             }
-
-            // Right-Right Case
-            if (balance < -1 && newNode.getLoadCapacity() > node.right.getLoadCapacity()) {
-                return leftRotate(node);
+            LedgerEngine<ParkingLot> index = shard.ledger.available;
+            if (node != LedgerEngine.NIL && index.key(node) < 1 && loadCapacity >= 1
+                    && (loadCapacity == 1 || hasLot(1))) {
+                return null;
             }
+            return lotAt(index, node);
+        }
 
-            // Left-Right Case
-            if (balance > 1 && newNode.getLoadCapacity() > node.left.getLoadCapacity()) {
-                node.left = leftRotate(node.left);
-                return rightRotate(node);
+        // Same as findAvailable, for lots strictly smaller than capacity
+        private ParkingLot findAvailableBelow(int capacity) {
+            ParkingLotManager shard = shardOf(capacity);
+            int node;
+            while ((node = shard.ledger.available.lower(capacity)) == LedgerEngine.NIL && shard.below != null) {
+                shard = enter(shard.below);
             }
-
-            // Right-Left Case
-            if (balance < -1 && newNode.getLoadCapacity() < node.right.getLoadCapacity()) {
-                node.right = rightRotate(node.right);
-                return leftRotate(node);
+            LedgerEngine<ParkingLot> index = shard.ledger.available;
+            if (node != LedgerEngine.NIL && index.key(node) < 1 && capacity > 1 && hasLot(1)) {
+                return null;
             }
-
-            return node; // Return the balanced node
+            return lotAt(index, node);
         }
 
-        public void delete(int loadCapacity) {
-            root = delete(root, loadCapacity);
-            if (root != null) {
-                root.parent = null; // The root's parent should be null
-            }
+        private boolean hasLot(int capacity) {
+            return shardOf(capacity).ledger.tree.find(capacity) != LedgerEngine.NIL;
         }
 
-        private LedgerNode delete(LedgerNode node, int loadCapacity) {
-            return delete(node, loadCapacity, true);
+        // Whether the truck is the last one parked in the lot with the given capacity
+        private boolean isLastParked(int capacity, int truck) {
+            Ledger owner = shardOf(capacity).ledger;
+            ParkingLot lot = lotAt(owner.tree, owner.tree.find(capacity));
+            return lot != null && lot.waitingSection.size() > 0 && lot.waitingSection.tail() == truck;
         }
 
-        private LedgerNode delete(LedgerNode node, int loadCapacity, boolean removeFromLedgers) {
-            if (node == null) {
-                System.out.println("No deletion done, lot with capacity does not exist.");
-                return null;
+        // Keeps the availability index in step after a lot gained or lost a truck
+        public void updateAvailability(ParkingLot lot) {
+            if (lot.capacityStatus() == 0) {
+                available.delete(lot.getLoadCapacity());
+            } else if (lot.capacityStatus() == 1) {
+                available.insert(lot.getLoadCapacity(), lot, 0);
             }
+        }
 
-            // Traverse the tree
-            if (loadCapacity < node.getLoadCapacity()) {
-                node.left = delete(node.left, loadCapacity, removeFromLedgers);
-                if (node.left != null)
-                    node.left.parent = node;
-            } else if (loadCapacity > node.getLoadCapacity()) {
-                node.right = delete(node.right, loadCapacity, removeFromLedgers);
-                if (node.right != null)
-                    node.right.parent = node;
-            } else {
-                // Node to be deleted found
-                ParkingLot lotToDelete = node.lot; // Store the original lot
-
-                if (removeFromLedgers) {
-                    // Remove from ledgers before node.lot is potentially changed
-                    removeFromLedgers(lotToDelete);
-                }
-
-                // Handle deletion cases
-                // Case 1: No child
-                if (node.left == null && node.right == null) {
-                    System.out.println("Lot with capacity " + node.getLoadCapacity() + " has been deleted.");
-                    return null;
-                }
-                // Case 2: One child
-                else if (node.left == null || node.right == null) {
-                    LedgerNode temp = (node.left != null) ? node.left : node.right;
-
-                    temp.parent = node.parent;
-                    System.out.println("Lot with capacity " + node.getLoadCapacity() + " has been deleted.");
-                    return temp;
+        // Assigns a truck turned away by a full lot to the closest smaller lot that is not full.
+        // Returns that lot's capacity, or -2 if there is none.
+        public int assigner(int truck, int capacity) {
+            if (!events.isEnabled()) {
+                ParkingLot nextLot = findAvailableBelow(capacity);
+                metrics.relocation(1);
+                if (nextLot == null) {
+                    return -2;
                 }
-                // Case 3: Two children
-                else {
-                    LedgerNode temp = minValueNode(node.right);
-
-                    // Replace node's lot with successor's lot
-                    node.lot = temp.lot;
+                return nextLot.addTruckToWaiting(truck);
+            }
 
-                    // Delete the successor node
-                    node.right = delete(node.right, temp.getLoadCapacity(), false);
-                    if (node.right != null)
-                        node.right.parent = node;
+            // Step down lot by lot so every full lot passed on the way is reported
+            ParkingLot nextLot = findClosestSmaller(capacity);
+            int probes = 1;
+            while (nextLot != null && nextLot.capacityStatus() == 0) {
+                events.truckRelocating(trucks.id(truck), nextLot.getLoadCapacity());
+                if (nextLot.load_capacity == 1) {
+                    metrics.relocation(probes);
+                    events.relocationFailed(trucks.id(truck));
+                    return -2;
                 }
+                nextLot = findClosestSmaller(nextLot.getLoadCapacity());
+                probes++;
             }
+            metrics.relocation(probes);
 
-            // Update the height of the current node
-            node.height = 1 + Math.max(height(node.left), height(node.right));
-
-            // Balance the node if necessary
-            int balance = getBalance(node);
-
-            // Left-Left Case
-            if (balance > 1 && getBalance(node.left) >= 0) {
-                return rightRotate(node);
+            if (nextLot == null) {
+                events.noSmallerLot(trucks.id(truck));
+                return -2;
             }
+            return nextLot.addTruckToWaiting(truck);
+        }
 
-            // Left-Right Case
-            if (balance > 1 && getBalance(node.left) < 0) {
-                node.left = leftRotate(node.left);
-                if (node.left != null) node.left.parent = node;
-                return rightRotate(node);
+        // Method to insert a parking lot to the Ledger, duplicate lots are not allowed
+        public void insert(ParkingLot newLot) {
+            if (tree.insert(newLot.getLoadCapacity(), newLot, 0) != LedgerEngine.NIL) {
+                if (newLot.capacityStatus() > 0) {
+                    available.insert(newLot.getLoadCapacity(), newLot, 0);
+                }
+                events.lotInserted(newLot.getLoadCapacity());
+            }
+        }
+
+        // Bulk insert: the lots are sorted by capacity, and both engines take the new ones in a single sorted
+        // batch. As with insert, a capacity already in the ledger or earlier in the batch is skipped.
+        public void insertAll(int[] capacities, int[] truckLimits, int count) {
+            long[] order = new long[count]; // Capacity in the high half, position in the low half
+            for (int i = 0; i < count; i++) {
+                order[i] = (long) capacities[i] << 32 | i;
+            }
+            Arrays.sort(order);
+
+            boolean[] inserted = new boolean[count];
+            int[] keys = new int[count];
+            ParkingLot[] lots = new ParkingLot[count];
+            int[] openKeys = new int[count];
+            ParkingLot[] openLots = new ParkingLot[count];
+            int added = 0;
+            int open = 0;
+            for (int j = 0; j < count; j++) {
+                int capacity = (int) (order[j] >> 32);
+                int i = (int) order[j];
+                if ((j > 0 && (int) (order[j - 1] >> 32) == capacity) || tree.find(capacity) != LedgerEngine.NIL) {
+                    continue;
+                }
+                ParkingLot lot = new ParkingLot(capacity, truckLimits[i]);
+                inserted[i] = true;
+                keys[added] = capacity;
+                lots[added++] = lot;
+                if (lot.capacityStatus() > 0) {
+                    openKeys[open] = capacity;
+                    openLots[open++] = lot;
+                }
             }
+            tree.insertSorted(keys, lots, added);
+            available.insertSorted(openKeys, openLots, open);
 
-            // Right-Right Case
-            if (balance < -1 && getBalance(node.right) <= 0) {
-                return leftRotate(node);
+            for (int i = 0; i < count; i++) {
+                if (inserted[i]) {
+                    events.lotInserted(capacities[i]);
+                }
             }
+        }
 
-            // Right-Left Case
-            if (balance < -1 && getBalance(node.right) > 0) {
-                node.right = rightRotate(node.right);
-                if (node.right != null) node.right.parent = node;
-                return leftRotate(node);
+        public void delete(int loadCapacity) {
+            int node = tree.find(loadCapacity);
+            if (node == LedgerEngine.NIL) {
+                events.lotNotFound(loadCapacity);
+                return;
             }
-
-            return node;
+            removeFromLedgers(tree.value(node));
+            tree.delete(loadCapacity);
+            available.delete(loadCapacity);
+            events.lotDeleted(loadCapacity);
         }
 
         // Method to remove a lot from the ledgers
@@ -769,617 +834,212 @@ public class ParkingLotManager {
             if (lotToDelete.isInWaitingLedger) {
                 waitingLedger.delete(lotToDelete.getLoadCapacity());
                 lotToDelete.isInWaitingLedger = false;
-                System.out.println("DELETE. Lot " + lotToDelete.getLoadCapacity() + " is deleted from the waiting ledger.");
+                events.lotLeftLedger(lotToDelete.getLoadCapacity(), false);
             }
 
             // Remove from readyLedger if present
             if (lotToDelete.isInReadyLedger) {
                 readyLedger.delete(lotToDelete.getLoadCapacity());
                 lotToDelete.isInReadyLedger = false;
-                System.out.println("DELETE. Lot " + lotToDelete.getLoadCapacity() + " is deleted from the ready ledger.");
+                events.lotLeftLedger(lotToDelete.getLoadCapacity(), true);
             }
-        }
 
-        public LedgerNode minValueNode(LedgerNode node) {
-            LedgerNode current = node;
-            while (current.left != null) {
-                current = current.left;
+            if (relocateOnDelete) {
+                relocateTrucks(lotToDelete);
+                return;
             }
-            return current;
-        }
-    }
-
-    // Node class for the ledger
-    public class LedgerNode {
-        int height;
-        LedgerNode left;
-        LedgerNode right;
-        LedgerNode parent;
-        ParkingLot lot; // Pointer to the parking lot that this node encapsulates
-
-        public LedgerNode(ParkingLot lot) {
-            this.lot = lot;
-            this.height = 1; // Initial height for AVL node
-        }
-
-        public int getLoadCapacity() {
-            return lot.getLoadCapacity();
-        }
-    }
-
-    // Node class for the ready ledger
-    public class ReadyNode {
-        int height;
-        ReadyNode left;
-        ReadyNode right;
-        ReadyNode parent;
-        ParkingLot lot; // Pointer to the parking lot that this node encapsulates
-        int totalTrucks;
-
-        public ReadyNode(ParkingLot lot) {
-            this.lot = lot;
-            this.height = 1; // Initial height for AVL node
-            this.totalTrucks = lot.readySection.getNumberOfTrucks();
-        }
-
-        // Getters and setters as needed
-        public int getLoadCapacity() {
-            return lot.getLoadCapacity();
-        }
-    }
-
-    // AVL tree structure for parking lots with ready trucks
-    public class ReadyLedger {
-        private ReadyNode root;
-
-        public ReadyNode findNode(int loadCapacity) {
-            return findNode(root, loadCapacity);
-        }
-
-        private ReadyNode findNode(ReadyNode node, int loadCapacity) {
-            if (node == null) {
-                return null;
+            // The trucks of a deleted lot leave with it
+            while (lotToDelete.waitingSection.size() > 0) {
+                trucks.free(lotToDelete.waitingSection.removeHead());
             }
-            if (loadCapacity == node.lot.getLoadCapacity()) {
-                return node;
-            } else if (loadCapacity < node.lot.getLoadCapacity()) {
-                return findNode(node.left, loadCapacity);
-            } else {
-                return findNode(node.right, loadCapacity);
+            while (lotToDelete.readySection.size() > 0) {
+                trucks.free(lotToDelete.readySection.removeHead());
             }
         }
 
-        public ReadyNode findLotMax(int loadCapacity) {
-            ReadyNode current = root;
-            ReadyNode min = minValueNode(root);
-
-            if (min != null && min.lot.load_capacity == loadCapacity) {
-                return min;
-            }
-
-            while (current != null) {
-                if (loadCapacity < current.lot.getLoadCapacity()) {
-                    current = current.left;
-                } else if (loadCapacity > current.lot.getLoadCapacity()) {
-                    current = current.right;
-                } else {
-                    return current;
+        // Moves the trucks of a lot being deleted, its waiting ones and then its ready ones in queue order, to the
+        // waiting sections of the lots below it. Each lot with room, from the closest smaller one down, is filled
+        // up before the next is looked up, and its ledger entries are updated once, so deleting a lot with m
+        // trucks that fill t lots costs O(m + t log n). Trucks left when no lot has room leave the simulation;
+        // as with add_truck, none get past a lot with capacity 1.
+        private void relocateTrucks(ParkingLot lot) {
+            TruckQueue section = lot.waitingSection.size() > 0 ? lot.waitingSection : lot.readySection;
+            ParkingLot target = lot.load_capacity == 1 ? null : findAvailableBelow(lot.load_capacity);
+            while (section.size() > 0 && target != null) {
+                for (int room = target.capacityStatus(); room > 0 && section.size() > 0; room--) {
+                    int truck = section.removeHead();
+                    target.waitingSection.add(truck);
+                    events.truckAdded(trucks.id(truck), target.load_capacity);
+                    if (section.size() == 0) {
+                        section = lot.readySection;
+                    }
                 }
-            }
-
-            return findClosestGreater(loadCapacity);  // If lot not found, return closest greater
-        }
-
-        // Method to find the closest parking lot with a load capacity greater than given value
-        public ReadyNode findClosestGreater(int loadCapacity) {
-            ReadyNode current = root;
-            ReadyNode closestGreater = null;
-
-            while (current != null) {
-                if (current.lot.getLoadCapacity() > loadCapacity) {
-                    // If current node's capacity is greater or equal, it could be our answer
-                    closestGreater = current;
-                    // Move left to find a potentially smaller but still valid capacity
-                    current = current.left;
+                ParkingLotManager owner = target.owner();
+                owner.ledger.updateAvailability(target);
+                if (target.isInWaitingLedger) {
+                    owner.waitingLedger.updateTotalTrucks(target);
                 } else {
-                    // Move right to look for larger capacities
-                    current = current.right;
+                    owner.waitingLedger.insert(target);
+                    target.isInWaitingLedger = true;
                 }
+                target = target.load_capacity == 1 ? null : findAvailableBelow(target.load_capacity);
             }
-            return closestGreater;
-        }
-
-        // Function to get the height of a node
-        private int height(ReadyNode node) {
-            return node == null ? 0 : node.height;
-        }
-
-        // Right rotation for balancing
-        private ReadyNode rightRotate(ReadyNode y) {
-            ReadyNode x = y.left;
-            ReadyNode T2 = x.right;
-
-            // Perform rotation
-            x.right = y;
-            y.left = T2;
-
-            // Update parents
-            if (T2 != null) {
-                T2.parent = y;
+            while (lot.waitingSection.size() > 0) {
+                trucks.free(lot.waitingSection.removeHead());
             }
-            x.parent = y.parent;
-            y.parent = x;
-
-            // Update the child pointer in the parent
-            if (x.parent != null) {
-                if (x.parent.left == y) {
-                    x.parent.left = x;
-                } else if (x.parent.right == y) {
-                    x.parent.right = x;
-                }
-            } else {
-                root = x; // x becomes the new root
+            while (lot.readySection.size() > 0) {
+                trucks.free(lot.readySection.removeHead());
             }
-
-            // Update heights
-            y.height = Math.max(height(y.left), height(y.right)) + 1;
-            x.height = Math.max(height(x.left), height(x.right)) + 1;
-
-            // Update totalTrucks
-            y.totalTrucks = getTotalTrucks(y.left) + getTotalTrucks(y.right) + y.lot.readySection.getNumberOfTrucks();
-            x.totalTrucks = getTotalTrucks(x.left) + getTotalTrucks(x.right) + x.lot.readySection.getNumberOfTrucks();
-
-
-            return x; // New root after rotation
         }
+    }
 
-        // Left rotation for balancing
-        private ReadyNode leftRotate(ReadyNode x) {
-            ReadyNode y = x.right;
-            ReadyNode T2 = y.left;
-
-            // Perform rotation
-            y.left = x;
-            x.right = T2;
-
-            // Update parents
-            if (T2 != null) {
-                T2.parent = x;
-            }
-            y.parent = x.parent;
-            x.parent = y;
-
-            // Update the child pointer in the parent
-            if (y.parent != null) {
-                if (y.parent.left == x) {
-                    y.parent.left = y;
-                } else if (y.parent.right == x) {
-                    y.parent.right = y;
-                }
-            } else {
-                root = y; // y becomes the new root
-            }
-
-            // Update heights
-            x.height = Math.max(height(x.left), height(x.right)) + 1;
-            y.height = Math.max(height(y.left), height(y.right)) + 1;
-
-            // Update totalTrucks
-            x.totalTrucks = getTotalTrucks(x.left) + getTotalTrucks(x.right) + x.lot.readySection.getNumberOfTrucks();
-            y.totalTrucks = getTotalTrucks(y.left) + getTotalTrucks(y.right) + y.lot.readySection.getNumberOfTrucks();
+    // AVL tree of lots keyed by load capacity and weighted by how many trucks they hold in one section. The same
+    // counts are mirrored in a CapacityIndex, which answers count queries over any capacity range.
+    public abstract class TruckCountLedger {
+        protected final LedgerEngine<ParkingLot> tree = LedgerEngine.open(ledgerEngine);
+        private final CapacityIndex counts = new CapacityIndex();
+        private final boolean ready; // Which section the snapshots file these counts under
 
-            return y; // New root after rotation
+        protected TruckCountLedger(boolean ready) {
+            this.ready = ready;
         }
 
-        // Get balance factor of a node
-        private int getBalance(ReadyNode node) {
-            return node == null ? 0 : height(node.left) - height(node.right);
-        }
+        // The trucks of the lot that this ledger counts
+        protected abstract int trucksIn(ParkingLot lot);
 
-        // Method to insert a parking lot to the ReadyLedger
-        public void insert(ReadyNode newNode) {
-            root = insert(root, newNode);
-            if (root != null) {
-                root.parent = null;
+        // Returns false if a lot with the same capacity is already in the ledger
+        protected boolean add(ParkingLot lot) {
+            if (tree.insert(lot.getLoadCapacity(), lot, trucksIn(lot)) == LedgerEngine.NIL) {
+                return false;
             }
-        }
-
-        // Internal recursive insert function with balancing
-        private ReadyNode insert(ReadyNode node, ReadyNode newNode) {
-            if (node == null) {
-                System.out.println("Ready lot with capacity " + newNode.lot.getLoadCapacity() + " inserted into readyLedger");
-                return newNode; // Insert new node at the correct position
-            }
-
-            // Recursion that traverses based on load capacity
-            if (newNode.lot.getLoadCapacity() < node.lot.getLoadCapacity()) {
-                node.left = insert(node.left, newNode);
-                if (node.left != null)
-                    node.left.parent = node;
-            } else if (newNode.lot.getLoadCapacity() > node.lot.getLoadCapacity()) {
-                node.right = insert(node.right, newNode);
-                if (node.right != null)
-                    node.right.parent = node;
-            } else {
-                return node; // Duplicate lots are not allowed
-            }
-
-            // Update height of nodes in backtracking/unwinding
-            node.height = 1 + Math.max(height(node.left), height(node.right));
-            node.totalTrucks = getTotalTrucks(node.left) + getTotalTrucks(node.right) + node.lot.readySection.getNumberOfTrucks();
-
-            // Check balance factor and perform rotations as the recursion unwinds
-
-            // Left-Left Case
-            int balance = getBalance(node);
-            if (balance > 1 && newNode.lot.getLoadCapacity() < node.left.lot.getLoadCapacity()) {
-                return rightRotate(node);
-            }
-
-            // Right-Right Case
-            if (balance < -1 && newNode.lot.getLoadCapacity() > node.right.lot.getLoadCapacity()) {
-                return leftRotate(node);
-            }
-
-            // Left-Right Case
-            if (balance > 1 && newNode.lot.getLoadCapacity() > node.left.lot.getLoadCapacity()) {
-                node.left = leftRotate(node.left);
-                return rightRotate(node);
-            }
-
-            // Right-Left Case
-            if (balance < -1 && newNode.lot.getLoadCapacity() < node.right.lot.getLoadCapacity()) {
-                node.right = rightRotate(node.right);
-                return leftRotate(node);
-            }
-
-            return node; // Return the balanced node
+            counts.add(lot.getLoadCapacity(), trucksIn(lot));
+            mirror(lot.getLoadCapacity(), trucksIn(lot));
+            return true;
         }
 
         public void delete(int loadCapacity) {
-            root = delete(root, loadCapacity);
-            if (root != null) {
-                root.parent = null; // The root's parent should be null
+            int node = tree.find(loadCapacity);
+            if (node != LedgerEngine.NIL) {
+                counts.add(loadCapacity, -tree.weight(node));
+                tree.delete(loadCapacity);
+                mirror(loadCapacity, 0);
             }
         }
 
-        private ReadyNode delete(ReadyNode node, int loadCapacity) {
-            if (node == null) {
-                return null;
-            }
-
-            // Traverse the tree
-            if (loadCapacity < node.lot.getLoadCapacity()) {
-                node.left = delete(node.left, loadCapacity);
-                if (node.left != null)
-                    node.left.parent = node;
-            } else if (loadCapacity > node.lot.getLoadCapacity()) {
-                node.right = delete(node.right, loadCapacity);
-                if (node.right != null)
-                    node.right.parent = node;
-            } else {
-                // Node to be deleted found
-
-                // Case 1: No child
-                if (node.left == null && node.right == null) {
-                    return null;
-                }
-                // Case 2: One child (right child only)
-                else if (node.left == null) {
-                    node.right.parent = node.parent;
-                    return node.right;
-                }
-                // Case 2: One child (left child only)
-                else if (node.right == null) {
-                    node.left.parent = node.parent;
-                    return node.left;
-                }
-                // Case 3: Two children
-                else {
-                    ReadyNode temp = minValueNode(node.right);
-
-                    // Copy data
-                    node.lot = temp.lot;
-
-                    // Delete successor
-                    node.right = delete(node.right, temp.lot.load_capacity);
-                    if (node.right != null)
-                        node.right.parent = node;
-                }
-            }
-
-            // If the node is null after deletion, return null
-            if (node == null) {
-                return null;
-            }
-
-            // Update the height of the current node
-            node.height = 1 + Math.max(height(node.left), height(node.right));
-            node.totalTrucks = getTotalTrucks(node.left) + getTotalTrucks(node.right) + node.lot.readySection.getNumberOfTrucks();
-
-
-            // Get the balance factor to check if this node became unbalanced
-            int balance = getBalance(node);
-
-            // Balance the node if necessary
-
-            // Left-Left Case
-            if (balance > 1 && getBalance(node.left) >= 0) {
-                return rightRotate(node);
-            }
-
-            // Left-Right Case
-            if (balance > 1 && getBalance(node.left) < 0) {
-                node.left = leftRotate(node.left);
-                return rightRotate(node);
-            }
-
-            // Right-Right Case
-            if (balance < -1 && getBalance(node.right) <= 0) {
-                return leftRotate(node);
+        public void updateTotalTrucks(ParkingLot lot) {
+            int node = tree.find(lot.getLoadCapacity());
+            if (node != LedgerEngine.NIL) {
+                counts.add(lot.getLoadCapacity(), trucksIn(lot) - tree.weight(node));
+                tree.setWeight(node, trucksIn(lot));
+                mirror(lot.getLoadCapacity(), trucksIn(lot));
             }
-
-            // Right-Left Case
-            if (balance < -1 && getBalance(node.right) > 0) {
-                node.right = rightRotate(node.right);
-                return leftRotate(node);
-            }
-
-            // Return the balanced node
-            return node;
         }
 
-        // Method to find the node with the smallest load capacity in a subtree
-        public ReadyNode minValueNode(ReadyNode node) {
-            ReadyNode current = node;
-            while (current != null && current.left != null) {
-                current = current.left;
+        private void mirror(int loadCapacity, int trucks) {
+            if (snapshots != null) {
+                snapshots.set(loadCapacity, ready, trucks);
             }
-            return current;
         }
-    }
 
-    // Node class for waiting ledger
-    public class WaitingNode {
-        int height;
-        WaitingNode left;
-        WaitingNode right;
-        WaitingNode parent;
-        ParkingLot lot; // Pointer to the parking lot that this node encapsulates
-        int totalTrucks;
-
-        public WaitingNode(ParkingLot lot) {
-            this.lot = lot;
-            this.height = 1; // Initial height for AVL node
-            this.totalTrucks = lot.waitingSection.getNumberOfTrucks();
+        // Trucks in lots with a load capacity greater than the given one
+        public int countTrucksAbove(int capacity) {
+            if (counts.coversAll()) {
+                return counts.sumGreater(capacity);
+            }
+            walkTrees();
+            return tree.sumGreater(capacity);
         }
 
-        // Getters and setters as needed
-        public int getLoadCapacity() {
-            return lot.getLoadCapacity();
+        // Trucks in lots with a load capacity in [low, high]
+        public int countTrucksBetween(int low, int high) {
+            if (counts.coversAll()) {
+                return counts.sumRange(low, high);
+            }
+            walkTrees();
+            return tree.sumBetween(low, high);
         }
     }
 
-    public class WaitingLedger {
-        private WaitingNode root;
+    // Lots with ready trucks
+    public class ReadyLedger extends TruckCountLedger {
 
-        public WaitingNode findNode(int loadCapacity) {
-            return findNode(root, loadCapacity);
+        public ReadyLedger() {
+            super(true);
         }
 
-        private WaitingNode findNode(WaitingNode node, int loadCapacity) {
-            if (node == null) {
-                return null;
-            }
-            if (loadCapacity == node.lot.getLoadCapacity()) {
-                return node;
-            } else if (loadCapacity < node.lot.getLoadCapacity()) {
-                return findNode(node.left, loadCapacity);
-            } else {
-                return findNode(node.right, loadCapacity);
-            }
+        @Override
+        protected int trucksIn(ParkingLot lot) {
+            return lot.readySection.size();
         }
 
-
-        public void insert(WaitingNode newNode) {
-            root = insert(root, newNode);
-            if (root != null) {
-                root.parent = null;
+        // The lot with the given capacity, or else the closest greater one, in any shard
+        public ParkingLot findLotMax(int loadCapacity) {
+            ParkingLotManager shard = shardOf(loadCapacity);
+            int node;
+            while ((node = shard.readyLedger.tree.ceiling(loadCapacity)) == LedgerEngine.NIL && shard.above != null) {
+                shard = enter(shard.above);
             }
+            return lotAt(shard.readyLedger.tree, node);
         }
 
-        private WaitingNode insert(WaitingNode node, WaitingNode newNode) {
-            if (node == null) {
-                return newNode;
-            }
-
-            if (newNode.getLoadCapacity() < node.getLoadCapacity()) {
-                node.left = insert(node.left, newNode);
-                node.left.parent = node;
-            } else if (newNode.getLoadCapacity() > node.getLoadCapacity()) {
-                node.right = insert(node.right, newNode);
-                node.right.parent = node;
-            } else {
-                return node; // Duplicate capacities are not allowed
+        // Method to find the closest parking lot with a load capacity greater than given value
+        public ParkingLot findClosestGreater(int loadCapacity) {
+            ParkingLotManager shard = shardOf(loadCapacity);
+            int node;
+            while ((node = shard.readyLedger.tree.higher(loadCapacity)) == LedgerEngine.NIL && shard.above != null) {
+                shard = enter(shard.above);
             }
-
-            // Update height and balance
-            node.height = 1 + Math.max(height(node.left), height(node.right));
-            node.totalTrucks = getTotalTrucks(node.left) + getTotalTrucks(node.right) + node.lot.waitingSection.getNumberOfTrucks();
-            return balance(node);
+            return lotAt(shard.readyLedger.tree, node);
         }
 
-        public void delete(int loadCapacity) {
-            root = delete(root, loadCapacity);
-            if (root != null) {
-                root.parent = null;
+        public void insert(ParkingLot lot) {
+            if (add(lot)) {
+                events.readyLotInserted(lot.getLoadCapacity());
             }
         }
 
-        private WaitingNode delete(WaitingNode node, int loadCapacity) {
-            if (node == null) {
-                return null;
-            }
-
-            if (loadCapacity < node.getLoadCapacity()) {
-                node.left = delete(node.left, loadCapacity);
-                if (node.left != null)
-                    node.left.parent = node;
-            } else if (loadCapacity > node.getLoadCapacity()) {
-                node.right = delete(node.right, loadCapacity);
-                if (node.right != null)
-                    node.right.parent = node;
-            } else {
-                // Node to be deleted found
-                if (node.left == null || node.right == null) {
-                    WaitingNode temp = (node.left != null) ? node.left : node.right;
-
-                    if (temp == null) {
-                        node = null;
-                    } else {
-                        temp.parent = node.parent;
-                        node = temp;
-                    }
-                } else {
-                    WaitingNode temp = minValueNode(node.right);
-                    node.lot = temp.lot;
-                    node.right = delete(node.right, temp.getLoadCapacity());
-                    if (node.right != null)
-                        node.right.parent = node;
-                }
-            }
-
-            if (node == null) {
-                return node;
-            }
-
-            // Update height and balance
-            node.height = Math.max(height(node.left), height(node.right)) + 1;
-            node.totalTrucks = getTotalTrucks(node.left) + getTotalTrucks(node.right) + node.lot.waitingSection.getNumberOfTrucks();
-
-            return balance(node);
+        // In-order walk over the lots above a capacity; the ledger must not change during the walk
+        public int firstNodeAbove(int loadCapacity) {
+            return tree.higher(loadCapacity);
         }
 
-        private int height(WaitingNode node) {
-            return node == null ? 0 : node.height;
+        public int nextNode(int node) {
+            return tree.successor(node);
         }
 
-        private int getBalance(WaitingNode node) {
-            return node == null ? 0 : height(node.left) - height(node.right);
+        public ParkingLot lotOf(int node) {
+            return tree.value(node);
         }
+    }
 
-        private WaitingNode balance(WaitingNode node) {
-            int balance = getBalance(node);
-
-            // Left Left Case
-            if (balance > 1 && getBalance(node.left) >= 0) {
-                return rightRotate(node);
-            }
-
-            // Left Right Case
-            if (balance > 1 && getBalance(node.left) < 0) {
-                node.left = leftRotate(node.left);
-                return rightRotate(node);
-            }
-
-            // Right Right Case
-            if (balance < -1 && getBalance(node.right) <= 0) {
-                return leftRotate(node);
-            }
-
-            // Right Left Case
-            if (balance < -1 && getBalance(node.right) > 0) {
-                node.right = rightRotate(node.right);
-                return leftRotate(node);
-            }
-
-            return node;
-        }
-
-        private WaitingNode rightRotate(WaitingNode y) {
-            WaitingNode x = y.left;
-            WaitingNode T2 = x.right;
-
-            // Perform rotation
-            x.right = y;
-            y.left = T2;
-
-            // Update parents
-            if (T2 != null) {
-                T2.parent = y;
-            }
-            x.parent = y.parent;
-            y.parent = x;
-
-            // Update heights
-            y.height = Math.max(height(y.left), height(y.right)) + 1;
-            x.height = Math.max(height(x.left), height(x.right)) + 1;
-
-            // Update totalTrucks
-            y.totalTrucks = getTotalTrucks(y.left) + getTotalTrucks(y.right) + y.lot.waitingSection.getNumberOfTrucks();
-            x.totalTrucks = getTotalTrucks(x.left) + getTotalTrucks(x.right) + x.lot.waitingSection.getNumberOfTrucks();
-
+    // Lots with waiting trucks
+    public class WaitingLedger extends TruckCountLedger {
 
-            return x;
+        public WaitingLedger() {
+            super(false);
         }
 
-        private WaitingNode leftRotate(WaitingNode x) {
-            WaitingNode y = x.right;
-            WaitingNode T2 = y.left;
-
-            // Perform rotation
-            y.left = x;
-            x.right = T2;
-
-            // Update parents
-            if (T2 != null) {
-                T2.parent = x;
-            }
-            y.parent = x.parent;
-            x.parent = y;
-
-            // Update heights
-            x.height = Math.max(height(x.left), height(x.right)) + 1;
-            y.height = Math.max(height(y.left), height(y.right)) + 1;
-
-            // Update totalTrucks
-            x.totalTrucks = getTotalTrucks(x.left) + getTotalTrucks(x.right) + x.lot.waitingSection.getNumberOfTrucks();
-            y.totalTrucks = getTotalTrucks(y.left) + getTotalTrucks(y.right) + y.lot.waitingSection.getNumberOfTrucks();
-
-
-            return y;
+        @Override
+        protected int trucksIn(ParkingLot lot) {
+            return lot.waitingSection.size();
         }
 
-        private WaitingNode minValueNode(WaitingNode node) {
-            WaitingNode current = node;
-            while (current.left != null) {
-                current = current.left;
+        // The lot with the given capacity, or else the closest greater one, in any shard
+        public ParkingLot findLot(int loadCapacity) {
+            ParkingLotManager shard = shardOf(loadCapacity);
+            int node;
+            while ((node = shard.waitingLedger.tree.ceiling(loadCapacity)) == LedgerEngine.NIL && shard.above != null) {
+                shard = enter(shard.above);
             }
-            return current;
+            return lotAt(shard.waitingLedger.tree, node);
         }
 
-        public WaitingNode findLot(int loadCapacity) {
-            WaitingNode current = root;
-            WaitingNode closestGreater = null;
-
-            while (current != null) {
-                if (current.getLoadCapacity() >= loadCapacity) {
-                    closestGreater = current;
-                    current = current.left;
-                } else {
-                    current = current.right;
-                }
-            }
-            return closestGreater;
+        public void insert(ParkingLot lot) {
+            add(lot);
         }
     }
 
-    private int getTotalTrucks(WaitingNode node) {
-        return node == null ? 0 : node.totalTrucks;
+    private static ParkingLot lotAt(LedgerEngine<ParkingLot> tree, int node) {
+        return node == LedgerEngine.NIL ? null : tree.value(node);
     }
-
-    private int getTotalTrucks(ReadyNode node) {
-        return node == null ? 0 : node.totalTrucks;
-    }
-
 }
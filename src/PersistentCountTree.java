@@ -0,0 +1,187 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+// Waiting and ready truck counts per lot capacity in a persistent AVL tree. Nodes never change: an update copies
+// the path from the root down to the lot it touches, rebalancing on the way back up, and shares every other node
+// with the previous version. The writer publishes its latest root through an atomic reference, so a reader takes
+// a snapshot in O(1) and can run count queries on it for as long as it likes, without locks and without holding
+// the writer up. A snapshot keeps the node versions it reaches alive until it is dropped.
+public class PersistentCountTree {
+
+    private static final class Node {
+        final int capacity;
+        final int waiting;
+        final int ready;
+        final int height;
+        final int waitingSum; // Of the node and its subtrees
+        final int readySum;
+        final Node left;
+        final Node right;
+
+        Node(int capacity, int waiting, int ready, Node left, Node right) {
+            this.capacity = capacity;
+            this.waiting = waiting;
+            this.ready = ready;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.waitingSum = waiting + waitingSum(left) + waitingSum(right);
+            this.readySum = ready + readySum(left) + readySum(right);
+        }
+    }
+
+    private Node root; // The writer's version, ahead of the published one until the next publish
+    private final AtomicReference<Node> published = new AtomicReference<>();
+
+    // Sets the trucks one section of a lot holds; a lot with no trucks left drops out of the tree
+    public void set(int capacity, boolean ready, int trucks) {
+        root = set(root, capacity, ready, trucks);
+    }
+
+    // Makes every update so far visible to the snapshots taken from now on
+    public void publish() {
+        if (published.get() != root) {
+            published.set(root);
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(published.get());
+    }
+
+    // The counts as they were at one publish
+    public static final class Snapshot {
+        private final Node root;
+
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+
+        // Trucks, waiting or ready, in lots with a load capacity greater than the given one
+        public int countTrucks(int capacity) {
+            return sumAbove(root, capacity, true, true);
+        }
+
+        public int countWaiting(int capacity) {
+            return sumAbove(root, capacity, true, false);
+        }
+
+        public int countReady(int capacity) {
+            return sumAbove(root, capacity, false, true);
+        }
+
+        // Trucks in lots with a load capacity in [low, high]
+        public int countRange(int low, int high) {
+            if (low > high) {
+                return 0;
+            }
+            int atLeastLow = low == Integer.MIN_VALUE ? sum(root, true, true) : sumAbove(root, low - 1, true, true);
+            return atLeastLow - sumAbove(root, high, true, true);
+        }
+    }
+
+    private static int sumAbove(Node node, int capacity, boolean waiting, boolean ready) {
+        int total = 0;
+        while (node != null) {
+            if (node.capacity > capacity) {
+                total += (waiting ? node.waiting : 0) + (ready ? node.ready : 0) + sum(node.right, waiting, ready);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return total;
+    }
+
+    private static int sum(Node node, boolean waiting, boolean ready) {
+        return (waiting ? waitingSum(node) : 0) + (ready ? readySum(node) : 0);
+    }
+
+    private static Node set(Node node, int capacity, boolean ready, int trucks) {
+        if (node == null) {
+            return trucks == 0 ? null : new Node(capacity, ready ? 0 : trucks, ready ? trucks : 0, null, null);
+        }
+        // An unchanged subtree leaves the path above it as it is
+        if (capacity < node.capacity) {
+            Node left = set(node.left, capacity, ready, trucks);
+            return left == node.left ? node : balance(node.capacity, node.waiting, node.ready, left, node.right);
+        }
+        if (capacity > node.capacity) {
+            Node right = set(node.right, capacity, ready, trucks);
+            return right == node.right ? node : balance(node.capacity, node.waiting, node.ready, node.left, right);
+        }
+        int waiting = ready ? node.waiting : trucks;
+        int readyTrucks = ready ? trucks : node.ready;
+        if (waiting == node.waiting && readyTrucks == node.ready) {
+            return node;
+        }
+        if (waiting == 0 && readyTrucks == 0) {
+            return remove(node);
+        }
+        return new Node(capacity, waiting, readyTrucks, node.left, node.right);
+    }
+
+    // The node's subtrees joined without it, the smallest node on the right taking its place
+    private static Node remove(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node min = node.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.capacity, min.waiting, min.ready, node.left, removeMin(node.right));
+    }
+
+    private static Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.capacity, node.waiting, node.ready, removeMin(node.left), node.right);
+    }
+
+    // A new node over the given subtrees, rotated if their heights differ by more than one
+    private static Node balance(int capacity, int waiting, int ready, Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left.left, left.capacity, left.waiting, left.ready, left.right);
+            }
+            return new Node(left.capacity, left.waiting, left.ready, left.left,
+                    new Node(capacity, waiting, ready, left.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right.left, right.capacity, right.waiting, right.ready, right.right);
+            }
+            return new Node(right.capacity, right.waiting, right.ready,
+                    new Node(capacity, waiting, ready, left, right.left), right.right);
+        }
+        return new Node(capacity, waiting, ready, left, right);
+    }
+
+    // The node described by the arguments with its right child lifted above it
+    private static Node rotateLeft(Node left, int capacity, int waiting, int ready, Node right) {
+        return new Node(right.capacity, right.waiting, right.ready, new Node(capacity, waiting, ready, left,
+                right.left), right.right);
+    }
+
+    // The node described by the arguments with its left child lifted above it
+    private static Node rotateRight(Node left, int capacity, int waiting, int ready, Node right) {
+        return new Node(left.capacity, left.waiting, left.ready, left.left, new Node(capacity, waiting, ready,
+                left.right, right));
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int waitingSum(Node node) {
+        return node == null ? 0 : node.waitingSum;
+    }
+
+    private static int readySum(Node node) {
+        return node == null ? 0 : node.readySum;
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Runs the simulation as three threads joined by bounded SpscRings: a parser that decodes commands, a single
+// executor that applies them to the ParkingLotManager in input order, and a writer that formats the results.
+// Tokenizing and output formatting overlap with the ledger work, while the output stays exactly the same.
+public class PipelinedRunner {
+    private static final int RING_CAPACITY = 1 << 16;
+
+    // Result record types
+    private static final int VALUE = 0;
+    private static final int PAIR = 1;
+    private static final int PLACEMENTS = 2;
+    private static final int TEXT = 3;
+
+    private final SpscRing commands = new SpscRing(RING_CAPACITY);
+    private final SpscRing results = new SpscRing(RING_CAPACITY);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    // Returns a summary of how long each stage waited on its neighbours
+    public static String run(ParkingLotManager manager, CommandReader reader, ResultSink out) throws IOException {
+        return new PipelinedRunner().runStages(manager, reader, out);
+    }
+
+    private String runStages(ParkingLotManager manager, CommandReader reader, ResultSink out) throws IOException {
+        long start = System.nanoTime();
+
+        Thread parser = start("parser", () -> parse(reader));
+        Thread executor = start("executor", () -> execute(new CommandExecutor(manager)));
+        Thread writer = start("writer", () -> write(out));
+
+        try {
+            parser.join();
+            executor.join();
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            commands.abort();
+            results.abort();
+            throw new IOException("Interrupted while waiting for the pipeline", e);
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new IOException(e);
+        }
+
+        return report(System.nanoTime() - start);
+    }
+
+    private Thread start(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (Throwable e) {
+                // Keep the first failure and unblock the other stages
+                if (failure.compareAndSet(null, e)) {
+                    commands.abort();
+                    results.abort();
+                }
+            }
+        }, "pipeline-" + name);
+        thread.start();
+        return thread;
+    }
+
+    // Command records: opcode, arg0, arg1; unknown commands carry their name instead of arguments
+    private void parse(CommandReader reader) throws IOException {
+        while (reader.next()) {
+            int opcode = reader.opcode();
+            commands.put(opcode);
+            if (opcode == Opcode.UNKNOWN) {
+                commands.putString(reader.command());
+            } else {
+                commands.put(Opcode.arity(opcode) > 0 ? reader.arg(0) : 0);
+                commands.put(Opcode.arity(opcode) > 1 ? reader.arg(1) : 0);
+            }
+            commands.publish();
+        }
+        commands.put(SpscRing.END);
+        commands.publish();
+    }
+
+    private void execute(CommandExecutor executor) throws IOException {
+        ResultSink encoder = new RingResultSink();
+
+        int opcode;
+        while ((opcode = commands.take()) != SpscRing.END) {
+            if (opcode == Opcode.UNKNOWN) {
+                String command = commands.takeString();
+                commands.release();
+                encoder.text("Unknown command: " + command);
+            } else {
+                int arg0 = commands.take();
+                int arg1 = commands.take();
+                commands.release();
+                executor.execute(opcode, arg0, arg1, encoder);
+            }
+        }
+        results.put(SpscRing.END);
+        results.publish();
+    }
+
+    private void write(ResultSink out) throws IOException {
+        PlacementList placements = new PlacementList();
+
+        int type;
+        while ((type = results.take()) != SpscRing.END) {
+            switch (type) {
+                case VALUE:
+                    out.value(results.take());
+                    break;
+
+                case PAIR:
+                    int first = results.take();
+                    out.pair(first, results.take());
+                    break;
+
+                case PLACEMENTS:
+                    placements.clear();
+                    for (int n = results.take(); n > 0; n--) {
+                        int truckID = results.take();
+                        placements.add(truckID, results.take());
+                    }
+                    out.placements(placements);
+                    break;
+
+                case TEXT:
+                    out.text(results.takeString());
+                    break;
+
+                default:
+                    throw new IllegalStateException("Unknown result record: " + type);
+            }
+            results.release();
+        }
+    }
+
+    private String report(long elapsed) {
+        long parserStall = commands.producerStallNanos();
+        long executorStall = commands.consumerStallNanos() + results.producerStallNanos();
+        long writerStall = results.consumerStallNanos();
+
+        // The stage that never waits is the one every other stage is waiting for
+        String bottleneck = "executor";
+        if (parserStall < executorStall && parserStall <= writerStall) {
+            bottleneck = "parser";
+        } else if (writerStall < executorStall && writerStall < parserStall) {
+            bottleneck = "writer";
+        }
+
+        return "Pipeline finished in " + millis(elapsed) + " ms. Stalls: parser "
+                + millis(commands.producerStallNanos()) + " ms on a full command ring, executor "
+                + millis(commands.consumerStallNanos()) + " ms on an empty command ring and "
+                + millis(results.producerStallNanos()) + " ms on a full result ring, writer "
+                + millis(results.consumerStallNanos()) + " ms on an empty result ring. Throughput is limited by the "
+                + bottleneck + ".";
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    // Encodes results into the result ring for the writer thread
+    private class RingResultSink implements ResultSink {
+        @Override
+        public void value(int value) {
+            results.put(VALUE);
+            results.put(value);
+            results.publish();
+        }
+
+        @Override
+        public void pair(int first, int second) {
+            results.put(PAIR);
+            results.put(first);
+            results.put(second);
+            results.publish();
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+            results.put(PLACEMENTS);
+            results.put(placements.size());
+            for (int i = 0; i < placements.size(); i++) {
+                results.put(placements.truckID(i));
+                results.put(placements.capacity(i));
+            }
+            results.publish();
+        }
+
+        @Override
+        public void text(String line) {
+            results.put(TEXT);
+            results.putString(line);
+            results.publish();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// Trucks moved by one LOAD command, as (truck ID, destination lot capacity) pairs in output order.
+// A capacity of -1 means the truck could not be placed anywhere. The list is reused across commands.
+public class PlacementList {
+    private int[] pairs = new int[32];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int truckID, int capacity) {
+        if (2 * size == pairs.length) {
+            pairs = java.util.Arrays.copyOf(pairs, 2 * pairs.length);
+        }
+        pairs[2 * size] = truckID;
+        pairs[2 * size + 1] = capacity;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int truckID(int i) {
+        return pairs[2 * i];
+    }
+
+    public int capacity(int i) {
+        return pairs[2 * i + 1];
+    }
+}
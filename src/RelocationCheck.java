@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// Checks delete_parking_lot under enableRelocationOnDelete. A fixed depot first: deleting its largest lot must
+// move the waiting trucks and then the ready ones, in queue order, filling each smaller lot with room before the
+// next, skipping full lots and stopping at the lot with capacity 1. Then random rounds: each builds a small depot
+// with random commands, copies it into a plain model, and deletes a few lots from both. After every delete the
+// manager's lots and queues must match the model's, which relocates truck by truck with lists and a TreeMap, and
+// the ledgers must agree with the queues: the waiting and ready counts above every capacity, the count of every
+// single lot, and which lots sit in the waiting and ready ledgers.
+//
+//   java RelocationCheck [rounds] [seed]
+public class RelocationCheck {
+    private static final int MAX_CAPACITY = 30;
+
+    // One lot of the model; trucks are kept by ID
+    private static final class Lot {
+        final int limit;
+        final ArrayDeque<Integer> waiting = new ArrayDeque<>();
+        final ArrayDeque<Integer> ready = new ArrayDeque<>();
+
+        Lot(int limit) {
+            this.limit = limit;
+        }
+
+        int room() {
+            return limit - waiting.size() - ready.size();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        checkFixedDepot();
+        System.out.println("Fixed depot: queue order, filling, full lots skipped and the capacity-1 stop as expected");
+
+        Random random = new Random(seed);
+        long deletes = 0;
+        long moved = 0;
+        for (int round = 0; round < rounds; round++) {
+            ParkingLotManager manager = new ParkingLotManager();
+            manager.enableRelocationOnDelete();
+            CommandExecutor executor = new CommandExecutor(manager);
+            setup(executor, random);
+            TreeMap<Integer, Lot> model = copy(manager);
+            for (int d = 0; d < 3 && !model.isEmpty(); d++) {
+                int capacity = random.nextInt(4) == 0 ? random.nextInt(MAX_CAPACITY + 3) - 2
+                        : pick(model, random);
+                moved += delete(model, capacity);
+                executor.execute(Opcode.DELETE_PARKING_LOT, capacity, 0, ResultSink.NONE);
+                deletes++;
+                String problem = compare(manager, model);
+                if (problem != null) {
+                    System.out.println("Round " + round + ", delete_parking_lot " + capacity + ": " + problem);
+                    System.out.println("  manager " + describe(copy(manager)));
+                    System.out.println("  model   " + describe(model));
+                    System.exit(1);
+                }
+            }
+        }
+        System.out.printf("%d rounds, %d deletes moved %d trucks: lots, queues and ledger counts match the model%n",
+                rounds, deletes, moved);
+    }
+
+    // Lots 100 (5 trucks), 60 (room for 2 more), 45 (full), 30 (room for 1), 1 (room for 1) and -5 (empty).
+    // Deleting 100 moves waiting 3, 4 and 5, then ready 1 and 2: 3 and 4 fill 60, 45 is passed, 5 fills 30, 1
+    // fills lot 1, and 2 leaves the simulation since nothing moves past lot 1, though -5 has room.
+    private static void checkFixedDepot() throws IOException {
+        ParkingLotManager manager = new ParkingLotManager();
+        manager.enableRelocationOnDelete();
+        CommandExecutor executor = new CommandExecutor(manager);
+        int[][] commands = {
+                {Opcode.CREATE_PARKING_LOT, 100, 5}, {Opcode.CREATE_PARKING_LOT, 60, 3},
+                {Opcode.CREATE_PARKING_LOT, 45, 1}, {Opcode.CREATE_PARKING_LOT, 30, 1},
+                {Opcode.CREATE_PARKING_LOT, 1, 1}, {Opcode.CREATE_PARKING_LOT, -5, 3},
+                {Opcode.ADD_TRUCK, 900, 60}, {Opcode.ADD_TRUCK, 901, 45},
+                {Opcode.ADD_TRUCK, 1, 100}, {Opcode.ADD_TRUCK, 2, 100}, {Opcode.ADD_TRUCK, 3, 100},
+                {Opcode.ADD_TRUCK, 4, 100}, {Opcode.ADD_TRUCK, 5, 100},
+                {Opcode.READY, 100, 0}, {Opcode.READY, 100, 0},
+                {Opcode.DELETE_PARKING_LOT, 100, 0}
+        };
+        for (int[] command : commands) {
+            executor.execute(command[0], command[1], command[2], ResultSink.NONE);
+        }
+        String expected = "-5/3 W[] R[]; 1/1 W[1] R[]; 30/1 W[5] R[]; 45/1 W[901] R[]; 60/3 W[900, 3, 4] R[]; ";
+        String actual = describe(copy(manager));
+        if (!actual.equals(expected)) {
+            System.out.println("Fixed depot after delete_parking_lot 100:");
+            System.out.println("  expected " + expected);
+            System.out.println("  got      " + actual);
+            System.exit(1);
+        }
+        String problem = compare(manager, copy(manager));
+        if (problem != null) {
+            System.out.println("Fixed depot after delete_parking_lot 100: " + problem);
+            System.exit(1);
+        }
+    }
+
+    // Lots with room for one to four trucks, among them often the one with capacity 1, and trucks added,
+    // readied and loaded
+    private static void setup(CommandExecutor executor, Random random) throws IOException {
+        int lots = 3 + random.nextInt(8);
+        for (int i = 0; i < lots; i++) {
+            int capacity = random.nextInt(3) == 0 ? 1 : random.nextInt(MAX_CAPACITY + 3) - 2;
+            executor.execute(Opcode.CREATE_PARKING_LOT, capacity, 1 + random.nextInt(4), ResultSink.NONE);
+        }
+        int commands = 10 + random.nextInt(30);
+        for (int i = 0; i < commands; i++) {
+            int capacity = 1 + random.nextInt(MAX_CAPACITY);
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                executor.execute(Opcode.ADD_TRUCK, 1000 + i, capacity, ResultSink.NONE);
+            } else if (kind < 9) {
+                executor.execute(Opcode.READY, capacity, 0, ResultSink.NONE);
+            } else {
+                executor.execute(Opcode.LOAD, capacity, 1 + random.nextInt(2 * MAX_CAPACITY), ResultSink.NONE);
+            }
+        }
+    }
+
+    private static int pick(TreeMap<Integer, Lot> model, Random random) {
+        int skip = random.nextInt(model.size());
+        for (int capacity : model.keySet()) {
+            if (skip-- == 0) {
+                return capacity;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    // The rule the manager batches, one truck at a time: each goes to the closest smaller lot with room, and no
+    // truck gets past the lot with capacity 1. Returns how many trucks moved.
+    private static int delete(TreeMap<Integer, Lot> model, int capacity) {
+        Lot deleted = model.remove(capacity);
+        if (deleted == null) {
+            return 0;
+        }
+        ArrayDeque<Integer> trucks = new ArrayDeque<>(deleted.waiting);
+        trucks.addAll(deleted.ready);
+        int moved = 0;
+        for (int truck : trucks) {
+            Integer below = capacity == 1 ? null : model.lowerKey(capacity);
+            while (below != null && model.get(below).room() == 0 && below != 1) {
+                below = model.lowerKey(below);
+            }
+            if (below == null || model.get(below).room() == 0) {
+                break; // Lots only fill up, so no later truck finds room either
+            }
+            model.get(below).waiting.add(truck);
+            moved++;
+        }
+        return moved;
+    }
+
+    // The manager's lots and queues, read through visitLots
+    private static TreeMap<Integer, Lot> copy(ParkingLotManager manager) {
+        TreeMap<Integer, Lot> lots = new TreeMap<>();
+        manager.visitLots(new ParkingLotManager.LotVisitor() {
+            private Lot lot;
+            private int waiting;
+
+            @Override
+            public void lot(int loadCapacity, int truckLimit, boolean inWaitingLedger, boolean inReadyLedger,
+                    int waiting, int ready) {
+                lot = new Lot(truckLimit);
+                lots.put(loadCapacity, lot);
+                this.waiting = waiting;
+            }
+
+            @Override
+            public void truck(int truckID, int currentLoad, int totalCapacity) {
+                if (waiting > 0) {
+                    lot.waiting.add(truckID);
+                    waiting--;
+                } else {
+                    lot.ready.add(truckID);
+                }
+            }
+        });
+        return lots;
+    }
+
+    // Null if the manager matches the model, else what differs
+    private static String compare(ParkingLotManager manager, TreeMap<Integer, Lot> model) {
+        if (!describe(copy(manager)).equals(describe(model))) {
+            return "the lots differ";
+        }
+        ArrayList<String> problems = new ArrayList<>();
+        manager.visitLots(new ParkingLotManager.LotVisitor() {
+            @Override
+            public void lot(int loadCapacity, int truckLimit, boolean inWaitingLedger, boolean inReadyLedger,
+                    int waiting, int ready) {
+                if (inWaitingLedger != waiting > 0 || inReadyLedger != ready > 0) {
+                    problems.add("lot " + loadCapacity + " is in the wrong ledgers");
+                }
+                if (manager.countRange(loadCapacity, loadCapacity) != waiting + ready) {
+                    problems.add("the count of lot " + loadCapacity + " is off");
+                }
+            }
+
+            @Override
+            public void truck(int truckID, int currentLoad, int totalCapacity) {
+            }
+        });
+        for (int capacity = -3; capacity <= MAX_CAPACITY + 1; capacity++) {
+            int waiting = 0;
+            int ready = 0;
+            for (Map.Entry<Integer, Lot> entry : model.tailMap(capacity, false).entrySet()) {
+                waiting += entry.getValue().waiting.size();
+                ready += entry.getValue().ready.size();
+            }
+            if (manager.countWaiting(capacity) != waiting || manager.countReady(capacity) != ready) {
+                problems.add("the counts above " + capacity + " are off");
+                break;
+            }
+        }
+        return problems.isEmpty() ? null : String.join(", ", problems);
+    }
+
+    private static String describe(TreeMap<Integer, Lot> lots) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Integer, Lot> entry : lots.entrySet()) {
+            Lot lot = entry.getValue();
+            text.append(entry.getKey()).append('/').append(lot.limit).append(" W").append(lot.waiting)
+                    .append(" R").append(lot.ready).append("; ");
+        }
+        return text.toString();
+    }
+}
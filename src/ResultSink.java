@@ -0,0 +1,41 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+// Receives the output of each command, in command order. Commands without output never reach the sink.
+// Sinks that own an output file release it in close().
+public interface ResultSink extends Closeable {
+    // Drops every result, for runs that only need the state they leave behind
+    ResultSink NONE = new ResultSink() {
+        @Override
+        public void value(int value) {
+        }
+
+        @Override
+        public void pair(int first, int second) {
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+        }
+
+        @Override
+        public void text(String line) {
+        }
+    };
+
+    // A single number: add_truck, count, or -1 for a ready that found no lot
+    void value(int value) throws IOException;
+
+    // A successful ready: truck ID and lot capacity
+    void pair(int first, int second) throws IOException;
+
+    // A load, written as "id capacity - id capacity ...", or -1 when the list is empty
+    void placements(PlacementList placements) throws IOException;
+
+    // A free-form line, used to report unknown commands
+    void text(String line) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
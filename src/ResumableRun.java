@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Runs an input so that an interrupted run can pick up where it stopped instead of starting over. Every so many
+// commands it records a resume point in a directory: the commands run, the input byte offset after the last of
+// them, the output file length, and the manager's state saved with StateSnapshot. A run started with the same
+// directory restores that state, cuts the output back to the recorded length and reads the input on from the
+// recorded offset, so the output ends up byte for byte what an uninterrupted run writes.
+//
+// The state goes to state-<commands>.state first and the output is forced to the disk; only then does the point
+// file, which names them, move into place in one rename. Whatever dies along the way leaves the previous point
+// whole. A run that reaches the end of the input clears the directory, so the next one starts from the top.
+public class ResumableRun {
+    private static final long MAGIC = 0x504C4D524553554DL; // "PLMRESUM"
+    private static final int POINT_BYTES = 32;
+
+    private final ParkingLotManager manager;
+    private final Path directory;
+    private final long checkpointEvery;
+
+    private long commands;
+    private long resumedAt; // Commands the run started after
+    private int checkpoints;
+
+    private ResumableRun(ParkingLotManager manager, Path directory, long checkpointEvery) {
+        this.manager = manager;
+        this.directory = directory;
+        this.checkpointEvery = checkpointEvery;
+    }
+
+    // Runs the input into the output, resuming from the directory's point if it has one. The manager must have
+    // no lots yet. Returns a summary line.
+    public static String run(ParkingLotManager manager, Path input, Path output, Path directory,
+            long checkpointEvery) throws IOException {
+        if (checkpointEvery < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive");
+        }
+        Files.createDirectories(directory);
+        ResumableRun run = new ResumableRun(manager, directory, checkpointEvery);
+
+        long inputOffset = 0;
+        long outputLength = 0;
+        Path point = directory.resolve("resume.point");
+        boolean resuming = Files.exists(point);
+        if (resuming) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(point));
+            if (saved.remaining() != POINT_BYTES || saved.getLong() != MAGIC) {
+                throw new IOException("Not a resume point: " + point);
+            }
+            run.commands = run.resumedAt = saved.getLong();
+            inputOffset = saved.getLong();
+            outputLength = saved.getLong();
+            StateSnapshot.restore(run.stateFile(run.commands), manager);
+        }
+
+        try (MappedCommandReader reader = new MappedCommandReader(input, inputOffset);
+             DirectOutputWriter out = resuming ? new DirectOutputWriter(output, outputLength)
+                     : new DirectOutputWriter(output)) {
+            run.execute(reader, out);
+        }
+        Files.deleteIfExists(point);
+        run.deleteStates(Long.MAX_VALUE);
+
+        return "Resumed after command " + run.resumedAt + " of " + run.commands + ", recorded " + run.checkpoints
+                + " resume points";
+    }
+
+    private void execute(MappedCommandReader reader, DirectOutputWriter out) throws IOException {
+        CommandExecutor executor = new CommandExecutor(manager);
+        while (reader.next()) {
+            int opcode = reader.opcode();
+            if (opcode == Opcode.UNKNOWN) {
+                out.text("Unknown command: " + reader.command());
+            } else {
+                int arg0 = Opcode.arity(opcode) > 0 ? reader.arg(0) : 0;
+                int arg1 = Opcode.arity(opcode) > 1 ? reader.arg(1) : 0;
+                executor.execute(opcode, arg0, arg1, out);
+            }
+            if (++commands % checkpointEvery == 0) {
+                record(reader.offset(), out);
+            }
+        }
+    }
+
+    // Saves the state, forces the output and then publishes the point naming both
+    private void record(long inputOffset, DirectOutputWriter out) throws IOException {
+        Path state = stateFile(commands);
+        StateSnapshot.save(manager, state);
+        force(state);
+        out.force();
+
+        ByteBuffer point = ByteBuffer.allocate(POINT_BYTES);
+        point.putLong(MAGIC).putLong(commands).putLong(inputOffset).putLong(out.length()).flip();
+        Path temporary = directory.resolve("resume.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (point.hasRemaining()) {
+                channel.write(point);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, directory.resolve("resume.point"), StandardCopyOption.ATOMIC_MOVE);
+        deleteStates(commands);
+        checkpoints++;
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    // Removes the saved states older than the given point
+    private void deleteStates(long before) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "state-*.state")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (Long.parseLong(name.substring("state-".length(), name.indexOf('.'))) < before) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private Path stateFile(long point) {
+        return directory.resolve("state-" + point + ".state");
+    }
+}
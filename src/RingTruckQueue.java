@@ -0,0 +1,77 @@
+import java.util.NoSuchElementException;
+
+// FIFO of truck handles in a growable int ring buffer. Adding at the tail and removing the head are O(1),
+// with no node per truck and no walk to find the tail, and a walk reads the trucks from consecutive slots.
+public class RingTruckQueue implements TruckQueue {
+    private int[] slots = new int[4]; // Length is always a power of two
+    private int head;
+    private int size;
+
+    @Override
+    public void add(int truck) {
+        if (size == slots.length) {
+            grow();
+        }
+        slots[(head + size) & (slots.length - 1)] = truck;
+        size++;
+    }
+
+    @Override
+    public int head() {
+        if (size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return slots[head];
+    }
+
+    @Override
+    public int tail() {
+        if (size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return get(size - 1);
+    }
+
+    @Override
+    public int removeHead() {
+        int truck = head();
+        head = (head + 1) & (slots.length - 1);
+        size--;
+        return truck;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // A cursor is the position counted from the head
+    @Override
+    public int start() {
+        return 0;
+    }
+
+    @Override
+    public int truck(int cursor) {
+        return get(cursor);
+    }
+
+    @Override
+    public int next(int cursor) {
+        return cursor + 1;
+    }
+
+    // The i-th truck counted from the head
+    public int get(int i) {
+        return slots[(head + i) & (slots.length - 1)];
+    }
+
+    private void grow() {
+        int[] larger = new int[2 * slots.length];
+        for (int i = 0; i < size; i++) {
+            larger[i] = get(i);
+        }
+        slots = larger;
+        head = 0;
+    }
+}
@@ -0,0 +1,507 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the simulation on several ParkingLotManager shards, each owning a contiguous range of load capacities and
+// driven by its own worker thread. Every command is routed to the shard owning its capacity, and the output is
+// exactly what one manager would write.
+//
+// Commands are numbered in input order and handed out in windows. add_truck may reach into the shards below
+// its own (relocation to smaller lots), ready and the count queries into those above, and load into any (the
+// spill goes up, relocated trucks go anywhere). Before a shard runs a command it waits until every earlier
+// command that could reach it has been decided. Its owner decides each command just before running it:
+// ParkingLotManager.staysLocal checks it against the owner's state alone, and if it stays local the shards
+// waiting on it move on at once while it runs. Otherwise the command holds those shards back until it has
+// finished. Its first step into another shard (through the ShardGate) waits until every earlier command of
+// every shard is decided, so two such commands never overlap, and each step waits until the shard entered has
+// finished its own earlier commands. Commands that stay within their shard thus run in parallel, and the
+// others run one at a time, in order.
+//
+// Capacity ranges are chosen from the lots created in the first window, so that each shard owns a similar
+// number of lots. Shards other than the lowest start at capacity 2 or more, which keeps every capacity-1 and
+// non-positive special case within one shard.
+public class ShardedRunner implements ParkingLotManager.ShardGate {
+    private static final int WINDOW = 1 << 16;
+
+    // Result record types
+    private static final int NOTHING = 0;
+    private static final int VALUE = 1;
+    private static final int PAIR = 2;
+    private static final int PLACEMENTS = 3;
+    private static final int TEXT = 4;
+
+    private static final long PARK_NANOS = 1_000_000;
+
+    // Busy waits before a waiting shard parks; none when the shards outnumber the cores
+    private final int spins;
+
+    private final Worker[] workers;
+    private final int[] starts; // starts[s] is the lowest capacity shard s owns
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Window end = new Window(0); // Stops the workers
+    private volatile boolean aborted;
+
+    // A window of commands and their results; two alternate, so parsing and writing overlap the workers
+    private static final class Window {
+        final int[] opcodes = new int[WINDOW];
+        final int[] args0 = new int[WINDOW];
+        final int[] args1 = new int[WINDOW];
+        final int[] homes = new int[WINDOW]; // -1 for unknown commands
+        final String[] texts = new String[WINDOW];
+        final int[] types = new int[WINDOW];
+        final int[] first = new int[WINDOW]; // Value, first of a pair, or offset of the placements
+        final int[] second = new int[WINDOW];
+        final int[][] queues; // Command positions per shard, in order
+        final int[] queueSizes;
+        final int[][] placements; // Truck ID and capacity pairs per shard
+        final int[] placementSizes;
+        long base; // Number of the window's first command
+        int size;
+        CountDownLatch finished;
+
+        Window(int shards) {
+            queues = new int[shards][16];
+            queueSizes = new int[shards];
+            placements = new int[shards][16];
+            placementSizes = new int[shards];
+        }
+    }
+
+    // Returns a summary of how many commands stayed within their shard
+    public static String run(int shards, String ledgerEngine, CommandReader reader, ResultSink out)
+            throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive: " + shards);
+        }
+        Window first = new Window(shards);
+        long[] read = {0};
+        boolean more = parse(reader, first, read);
+        int[] starts = boundaries(first, shards);
+        return new ShardedRunner(starts, ledgerEngine).runWindows(reader, out, first, more, read);
+    }
+
+    private ShardedRunner(int[] starts, String ledgerEngine) {
+        this.starts = starts;
+        this.workers = new Worker[starts.length];
+        this.spins = Runtime.getRuntime().availableProcessors() > starts.length ? 1000 : 0;
+        SharedTruckStore trucks = new SharedTruckStore();
+        for (int s = 0; s < workers.length; s++) {
+            workers[s] = new Worker(s, new ParkingLotManager(EventSink.NONE, trucks.view(), ledgerEngine));
+        }
+        for (int s = 0; s < workers.length; s++) {
+            int high = s + 1 < starts.length ? starts[s + 1] - 1 : Integer.MAX_VALUE;
+            workers[s].manager.link(starts[s], high, s > 0 ? workers[s - 1].manager : null,
+                    s + 1 < workers.length ? workers[s + 1].manager : null, this);
+        }
+    }
+
+    private String runWindows(CommandReader reader, ResultSink out, Window first, boolean more, long[] read)
+            throws IOException {
+        long start = System.nanoTime();
+        for (Worker worker : workers) {
+            worker.start();
+        }
+
+        Window current = first;
+        Window spare = new Window(workers.length);
+        try {
+            route(current);
+            dispatch(current);
+            while (current != null) {
+                // Read the next window while the workers run this one
+                Window next = null;
+                if (more) {
+                    spare.base = read[0];
+                    more = parse(reader, spare, read);
+                    route(spare);
+                    next = spare;
+                }
+                await(current.finished);
+                if (next != null) {
+                    dispatch(next);
+                }
+                write(current, out);
+                spare = current;
+                current = next;
+            }
+        } finally {
+            for (Worker worker : workers) {
+                worker.windows.offer(end);
+            }
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the shards", e);
+            }
+        }
+        rethrow();
+        return report(System.nanoTime() - start);
+    }
+
+    // Fills the window from the reader; returns whether the reader has more
+    private static boolean parse(CommandReader reader, Window window, long[] read) throws IOException {
+        window.size = 0;
+        while (window.size < WINDOW) {
+            if (!reader.next()) {
+                return false;
+            }
+            int i = window.size++;
+            int opcode = reader.opcode();
+            window.opcodes[i] = opcode;
+            window.types[i] = NOTHING;
+            if (opcode == Opcode.UNKNOWN) {
+                window.types[i] = TEXT;
+                window.texts[i] = "Unknown command: " + reader.command();
+            } else {
+                window.args0[i] = Opcode.arity(opcode) > 0 ? reader.arg(0) : 0;
+                window.args1[i] = Opcode.arity(opcode) > 1 ? reader.arg(1) : 0;
+            }
+            read[0]++;
+        }
+        return true;
+    }
+
+    // Splits the capacities at quantiles of the lots the first window creates
+    private static int[] boundaries(Window window, int shards) {
+        int[] capacities = new int[window.size];
+        int n = 0;
+        for (int i = 0; i < window.size; i++) {
+            if (window.opcodes[i] == Opcode.CREATE_PARKING_LOT) {
+                capacities[n++] = window.args0[i];
+            }
+        }
+        Arrays.sort(capacities, 0, n);
+
+        int[] starts = new int[shards];
+        int count = 1;
+        starts[0] = Integer.MIN_VALUE;
+        for (int s = 1; s < shards && n > 0; s++) {
+            int start = Math.max(2, capacities[(int) ((long) s * n / shards)]);
+            if (start > starts[count - 1]) {
+                starts[count++] = start;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    private int shardOf(int capacity) {
+        int s = Arrays.binarySearch(starts, capacity);
+        return s >= 0 ? s : -s - 2;
+    }
+
+    private void route(Window window) {
+        Arrays.fill(window.queueSizes, 0);
+        Arrays.fill(window.placementSizes, 0);
+        for (int i = 0; i < window.size; i++) {
+            int opcode = window.opcodes[i];
+            if (opcode == Opcode.UNKNOWN) {
+                window.homes[i] = -1;
+                continue;
+            }
+            int home = shardOf(opcode == Opcode.ADD_TRUCK ? window.args1[i] : window.args0[i]);
+            window.homes[i] = home;
+            int[] queue = window.queues[home];
+            if (window.queueSizes[home] == queue.length) {
+                queue = window.queues[home] = Arrays.copyOf(queue, 2 * queue.length);
+            }
+            queue[window.queueSizes[home]++] = i;
+        }
+    }
+
+    private void dispatch(Window window) {
+        window.finished = new CountDownLatch(workers.length);
+        for (Worker worker : workers) {
+            worker.windows.add(window);
+        }
+    }
+
+    private void write(Window window, ResultSink out) throws IOException {
+        PlacementList placements = new PlacementList();
+        for (int i = 0; i < window.size; i++) {
+            switch (window.types[i]) {
+                case VALUE:
+                    out.value(window.first[i]);
+                    break;
+
+                case PAIR:
+                    out.pair(window.first[i], window.second[i]);
+                    break;
+
+                case PLACEMENTS:
+                    placements.clear();
+                    int[] pairs = window.placements[window.homes[i]];
+                    for (int p = window.first[i], end = p + 2 * window.second[i]; p < end; p += 2) {
+                        placements.add(pairs[p], pairs[p + 1]);
+                    }
+                    out.placements(placements);
+                    break;
+
+                case TEXT:
+                    out.text(window.texts[i]);
+                    window.texts[i] = null;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    // Whether the command may reach into the given shard other than its own
+    private static boolean reaches(int opcode, int home, int shard) {
+        if (home == shard || home < 0) {
+            return false;
+        }
+        switch (opcode) {
+            case Opcode.ADD_TRUCK:
+                return shard < home;
+            case Opcode.READY:
+            case Opcode.COUNT:
+            case Opcode.COUNT_RANGE:
+            case Opcode.COUNT_WAITING:
+            case Opcode.COUNT_READY:
+                return shard > home;
+            case Opcode.LOAD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void enter(ParkingLotManager shard) {
+        Worker worker = (Worker) Thread.currentThread();
+        Worker target = worker;
+        for (Worker w : workers) {
+            if (w.manager == shard) {
+                target = w;
+            }
+        }
+        if (target == worker) {
+            return;
+        }
+        if (worker.local || !reaches(worker.opcode, worker.index, target.index)) {
+            throw new IllegalStateException("Command " + worker.seq + " (" + Opcode.name(worker.opcode)
+                    + ") of shard " + worker.index + " reached shard " + target.index + " unannounced");
+        }
+        // Commands of other shards could step into the same shard, so the first step waits until every earlier
+        // command is decided; those that left their shard have finished by then.
+        if (!worker.synced) {
+            for (Worker other : workers) {
+                if (other != worker) {
+                    await(other, false, worker.seq);
+                }
+            }
+            worker.synced = true;
+        }
+        await(target, true, worker.seq);
+    }
+
+    // Waits until the shard has decided, or with finished has finished, each of its commands numbered up to seq
+    private void await(Worker shard, boolean finished, long seq) {
+        Worker self = (Worker) Thread.currentThread();
+        for (int spin = 0; (finished ? shard.done : shard.decided) <= seq; spin++) {
+            if (aborted) {
+                throw new IllegalStateException("Another shard failed");
+            }
+            if (spin < spins) {
+                Thread.onSpinWait();
+                continue;
+            }
+            // The shard wakes sleepers after every step; the timeout only covers a failure elsewhere
+            self.sleeping = true;
+            if ((finished ? shard.done : shard.decided) <= seq) {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            self.sleeping = false;
+        }
+    }
+
+    private void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+            throw new IOException("Interrupted while waiting for the shards", e);
+        }
+        rethrow();
+    }
+
+    private void rethrow() throws IOException {
+        Throwable e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new IOException(e);
+        }
+    }
+
+    private String report(long elapsed) {
+        long local = 0;
+        long total = 0;
+        StringBuilder perShard = new StringBuilder();
+        for (Worker worker : workers) {
+            local += worker.localCommands;
+            total += worker.commands;
+            perShard.append(perShard.length() == 0 ? "" : ", ").append(worker.commands);
+        }
+        return "Sharded run on " + workers.length + " shards finished in " + elapsed / 1_000_000 + " ms. "
+                + local + " of " + total + " commands stayed within their shard; commands per shard: " + perShard
+                + ".";
+    }
+
+    private final class Worker extends Thread implements ResultSink {
+        final int index;
+        final ParkingLotManager manager;
+        final CommandExecutor executor;
+        final BlockingQueue<Window> windows = new ArrayBlockingQueue<>(2);
+
+        // Every command of this shard numbered below these has been decided, or finished
+        volatile long decided;
+        volatile long done;
+
+        // The command running now
+        Window window;
+        int position;
+        long seq;
+        int opcode;
+        boolean local;
+        boolean synced; // Whether it has waited for every earlier command, see enter
+
+        volatile boolean sleeping; // Parked in await
+
+        long commands;
+        long localCommands;
+
+        Worker(int index, ParkingLotManager manager) {
+            super("shard-" + index);
+            this.index = index;
+            this.manager = manager;
+            this.executor = new CommandExecutor(manager);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Window next;
+                while ((next = windows.take()) != end) {
+                    try {
+                        if (!aborted) {
+                            runWindow(next);
+                        }
+                    } finally {
+                        next.finished.countDown();
+                    }
+                }
+            } catch (Throwable e) {
+                if (failure.compareAndSet(null, e)) {
+                    aborted = true;
+                }
+                // Release the windows still queued so the dispatcher can see the failure
+                Window next;
+                while ((next = windows.poll()) != null) {
+                    if (next != end) {
+                        next.finished.countDown();
+                    }
+                }
+            }
+        }
+
+        private void runWindow(Window window) throws IOException {
+            this.window = window;
+            int[] queue = window.queues[index];
+            int size = window.queueSizes[index];
+            long end = window.base + window.size;
+            int previous = -1;
+            decided = size > 0 ? window.base + queue[0] : end;
+            done = decided;
+            for (int k = 0; k < size; k++) {
+                position = queue[k];
+                seq = window.base + position;
+                opcode = window.opcodes[position];
+                long following = k + 1 < size ? window.base + queue[k + 1] : end;
+
+                // Earlier commands of other shards that could reach this one must be decided first
+                for (int i = previous + 1; i < position; i++) {
+                    if (reaches(window.opcodes[i], window.homes[i], index)) {
+                        await(workers[window.homes[i]], false, window.base + i);
+                    }
+                }
+                previous = position;
+
+                synced = false;
+                local = manager.staysLocal(opcode, window.args0[position], window.args1[position]);
+                if (local) {
+                    decided = following;
+                    wakeSleepers();
+                    localCommands++;
+                }
+                executor.execute(opcode, window.args0[position], window.args1[position], this);
+                decided = following;
+                done = following;
+                wakeSleepers();
+                commands++;
+            }
+            decided = end;
+            done = end;
+            wakeSleepers();
+        }
+
+        private void wakeSleepers() {
+            for (Worker worker : workers) {
+                if (worker.sleeping) {
+                    LockSupport.unpark(worker);
+                }
+            }
+        }
+
+        @Override
+        public void value(int value) {
+            window.types[position] = VALUE;
+            window.first[position] = value;
+        }
+
+        @Override
+        public void pair(int first, int second) {
+            window.types[position] = PAIR;
+            window.first[position] = first;
+            window.second[position] = second;
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+            int[] pairs = window.placements[index];
+            int offset = window.placementSizes[index];
+            int needed = offset + 2 * placements.size();
+            if (needed > pairs.length) {
+                pairs = window.placements[index] = Arrays.copyOf(pairs, Math.max(needed, 2 * pairs.length));
+            }
+            for (int i = 0; i < placements.size(); i++) {
+                pairs[offset + 2 * i] = placements.truckID(i);
+                pairs[offset + 2 * i + 1] = placements.capacity(i);
+            }
+            window.placementSizes[index] = needed;
+            window.types[position] = PLACEMENTS;
+            window.first[position] = offset;
+            window.second[position] = placements.size();
+        }
+
+        @Override
+        public void text(String line) {
+            window.types[position] = TEXT;
+            window.texts[position] = line;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Truck records shared by the shards of a ShardedRunner. Each shard allocates and frees through its own view,
+// which fills chunks no other view hands out from and keeps its own free list, so the views never contend. Any
+// view reads and writes any record, since a truck may relocate into another shard's lot. Chunks are never moved
+// or copied, so a record keeps its place while several threads use the store.
+public class SharedTruckStore {
+    private static final int FIELDS = 4; // ID, current load, total capacity, link
+    private static final int ID = 0;
+    private static final int LOAD = 1;
+    private static final int CAPACITY = 2;
+    private static final int LINK = 3;
+
+    private static final int CHUNK_BITS = 14; // 16384 records, 256 KB per chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    // Sized for every non-negative handle up front, so the table itself never changes either
+    private final int[][] chunks = new int[1 << (31 - CHUNK_BITS)][];
+    private final AtomicInteger chunkCount = new AtomicInteger();
+
+    // A new view for one shard
+    public TruckStore view() {
+        return new View();
+    }
+
+    private int get(int handle, int field) {
+        return chunks[handle >>> CHUNK_BITS][(handle & CHUNK_MASK) * FIELDS + field];
+    }
+
+    private void set(int handle, int field, int value) {
+        chunks[handle >>> CHUNK_BITS][(handle & CHUNK_MASK) * FIELDS + field] = value;
+    }
+
+    private class View implements TruckStore {
+        private int fresh; // Next never-used handle in this view's current chunk
+        private int freshEnd;
+        private int freeHead = NONE;
+        private int live; // Allocated minus freed through this view
+        private int ownChunks;
+
+        @Override
+        public int allocate(int truckID, int currentLoad, int totalCapacity) {
+            int handle;
+            if (freeHead != NONE) {
+                handle = freeHead;
+                freeHead = next(handle);
+            } else {
+                if (fresh == freshEnd) {
+                    int chunk = chunkCount.getAndIncrement();
+                    if (chunk >= chunks.length) {
+                        throw new IllegalStateException("Truck store is full");
+                    }
+                    chunks[chunk] = new int[FIELDS << CHUNK_BITS];
+                    ownChunks++;
+                    fresh = chunk << CHUNK_BITS;
+                    freshEnd = fresh + (1 << CHUNK_BITS);
+                }
+                handle = fresh++;
+            }
+            set(handle, ID, truckID);
+            set(handle, LOAD, currentLoad);
+            set(handle, CAPACITY, totalCapacity);
+            set(handle, LINK, NONE);
+            live++;
+            return handle;
+        }
+
+        // The handle joins this view's free list, whichever view allocated it
+        @Override
+        public void free(int handle) {
+            setNext(handle, freeHead);
+            freeHead = handle;
+            live--;
+        }
+
+        @Override
+        public int id(int handle) {
+            return get(handle, ID);
+        }
+
+        @Override
+        public int currentLoad(int handle) {
+            return get(handle, LOAD);
+        }
+
+        @Override
+        public void setCurrentLoad(int handle, int currentLoad) {
+            set(handle, LOAD, currentLoad);
+        }
+
+        @Override
+        public int totalCapacity(int handle) {
+            return get(handle, CAPACITY);
+        }
+
+        @Override
+        public int next(int handle) {
+            return get(handle, LINK);
+        }
+
+        @Override
+        public void setNext(int handle, int next) {
+            set(handle, LINK, next);
+        }
+
+        @Override
+        public int size() {
+            return live;
+        }
+
+        @Override
+        public long heapBytes() {
+            return (long) ownChunks * Integer.BYTES * (FIELDS << CHUNK_BITS);
+        }
+
+        @Override
+        public long offHeapBytes() {
+            return 0;
+        }
+    }
+}
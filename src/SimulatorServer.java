@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Serves one ParkingLotManager to many clients over a local TCP or Unix-domain socket, in the WireProtocol.
+// A selector thread does all the socket work: it accepts clients, cuts the bytes each one sent into requests
+// and writes back the responses. The requests go in batches, one per client read, to a single writer thread,
+// the only thread that touches the manager, which runs them in arrival order and encodes the responses. A client
+// has at most one batch out at a time; while it does, the server stops reading from it, so a client that sends
+// faster than it is served is held back by TCP flow control rather than by buffering.
+//
+//   java SimulatorServer [--port=N | --unix=<path>] [--ledger=avl|bitset|treemap|skiplist|btree]
+public class SimulatorServer {
+    private static final String USAGE = "Usage: java SimulatorServer [--port=N | --unix=<path>] [--ledger=<engine>]";
+
+    private static final int READ_BUFFER = 64 * 1024;
+    private static final int MAX_BATCH = 4096; // Requests per batch
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final BlockingQueue<Batch> submitted = new LinkedBlockingQueue<>();
+    private final Queue<Batch> completed = new ConcurrentLinkedQueue<>();
+    private final Writer writer;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER); // Filled by reads, frames are cut from the front
+        final Batch batch = new Batch(this);
+        SelectionKey key;
+        boolean inFlight; // The batch is with the writer or its responses are being sent
+        boolean ended; // The client closed its side
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // Requests of one client read, and then their encoded responses
+    private static final class Batch {
+        final Connection connection;
+        int size;
+        int[] opcodes = new int[64];
+        int[] args0 = new int[64];
+        int[] args1 = new int[64];
+        ByteBuffer responses = ByteBuffer.allocate(READ_BUFFER);
+
+        Batch(Connection connection) {
+            this.connection = connection;
+        }
+
+        void add(int opcode, int arg0, int arg1) {
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, 2 * size);
+                args0 = Arrays.copyOf(args0, 2 * size);
+                args1 = Arrays.copyOf(args1, 2 * size);
+            }
+            opcodes[size] = opcode;
+            args0[size] = arg0;
+            args1[size] = arg1;
+            size++;
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = 7250;
+        String unixPath = null;
+        String ledger = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--unix=")) {
+                unixPath = arg.substring("--unix=".length());
+            } else if (arg.startsWith("--ledger=")) {
+                ledger = arg.substring("--ledger=".length());
+            } else {
+                System.out.println("Unknown option: " + arg);
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        try {
+            SimulatorServer server = new SimulatorServer(address(port, unixPath), new ParkingLotManager(
+                    EventSink.NONE, new HeapTruckStore(), ledger));
+            System.out.println("Listening on " + server.server.getLocalAddress());
+            server.serve();
+        } catch (IOException e) {
+            System.err.println("Server failed: " + e.getMessage());
+        }
+    }
+
+    // The loopback address with the port, or the Unix-domain socket path when one is given
+    public static SocketAddress address(int port, String unixPath) {
+        return unixPath != null ? UnixDomainSocketAddress.of(unixPath)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    public SimulatorServer(SocketAddress address, ParkingLotManager manager) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            Path path = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(path); // Left over from an earlier run
+            path.toFile().deleteOnExit();
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        server.configureBlocking(false);
+        selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        writer = new Writer(manager);
+    }
+
+    // Runs the selector loop until the thread is interrupted
+    public void serve() throws IOException {
+        writer.start();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                Batch done;
+                while ((done = completed.poll()) != null) {
+                    try {
+                        send(done.connection);
+                    } catch (IOException | IllegalStateException e) {
+                        close(done.connection);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                read(connection);
+                            } else if (key.isWritable()) {
+                                send(connection);
+                            }
+                        } catch (IOException | IllegalStateException e) {
+                            close(connection); // The client went away or broke the protocol
+                        }
+                    }
+                }
+            }
+        } finally {
+            writer.interrupt();
+            selector.close();
+            server.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            connection.ended = true;
+        }
+        // A send earlier in this round may have started a batch after the key was selected
+        if (!connection.inFlight) {
+            dispatch(connection);
+        }
+    }
+
+    // Hands the complete requests read so far to the writer; pauses reading while they are out
+    private void dispatch(Connection connection) throws IOException {
+        Batch batch = connection.batch;
+        batch.size = 0;
+        ByteBuffer in = connection.in;
+        in.flip();
+        int length;
+        while (batch.size < MAX_BATCH && (length = WireProtocol.openFrame(in, WireProtocol.MAX_REQUEST)) >= 0) {
+            if (length == 0) {
+                throw new IllegalStateException("Empty request");
+            }
+            int end = in.position() + length;
+            int opcode = in.get() & 0xFF;
+            if (opcode <= Opcode.UNKNOWN || opcode >= Opcode.count()) {
+                batch.add(-opcode - 1, 0, 0); // Answered with an error
+                in.position(end);
+            } else {
+                int arity = Opcode.arity(opcode);
+                int limit = in.limit();
+                in.limit(end); // A varint cut off by the end of its frame must not read into the next one
+                int arg0;
+                int arg1;
+                try {
+                    arg0 = arity > 0 && in.hasRemaining() ? Varint.getSigned(in) : 0;
+                    arg1 = arity > 1 && in.hasRemaining() ? Varint.getSigned(in) : 0;
+                } catch (BufferUnderflowException e) {
+                    throw new IllegalStateException("Truncated arguments for " + Opcode.name(opcode));
+                } finally {
+                    in.limit(limit);
+                }
+                if (in.position() != end) {
+                    throw new IllegalStateException("Bad arguments for " + Opcode.name(opcode));
+                }
+                batch.add(opcode, arg0, arg1);
+            }
+        }
+        in.compact();
+
+        if (batch.size > 0) {
+            connection.inFlight = true;
+            connection.key.interestOps(0);
+            submitted.add(batch);
+        } else if (connection.ended) {
+            close(connection);
+        } else {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    // Writes the responses of the connection's batch, and reads on once they are all out
+    private void send(Connection connection) throws IOException {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        ByteBuffer responses = connection.batch.responses;
+        connection.channel.write(responses);
+        if (responses.hasRemaining()) {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        connection.inFlight = false;
+        dispatch(connection);
+    }
+
+    private void close(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    // The single thread that runs commands on the manager
+    private final class Writer extends Thread {
+        private final CommandExecutor executor;
+        private final ResponseSink out = new ResponseSink();
+
+        Writer(ParkingLotManager manager) {
+            super("simulator-writer");
+            setDaemon(true);
+            this.executor = new CommandExecutor(manager);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Batch batch = submitted.take();
+                    execute(batch);
+                    completed.add(batch);
+                    selector.wakeup();
+                }
+            } catch (InterruptedException e) {
+                // The server is shutting down
+            }
+        }
+
+        private void execute(Batch batch) {
+            batch.responses.clear();
+            out.batch = batch;
+            for (int i = 0; i < batch.size; i++) {
+                int written = out.responses;
+                int opcode = batch.opcodes[i];
+                try {
+                    if (opcode < 0) {
+                        out.text("Unknown opcode: " + (-opcode - 1));
+                    } else {
+                        executor.execute(opcode, batch.args0[i], batch.args1[i], out);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    out.text("Failed: " + e);
+                }
+                if (out.responses == written) {
+                    out.nothing();
+                }
+            }
+            batch.responses.flip();
+        }
+    }
+
+    // Encodes results as response frames into the current batch
+    private static final class ResponseSink implements ResultSink {
+        Batch batch;
+        int responses; // Frames written so far
+
+        void nothing() {
+            frame(1).put((byte) WireProtocol.NOTHING);
+        }
+
+        @Override
+        public void value(int value) {
+            ByteBuffer out = frame(1 + WireProtocol.signedSize(value));
+            out.put((byte) WireProtocol.VALUE);
+            Varint.putSigned(out, value);
+        }
+
+        @Override
+        public void pair(int first, int second) {
+            ByteBuffer out = frame(1 + WireProtocol.signedSize(first) + WireProtocol.signedSize(second));
+            out.put((byte) WireProtocol.PAIR);
+            Varint.putSigned(out, first);
+            Varint.putSigned(out, second);
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+            int length = 1 + WireProtocol.unsignedSize(placements.size());
+            for (int i = 0; i < placements.size(); i++) {
+                length += WireProtocol.signedSize(placements.truckID(i))
+                        + WireProtocol.signedSize(placements.capacity(i));
+            }
+            ByteBuffer out = frame(length);
+            out.put((byte) WireProtocol.PLACEMENTS);
+            Varint.putUnsigned(out, placements.size());
+            for (int i = 0; i < placements.size(); i++) {
+                Varint.putSigned(out, placements.truckID(i));
+                Varint.putSigned(out, placements.capacity(i));
+            }
+        }
+
+        @Override
+        public void text(String line) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            frame(1 + bytes.length).put((byte) WireProtocol.ERROR).put(bytes);
+        }
+
+        // Starts a frame with the given body length, growing the batch's buffer to fit it
+        private ByteBuffer frame(int length) {
+            ByteBuffer out = batch.responses;
+            int needed = Varint.MAX_BYTES + length;
+            if (out.remaining() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * out.capacity(), out.position() + needed));
+                out.flip();
+                larger.put(out);
+                batch.responses = out = larger;
+            }
+            Varint.putUnsigned(out, length);
+            responses++;
+            return out;
+        }
+    }
+}
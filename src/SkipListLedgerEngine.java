@@ -0,0 +1,303 @@
+import java.util.Arrays;
+
+// Ledger engine on a skip list whose nodes are slots in parallel arrays. Each forward link also records the
+// total weight it jumps over (the nodes after its start, up to and including its end), so a weight sum is one
+// search path, O(log n) expected, like a rank query on an indexable skip list. Links that end the list carry
+// no total, since searches never follow them. Node heights come from a fixed-seed generator, so runs repeat.
+public class SkipListLedgerEngine<V> implements LedgerEngine<V> {
+    private static final int MAX_LEVEL = 24;
+    private static final int HEAD = 0;
+
+    private int[] keys;
+    private Object[] values;
+    private int[] weights;
+    private int[][] next; // next[node][level]
+    private int[][] spans; // spans[node][level]: weight jumped over by that link
+
+    private int level = 1; // Levels in use
+    private int highWater = 1; // Slot 0 is the head
+    private int freeHead = NIL; // Freed slots are chained through keys
+    private int size;
+    private int total;
+    private long seed = 0x2545F4914F6CDD1DL;
+
+    // Work counters, see LedgerEngine
+    private long aggregateUpdates;
+    private long aggregateSteps;
+
+    // Search path scratch: the last node before the key on every level, and the weight up to and including it
+    private final int[] update = new int[MAX_LEVEL];
+    private final int[] rank = new int[MAX_LEVEL];
+
+    public SkipListLedgerEngine() {
+        keys = new int[16];
+        values = new Object[16];
+        weights = new int[16];
+        next = new int[16][];
+        spans = new int[16][];
+        next[HEAD] = new int[MAX_LEVEL];
+        spans[HEAD] = new int[MAX_LEVEL];
+        Arrays.fill(next[HEAD], NIL);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int find(int key) {
+        int node = next[before(key)][0];
+        return node != NIL && keys[node] == key ? node : NIL;
+    }
+
+    @Override
+    public int first() {
+        return next[HEAD][0];
+    }
+
+    @Override
+    public int floor(int key) {
+        int node = atOrBefore(key);
+        return node == HEAD ? NIL : node;
+    }
+
+    @Override
+    public int lower(int key) {
+        int node = before(key);
+        return node == HEAD ? NIL : node;
+    }
+
+    @Override
+    public int ceiling(int key) {
+        return next[before(key)][0];
+    }
+
+    @Override
+    public int higher(int key) {
+        return next[atOrBefore(key)][0];
+    }
+
+    @Override
+    public int successor(int node) {
+        return next[node][0];
+    }
+
+    @Override
+    public int key(int node) {
+        return keys[node];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V value(int node) {
+        return (V) values[node];
+    }
+
+    @Override
+    public int weight(int node) {
+        return weights[node];
+    }
+
+    @Override
+    public void setWeight(int node, int weight) {
+        int delta = weight - weights[node];
+        weights[node] = weight;
+        total += delta;
+
+        // Every link on the search path that reaches the node or beyond jumps over it
+        search(keys[node]);
+        aggregateUpdates++;
+        for (int l = 0; l < level; l++) {
+            if (next[update[l]][l] != NIL) {
+                spans[update[l]][l] += delta;
+                aggregateSteps++;
+            }
+        }
+    }
+
+    @Override
+    public long aggregateUpdates() {
+        return aggregateUpdates;
+    }
+
+    @Override
+    public long aggregateSteps() {
+        return aggregateSteps;
+    }
+
+    @Override
+    public int insert(int key, V value, int weight) {
+        search(key);
+        int after = next[update[0]][0];
+        if (after != NIL && keys[after] == key) {
+            return NIL;
+        }
+
+        int height = randomHeight();
+        if (height > level) {
+            for (int l = level; l < height; l++) {
+                update[l] = HEAD;
+                rank[l] = 0;
+            }
+            level = height;
+        }
+
+        int node = allocate(key, value, weight, height);
+        int before = rank[0]; // Weight of everything before the new node
+        for (int l = 0; l < level; l++) {
+            int from = update[l];
+            if (l < height) {
+                // Split the link around the new node
+                int oldNext = next[from][l];
+                next[node][l] = oldNext;
+                next[from][l] = node;
+                if (oldNext != NIL) {
+                    spans[node][l] = spans[from][l] - (before - rank[l]);
+                }
+                spans[from][l] = before - rank[l] + weight;
+            } else if (next[from][l] != NIL) {
+                spans[from][l] += weight;
+            }
+        }
+        total += weight;
+        size++;
+        return node;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V delete(int key) {
+        search(key);
+        int node = next[update[0]][0];
+        if (node == NIL || keys[node] != key) {
+            return null;
+        }
+
+        int height = next[node].length;
+        int weight = weights[node];
+        for (int l = 0; l < level; l++) {
+            int from = update[l];
+            if (l < height) {
+                // Join the links on both sides of the node
+                next[from][l] = next[node][l];
+                if (next[node][l] != NIL) {
+                    spans[from][l] += spans[node][l] - weight;
+                }
+            } else if (next[from][l] != NIL) {
+                spans[from][l] -= weight;
+            }
+        }
+        while (level > 1 && next[HEAD][level - 1] == NIL) {
+            level--;
+        }
+
+        V removed = (V) values[node];
+        free(node);
+        total -= weight;
+        size--;
+        return removed;
+    }
+
+    @Override
+    public int sumGreater(int key) {
+        return total - weightUpTo(key);
+    }
+
+    @Override
+    public int sumBetween(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        return weightUpTo(high) - (low == Integer.MIN_VALUE ? 0 : weightUpTo(low - 1));
+    }
+
+    // Total weight of the nodes with keys <= key
+    private int weightUpTo(int key) {
+        int node = HEAD;
+        int sum = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            while (next[node][l] != NIL && keys[next[node][l]] <= key) {
+                sum += spans[node][l];
+                node = next[node][l];
+            }
+        }
+        return sum;
+    }
+
+    // Last node with a key < key, or HEAD; fills update and rank
+    private int search(int key) {
+        int node = HEAD;
+        int sum = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            while (next[node][l] != NIL && keys[next[node][l]] < key) {
+                sum += spans[node][l];
+                node = next[node][l];
+            }
+            update[l] = node;
+            rank[l] = sum;
+        }
+        return node;
+    }
+
+    private int before(int key) {
+        int node = HEAD;
+        for (int l = level - 1; l >= 0; l--) {
+            while (next[node][l] != NIL && keys[next[node][l]] < key) {
+                node = next[node][l];
+            }
+        }
+        return node;
+    }
+
+    private int atOrBefore(int key) {
+        int node = HEAD;
+        for (int l = level - 1; l >= 0; l--) {
+            while (next[node][l] != NIL && keys[next[node][l]] <= key) {
+                node = next[node][l];
+            }
+        }
+        return node;
+    }
+
+    // Geometric heights with p = 1/4
+    private int randomHeight() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        int height = 1 + Long.numberOfTrailingZeros(seed | (1L << (2 * (MAX_LEVEL - 1)))) / 2;
+        return Math.min(height, MAX_LEVEL);
+    }
+
+    private int allocate(int key, V value, int weight, int height) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = keys[node];
+        } else {
+            if (highWater == keys.length) {
+                int length = 2 * keys.length;
+                keys = Arrays.copyOf(keys, length);
+                values = Arrays.copyOf(values, length);
+                weights = Arrays.copyOf(weights, length);
+                next = Arrays.copyOf(next, length);
+                spans = Arrays.copyOf(spans, length);
+            }
+            node = highWater++;
+        }
+        keys[node] = key;
+        values[node] = value;
+        weights[node] = weight;
+        next[node] = new int[height];
+        spans[node] = new int[height];
+        return node;
+    }
+
+    private void free(int node) {
+        values[node] = null;
+        next[node] = null;
+        spans[node] = null;
+        keys[node] = freeHead;
+        freeHead = node;
+    }
+}
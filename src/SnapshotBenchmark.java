@@ -0,0 +1,167 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Reader throughput on count snapshots under a steady write stream. One writer thread replays a synthetic
+// workload (WorkloadGenerator's default mix, without count queries) on a manager with snapshots enabled, while
+// reader threads keep taking snapshots and running count queries on them until the writer is done. The writer
+// also runs alone, with and without snapshots, which shows what the path copying costs it in throughput. The
+// defaults, 500000 commands over 20000 lots, take about 40 seconds on one core.
+//
+//   java SnapshotBenchmark [commands] [lots] [readers] [queries per snapshot]
+public class SnapshotBenchmark {
+    private static final int MAX_CAPACITY = 1_000_000;
+
+    // Query results land here so the JIT cannot drop the work
+    private static volatile long blackhole;
+
+    private static final class Commands {
+        int size;
+        int[] opcodes;
+        int[] args0;
+        int[] args1;
+    }
+
+    // Results are thrown away
+    private static final class Discard implements ResultSink {
+        @Override
+        public void value(int value) {
+        }
+
+        @Override
+        public void pair(int first, int second) {
+        }
+
+        @Override
+        public void placements(PlacementList placements) {
+        }
+
+        @Override
+        public void text(String line) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int lots = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int queries = args.length > 3 ? Integer.parseInt(args[3]) : 1_000;
+
+        Commands workload = generate(commands, lots);
+        System.out.println(workload.size + " commands over " + lots + " lots, " + readers + " readers running "
+                + queries + " count queries per snapshot, best of 3 rounds");
+
+        long plain = Long.MAX_VALUE;
+        long mirrored = Long.MAX_VALUE;
+        long[] shared = {Long.MAX_VALUE, 0, 0};
+        for (int round = 0; round < 3; round++) {
+            plain = Math.min(plain, replay(workload, false));
+            mirrored = Math.min(mirrored, replay(workload, true));
+            long[] run = replayWithReaders(workload, readers, queries);
+            if (run[0] < shared[0]) {
+                shared = run;
+            }
+        }
+
+        System.out.printf("writer alone, no snapshots   %10.0f commands/s%n", perSecond(workload.size, plain));
+        System.out.printf("writer alone, snapshots      %10.0f commands/s (%+.1f%%)%n", perSecond(workload.size,
+                mirrored), 100.0 * ((double) plain / mirrored - 1));
+        System.out.printf("writer with %d readers        %10.0f commands/s%n", readers, perSecond(workload.size,
+                shared[0]));
+        System.out.printf("readers                      %10.0f count queries/s on %d snapshots (%.0f per reader)%n",
+                perSecond(shared[1], shared[0]), shared[2], perSecond(shared[1], shared[0]) / Math.max(1, readers));
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return count * 1e9 / nanos;
+    }
+
+    private static Commands generate(int commands, int lots) throws IOException {
+        Path file = Files.createTempFile("snapshot-benchmark", ".txt");
+        try {
+            try (OutputStream out = new FileOutputStream(file.toFile())) {
+                new WorkloadGenerator(out, 1, MAX_CAPACITY, "uniform", 8, "add:40,ready:25,load:25,churn:5",
+                        "uniform:4").generate(lots, commands);
+            }
+            Commands workload = new Commands();
+            workload.opcodes = new int[commands];
+            workload.args0 = new int[commands];
+            workload.args1 = new int[commands];
+            try (CommandReader reader = new LineCommandReader(file.toString())) {
+                while (workload.size < commands && reader.next()) {
+                    int opcode = reader.opcode();
+                    workload.opcodes[workload.size] = opcode;
+                    workload.args0[workload.size] = Opcode.arity(opcode) > 0 ? reader.arg(0) : 0;
+                    workload.args1[workload.size] = Opcode.arity(opcode) > 1 ? reader.arg(1) : 0;
+                    workload.size++;
+                }
+            }
+            return workload;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Returns the nanoseconds the replay took
+    private static long replay(Commands workload, boolean snapshots) throws IOException {
+        ParkingLotManager manager = new ParkingLotManager();
+        if (snapshots) {
+            manager.enableSnapshots();
+        }
+        long start = System.nanoTime();
+        run(manager, workload);
+        return System.nanoTime() - start;
+    }
+
+    private static void run(ParkingLotManager manager, Commands workload) throws IOException {
+        CommandExecutor executor = new CommandExecutor(manager);
+        ResultSink out = new Discard();
+        for (int i = 0; i < workload.size; i++) {
+            executor.execute(workload.opcodes[i], workload.args0[i], workload.args1[i], out);
+        }
+    }
+
+    // Returns the writer's nanoseconds, the queries the readers ran meanwhile and the snapshots they took
+    private static long[] replayWithReaders(Commands workload, int readers, int queries) throws Exception {
+        ParkingLotManager manager = new ParkingLotManager();
+        manager.enableSnapshots();
+        long[] answered = new long[readers];
+        long[] taken = new long[readers];
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread[] threads = new Thread[readers];
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            threads[r] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(reader);
+                long sum = 0;
+                while (writing.get()) {
+                    PersistentCountTree.Snapshot snapshot = manager.snapshot();
+                    for (int q = 0; q < queries; q++) {
+                        sum += snapshot.countTrucks(random.nextInt(MAX_CAPACITY));
+                    }
+                    answered[reader] += queries;
+                    taken[reader]++;
+                }
+                blackhole += sum;
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long start = System.nanoTime();
+        run(manager, workload);
+        long elapsed = System.nanoTime() - start;
+        writing.set(false);
+        long[] result = {elapsed, 0, 0};
+        for (int r = 0; r < readers; r++) {
+            threads[r].join();
+            result[1] += answered[r];
+            result[2] += taken[r];
+        }
+        return result;
+    }
+}
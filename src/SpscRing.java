@@ -0,0 +1,141 @@
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded single-producer/single-consumer ring of int words, used to join the pipeline stages.
+// Records are plain word sequences; a record may be longer than the ring, since a full ring publishes what
+// the producer has written so far and waits (back-pressure) until the consumer frees room.
+public class SpscRing {
+    public static final int END = -1; // Record type that closes the stream
+
+    private final int[] buffer;
+    private final int mask;
+
+    // Positions are ever-increasing word counts; only the owning side writes each one
+    private final AtomicLong published = new AtomicLong(); // Written by the producer
+    private final AtomicLong released = new AtomicLong();  // Written by the consumer
+    private volatile boolean aborted;
+
+    // Producer state
+    private long writePosition;
+    private long cachedReleased;
+    private long producerStallNanos;
+
+    // Consumer state
+    private long readPosition;
+    private long cachedPublished;
+    private long consumerStallNanos;
+
+    public SpscRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        this.buffer = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Producer side
+
+    public void put(int word) {
+        if (writePosition - cachedReleased == buffer.length) {
+            waitForSpace();
+        }
+        buffer[(int) writePosition & mask] = word;
+        writePosition++;
+    }
+
+    // Packs the string as a length followed by its UTF-8 bytes, four to a word
+    public void putString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        put(bytes.length);
+        for (int i = 0; i < bytes.length; i += 4) {
+            int word = 0;
+            for (int j = 0; j < 4 && i + j < bytes.length; j++) {
+                word |= (bytes[i + j] & 0xff) << (8 * j);
+            }
+            put(word);
+        }
+    }
+
+    // Makes everything written so far visible to the consumer; called at the end of every record
+    public void publish() {
+        published.lazySet(writePosition);
+    }
+
+    private void waitForSpace() {
+        publish();
+        long start = System.nanoTime();
+        int idle = 0;
+        while (writePosition - (cachedReleased = released.get()) == buffer.length) {
+            idle = backOff(idle);
+        }
+        producerStallNanos += System.nanoTime() - start;
+    }
+
+    // Consumer side
+
+    public int take() {
+        if (readPosition == cachedPublished) {
+            waitForData();
+        }
+        int word = buffer[(int) readPosition & mask];
+        readPosition++;
+        return word;
+    }
+
+    public String takeString() {
+        byte[] bytes = new byte[take()];
+        for (int i = 0; i < bytes.length; i += 4) {
+            int word = take();
+            for (int j = 0; j < 4 && i + j < bytes.length; j++) {
+                bytes[i + j] = (byte) (word >>> (8 * j));
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Hands the words read so far back to the producer; called at the end of every record
+    public void release() {
+        released.lazySet(readPosition);
+    }
+
+    private void waitForData() {
+        release();
+        long start = System.nanoTime();
+        int idle = 0;
+        while (readPosition == (cachedPublished = published.get())) {
+            idle = backOff(idle);
+        }
+        consumerStallNanos += System.nanoTime() - start;
+    }
+
+    // Spin, then yield, then park, so a stalled stage gives its core away
+    private int backOff(int idle) {
+        if (aborted) {
+            throw new IllegalStateException("Pipeline aborted");
+        }
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return idle + 1;
+    }
+
+    // Wakes both sides with an exception, used when another stage failed
+    public void abort() {
+        aborted = true;
+    }
+
+    // Time the producer spent waiting for a full ring; read after the producer finished
+    public long producerStallNanos() {
+        return producerStallNanos;
+    }
+
+    // Time the consumer spent waiting for an empty ring; read after the consumer finished
+    public long consumerStallNanos() {
+        return consumerStallNanos;
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Saves the whole state of a ParkingLotManager to a binary file and restores it, so a run can start where another
+// left off instead of replaying every command that led there. The file holds a header, the trucks and then an
+// index of the lots, all big-endian ints:
+//   header  "PLMSTATE", the format version, the lot count and the truck count
+//   trucks  ID, current load and total capacity, grouped by lot in index order, each lot's waiting trucks and
+//           then its ready ones in queue order
+//   index   per lot in ascending capacity order: capacity, truck limit, waiting trucks, ready trucks, ledger flags
+//           (1 in the waiting ledger, 2 in the ready ledger) and the position of its first truck
+// Restoring maps the file and rebuilds the lots straight from the mapped bytes in one pass; only the ledger
+// inserts, one per lot and in ascending order, cost more than constant time.
+//
+//   java StateSnapshot <input file> <state file> [--ledger=<engine>]
+// replays the input, saves the state it ends in, restores that state into a fresh manager and reports how long
+// each step took. The restored state is saved once more and compared with the file, byte for byte.
+public class StateSnapshot {
+    private static final long MAGIC = 0x504C4D5354415445L; // "PLMSTATE"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int TRUCK_BYTES = 12;
+    private static final int LOT_BYTES = 24;
+    private static final int WAITING_LEDGER = 1;
+    private static final int READY_LEDGER = 2;
+
+    private static final int BUFFER = 1 << 20;
+    private static final int WINDOW_TRUCKS = (1 << 28) / TRUCK_BYTES; // Trucks mapped at a time
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java StateSnapshot <input file> <state file> [--ledger=<engine>]");
+            return;
+        }
+        Path input = Paths.get(args[0]);
+        Path state = Paths.get(args[1]);
+        String ledger = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--ledger=")) {
+                ledger = args[i].substring("--ledger=".length());
+            } else {
+                System.out.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
+
+        try {
+            ParkingLotManager replayed = new ParkingLotManager(EventSink.NONE, new HeapTruckStore(), ledger);
+            long start = System.nanoTime();
+            try (CommandReader reader = new MappedCommandReader(input)) {
+                Main.run(replayed, reader, ResultSink.NONE);
+            }
+            long replay = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long bytes = save(replayed, state);
+            long saving = System.nanoTime() - start;
+
+            ParkingLotManager restored = new ParkingLotManager(EventSink.NONE, new HeapTruckStore(), ledger);
+            start = System.nanoTime();
+            restore(state, restored);
+            long restoring = System.nanoTime() - start;
+
+            Path check = Files.createTempFile("state", ".check");
+            try {
+                save(restored, check);
+                if (Files.mismatch(state, check) != -1) {
+                    System.out.println("The restored state differs from the saved one");
+                    return;
+                }
+            } finally {
+                Files.delete(check);
+            }
+
+            System.out.println("Saved " + restored.lotCount() + " lots to " + bytes + " bytes");
+            System.out.printf("Replay %.1f ms, save %.1f ms, restore %.1f ms: restoring is %.1fx faster than"
+                    + " replaying%n", replay / 1e6, saving / 1e6, restoring / 1e6, (double) replay / restoring);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Returns the size of the file written
+    public static long save(ParkingLotManager manager, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Saver saver = new Saver(channel, manager.lotCount());
+            try {
+                manager.visitLots(saver);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return saver.finish();
+        }
+    }
+
+    // Restores a saved state into a manager that has no lots yet
+    public static void restore(Path file, ParkingLotManager manager) throws IOException {
+        if (manager.lotCount() != 0) {
+            throw new IllegalStateException("State can only be restored into an empty manager");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a state file: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a state file: " + file);
+            }
+            int lots = header.getInt();
+            int trucks = header.getInt();
+            long indexStart = HEADER_BYTES + (long) trucks * TRUCK_BYTES;
+            if (lots < 0 || trucks < 0 || channel.size() != indexStart + (long) lots * LOT_BYTES) {
+                throw new IOException("Truncated state file: " + file);
+            }
+
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexStart,
+                    (long) lots * LOT_BYTES);
+            MappedByteBuffer window = null;
+            int windowEnd = 0; // Index of the first truck past the window
+            int truck = 0;
+            for (int i = 0; i < lots; i++) {
+                int capacity = index.getInt();
+                int truckLimit = index.getInt();
+                int waiting = index.getInt();
+                int ready = index.getInt();
+                int flags = index.getInt();
+                if (index.getInt() != truck || waiting < 0 || ready < 0 || trucks - truck < waiting + ready) {
+                    throw new IOException("Corrupt lot index at capacity " + capacity + ": " + file);
+                }
+
+                ParkingLotManager.ParkingLot lot = manager.restoreLot(capacity, truckLimit);
+                for (int n = 0; n < waiting + ready; n++, truck++) {
+                    if (truck == windowEnd) {
+                        int count = Math.min(WINDOW_TRUCKS, trucks - truck);
+                        window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                HEADER_BYTES + (long) truck * TRUCK_BYTES, (long) count * TRUCK_BYTES);
+                        windowEnd = truck + count;
+                    }
+                    manager.restoreTruck(lot, n >= waiting, window.getInt(), window.getInt(), window.getInt());
+                }
+                manager.insertRestored(lot, (flags & WAITING_LEDGER) != 0, (flags & READY_LEDGER) != 0);
+            }
+            if (truck != trucks) {
+                throw new IOException("Trucks left over after the last lot: " + file);
+            }
+        }
+    }
+
+    // Streams the trucks to the file as the lots are visited and keeps the index in memory until the end
+    private static final class Saver implements ParkingLotManager.LotVisitor {
+        private final FileChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER);
+        private final ByteBuffer index;
+        private int trucks;
+
+        Saver(FileChannel channel, int lots) throws IOException {
+            this.channel = channel;
+            this.index = ByteBuffer.allocateDirect(Math.multiplyExact(lots, LOT_BYTES));
+            channel.position(HEADER_BYTES);
+        }
+
+        @Override
+        public void lot(int loadCapacity, int truckLimit, boolean inWaitingLedger, boolean inReadyLedger,
+                int waiting, int ready) {
+            index.putInt(loadCapacity).putInt(truckLimit).putInt(waiting).putInt(ready)
+                    .putInt((inWaitingLedger ? WAITING_LEDGER : 0) | (inReadyLedger ? READY_LEDGER : 0))
+                    .putInt(trucks);
+        }
+
+        @Override
+        public void truck(int truckID, int currentLoad, int totalCapacity) {
+            if (out.remaining() < TRUCK_BYTES) {
+                try {
+                    flush(out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            out.putInt(truckID).putInt(currentLoad).putInt(totalCapacity);
+            trucks++;
+        }
+
+        // Writes the index and then the header; returns the file size
+        long finish() throws IOException {
+            flush(out);
+            flush(index);
+            long size = channel.position();
+            out.putLong(MAGIC).putInt(VERSION).putInt(index.capacity() / LOT_BYTES).putInt(trucks);
+            channel.position(0);
+            flush(out);
+            return size;
+        }
+
+        private void flush(ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+// Writes results as text lines through a BufferedWriter, the format of the expected output files
+public class TextResultSink implements ResultSink {
+    private final BufferedWriter writer;
+
+    public TextResultSink(BufferedWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void value(int value) throws IOException {
+        writer.write(String.valueOf(value));
+        writer.newLine();
+    }
+
+    @Override
+    public void pair(int first, int second) throws IOException {
+        writer.write(String.valueOf(first) + " " + String.valueOf(second));
+        writer.newLine();
+    }
+
+    @Override
+    public void placements(PlacementList placements) throws IOException {
+        if (placements.size() == 0) {
+            writer.write("-1");
+        }
+        for (int i = 0; i < placements.size(); i++) {
+            if (i > 0) {
+                writer.write(" - ");
+            }
+            writer.write(String.valueOf(placements.truckID(i)));
+            writer.write(' ');
+            writer.write(String.valueOf(placements.capacity(i)));
+        }
+        writer.newLine();
+    }
+
+    @Override
+    public void text(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Compiles a text command file (the format Main reads) into a binary trace that TraceRunner can replay
+// without tokenizing. Comments and blank lines are dropped; everything else keeps its order.
+public class TraceCompiler {
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java TraceCompiler <input file> <trace file>");
+            return;
+        }
+
+        Path input = Paths.get(args[0]);
+        Path trace = Paths.get(args[1]);
+
+        try {
+            long start = System.nanoTime();
+            long commands = compile(input, trace);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println("Compiled " + commands + " commands from " + Files.size(input) + " to "
+                    + Files.size(trace) + " bytes in " + elapsed / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.err.println("Error compiling trace: " + e.getMessage());
+        }
+    }
+
+    // Returns the number of commands written
+    public static long compile(Path input, Path trace) throws IOException {
+        long commands = 0;
+
+        try (MappedCommandReader reader = new MappedCommandReader(input);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(trace), 1 << 16)) {
+
+            out.write(TraceReader.MAGIC);
+
+            while (reader.next()) {
+                int opcode = reader.opcode();
+                out.write(opcode);
+
+                if (opcode == Opcode.UNKNOWN) {
+                    byte[] name = reader.command().getBytes(StandardCharsets.UTF_8);
+                    Varint.writeUnsigned(out, name.length);
+                    out.write(name);
+                } else {
+                    for (int i = 0; i < Opcode.arity(opcode); i++) {
+                        Varint.writeSigned(out, reader.arg(i));
+                    }
+                }
+                commands++;
+            }
+        }
+
+        return commands;
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a binary command trace written by TraceCompiler. Each record is a one-byte opcode followed by its
+// arguments as zigzag varints; unknown commands keep their lower-cased name as a length-prefixed UTF-8 string.
+public class TraceReader implements CommandReader {
+    // "TRC" followed by the format version
+    static final byte[] MAGIC = {'T', 'R', 'C', 1};
+
+    private static final int WINDOW_SIZE = 1 << 28;
+    private static final int MAX_ARGS = 2;
+    private static final int MAX_RECORD = 1 + MAX_ARGS * Varint.MAX_BYTES;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart; // File offset of the first byte in the window
+
+    private int opcode;
+    private final int[] args = new int[MAX_ARGS];
+    private int nameStart;
+    private int nameLength;
+
+    public TraceReader(Path traceFile) throws IOException {
+        this.channel = FileChannel.open(traceFile, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        map(0, 0);
+
+        for (byte b : MAGIC) {
+            if (!window.hasRemaining() || window.get() != b) {
+                channel.close();
+                throw new IOException(traceFile + " is not a command trace");
+            }
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (windowStart + window.position() >= fileSize) {
+            return false;
+        }
+        if (window.remaining() < MAX_RECORD && windowStart + window.limit() < fileSize) {
+            map(windowStart + window.position(), 0);
+        }
+
+        int recordStart = window.position();
+        opcode = window.get();
+        if (opcode < 0 || opcode >= Opcode.count()) {
+            throw new IOException("Corrupt trace: opcode " + opcode + " at offset " + (windowStart + recordStart));
+        }
+
+        if (opcode == Opcode.UNKNOWN) {
+            nameLength = Varint.getUnsigned(window);
+            if (window.remaining() < nameLength) {
+                // The name runs past the window; map again from this record with enough room for it
+                map(windowStart + recordStart, MAX_RECORD + nameLength);
+                window.get();
+                Varint.getUnsigned(window);
+            }
+            nameStart = window.position();
+            window.position(nameStart + nameLength);
+        } else {
+            for (int i = 0; i < Opcode.arity(opcode); i++) {
+                args[i] = Varint.getSigned(window);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int opcode() {
+        return opcode;
+    }
+
+    @Override
+    public int arg(int i) {
+        return args[i];
+    }
+
+    @Override
+    public String command() {
+        byte[] bytes = new byte[nameLength];
+        window.get(nameStart, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void map(long offset, int minSize) throws IOException {
+        long size = Math.min(Math.max(WINDOW_SIZE, minSize), fileSize - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        windowStart = offset;
+    }
+}
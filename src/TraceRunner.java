@@ -0,0 +1,94 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Replays a binary trace from TraceCompiler against ParkingLotManager. The output file is the same one Main
+// would write for the original text input.
+public class TraceRunner {
+    // Decoded values from the timing passes land here so the JIT cannot drop the work
+    private static volatile long blackhole;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java TraceRunner <trace file> <output file> [original text input]");
+            return;
+        }
+
+        Path trace = Paths.get(args[0]);
+        String outputFile = args[1];
+
+        try {
+            ParkingLotManager manager = new ParkingLotManager();
+
+            long start = System.nanoTime();
+            try (TraceReader reader = new TraceReader(trace);
+                 ResultSink out = new DirectOutputWriter(Paths.get(outputFile))) {
+                Main.run(manager, reader, out);
+            }
+            long replay = System.nanoTime() - start;
+
+            // Decoding alone, to compare against what tokenizing the text costs
+            long decode = timeTraceDecode(trace);
+
+            System.out.println("Replay completed in " + millis(replay) + " ms, " + millis(decode)
+                    + " ms of it decoding the trace. Outputs are written to " + outputFile);
+
+            if (args.length > 2) {
+                long parse = timeTextParse(args[2]);
+                System.out.println("Tokenizing the text input takes " + millis(parse) + " ms, so precompiling saves "
+                        + millis(parse - decode) + " ms per replay");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long timeTraceDecode(Path trace) throws IOException {
+        long start = System.nanoTime();
+        try (TraceReader reader = new TraceReader(trace)) {
+            blackhole = decodeAll(reader);
+        }
+        return System.nanoTime() - start;
+    }
+
+    // Same tokenizing work Main does by default for every line, without executing anything
+    private static long timeTextParse(String inputFile) throws IOException {
+        long start = System.nanoTime();
+        long checksum = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int opcode = Opcode.fromName(parts[0].toLowerCase());
+                checksum += opcode;
+                for (int i = 0; i < Opcode.arity(opcode); i++) {
+                    checksum += Integer.parseInt(parts[i + 1]);
+                }
+            }
+        }
+        blackhole = checksum;
+        return System.nanoTime() - start;
+    }
+
+    private static long decodeAll(CommandReader reader) throws IOException {
+        long checksum = 0;
+        while (reader.next()) {
+            int opcode = reader.opcode();
+            checksum += opcode;
+            for (int i = 0; i < Opcode.arity(opcode); i++) {
+                checksum += reader.arg(i);
+            }
+        }
+        return checksum;
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Ledger engine backed by java.util.TreeMap, the reference point for the custom engines. Entries are objects
+// registered in a slot table so they can be addressed by int handles. TreeMap keeps no subtree aggregates, so the
+// weight sums walk the matching entries.
+public class TreeMapLedgerEngine<V> implements LedgerEngine<V> {
+    private static final class Entry {
+        final int key;
+        final int slot;
+        Object value;
+        int weight;
+
+        Entry(int key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+
+    private final TreeMap<Integer, Entry> map = new TreeMap<>();
+    private Entry[] slots = new Entry[16];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int highWater;
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public int find(int key) {
+        return slotOf(map.get(key));
+    }
+
+    @Override
+    public int first() {
+        return slotOf(map.firstEntry());
+    }
+
+    @Override
+    public int floor(int key) {
+        return slotOf(map.floorEntry(key));
+    }
+
+    @Override
+    public int lower(int key) {
+        return slotOf(map.lowerEntry(key));
+    }
+
+    @Override
+    public int ceiling(int key) {
+        return slotOf(map.ceilingEntry(key));
+    }
+
+    @Override
+    public int higher(int key) {
+        return slotOf(map.higherEntry(key));
+    }
+
+    @Override
+    public int successor(int node) {
+        return higher(slots[node].key);
+    }
+
+    @Override
+    public int key(int node) {
+        return slots[node].key;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V value(int node) {
+        return (V) slots[node].value;
+    }
+
+    @Override
+    public int weight(int node) {
+        return slots[node].weight;
+    }
+
+    @Override
+    public void setWeight(int node, int weight) {
+        slots[node].weight = weight;
+    }
+
+    @Override
+    public int insert(int key, V value, int weight) {
+        if (map.containsKey(key)) {
+            return NIL;
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == slots.length) {
+                slots = Arrays.copyOf(slots, 2 * slots.length);
+            }
+            slot = highWater++;
+        }
+        Entry entry = new Entry(key, slot);
+        entry.value = value;
+        entry.weight = weight;
+        slots[slot] = entry;
+        map.put(key, entry);
+        return slot;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V delete(int key) {
+        Entry entry = map.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        slots[entry.slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+        }
+        freeSlots[freeCount++] = entry.slot;
+        return (V) entry.value;
+    }
+
+    @Override
+    public int sumGreater(int key) {
+        int total = 0;
+        for (Entry entry : map.tailMap(key, false).values()) {
+            total += entry.weight;
+        }
+        return total;
+    }
+
+    @Override
+    public int sumBetween(int low, int high) {
+        if (low > high) {
+            return 0;
+        }
+        int total = 0;
+        for (Entry entry : map.subMap(low, true, high, true).values()) {
+            total += entry.weight;
+        }
+        return total;
+    }
+
+    private static int slotOf(Map.Entry<Integer, Entry> entry) {
+        return entry == null ? NIL : entry.getValue().slot;
+    }
+
+    private static int slotOf(Entry entry) {
+        return entry == null ? NIL : entry.slot;
+    }
+}
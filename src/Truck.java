@@ -2,14 +2,12 @@ public class Truck {
         private final int truckID;
         private int currentLoad;
         private final int totalCapacity;
-        Truck next; // Pointer to the next truck in the linked list
 
-        // Create truck with linked list implementation
+        // Create truck
         public Truck(int truckID, int currentLoad, int totalCapacity) {
             this.truckID = truckID;
             this.currentLoad = currentLoad;
             this.totalCapacity = totalCapacity;
-            this.next = null; // Initially, there's no next truck
         }
 
         public Truck(int truckID, int totalCapacity) {
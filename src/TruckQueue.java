@@ -0,0 +1,20 @@
+// FIFO of truck handles for one lot section. Adding at the tail and removing the head are O(1). A section is
+// walked from the head without removing anything through a cursor: start() is the cursor at the head, truck()
+// the truck under a cursor and next() the cursor after it; size() steps visit every truck.
+public interface TruckQueue {
+    void add(int truck);
+
+    int head();
+
+    int tail();
+
+    int removeHead();
+
+    int size();
+
+    int start();
+
+    int truck(int cursor);
+
+    int next(int cursor);
+}
@@ -0,0 +1,59 @@
+// Truck records addressed by int handles. A record holds the truck's ID, current load and total capacity, plus a
+// link that chains freed records and, in the off-heap store, the trucks of a lot queue.
+public interface TruckStore {
+    int NONE = -1; // The handle that ends a queue or the free list
+
+    int allocate(int truckID, int currentLoad, int totalCapacity);
+
+    void free(int handle);
+
+    int id(int handle);
+
+    int currentLoad(int handle);
+
+    void setCurrentLoad(int handle, int currentLoad);
+
+    int totalCapacity(int handle);
+
+    int next(int handle);
+
+    void setNext(int handle, int next);
+
+    // A new, empty queue for one lot section. Lots queue their trucks in int ring buffers unless the store
+    // links them through its records.
+    default TruckQueue newQueue() {
+        return new RingTruckQueue();
+    }
+
+    // Trucks currently stored
+    int size();
+
+    // Bytes reserved for records on the Java heap and outside it
+    long heapBytes();
+
+    long offHeapBytes();
+
+    default int remainingLoad(int handle) {
+        return totalCapacity(handle) - currentLoad(handle);
+    }
+
+    // Same rule as Truck.loadTruck: a load that exactly fills the truck delivers it and leaves it empty
+    default int load(int handle, int loadAmount) {
+        if (loadAmount == remainingLoad(handle)) {
+            setCurrentLoad(handle, 0);
+        } else {
+            setCurrentLoad(handle, currentLoad(handle) + loadAmount);
+        }
+        return loadAmount;
+    }
+
+    // Parses the --truck-store option: "heap" (the default) or "offheap"
+    static TruckStore open(String option) {
+        if (option == null || option.equals("heap")) {
+            return new HeapTruckStore();
+        } else if (option.equals("offheap")) {
+            return new OffHeapTruckStore();
+        }
+        throw new IllegalArgumentException("Unknown truck store: " + option);
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// LEB128 variable-length integers. Signed values are zigzag encoded so small negatives stay short.
+public final class Varint {
+    // Longest encoding of a 32-bit value
+    public static final int MAX_BYTES = 5;
+
+    private Varint() {
+    }
+
+    public static void writeUnsigned(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static void writeSigned(OutputStream out, int value) throws IOException {
+        writeUnsigned(out, (value << 1) ^ (value >> 31));
+    }
+
+    public static void putUnsigned(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void putSigned(ByteBuffer buffer, int value) {
+        putUnsigned(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getUnsigned(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 7 * MAX_BYTES) {
+                throw new IllegalStateException("Malformed varint at position " + buffer.position());
+            }
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    public static int getSigned(ByteBuffer buffer) {
+        int value = getUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,77 @@
+import java.nio.ByteBuffer;
+
+// The binary protocol SimulatorServer speaks. Every message is a frame: the length of its body as an unsigned
+// varint, then the body. A request body is an Opcode byte followed by the command's arguments as signed varints.
+// Every request gets exactly one response, in request order, so a client may pipeline as many requests as it
+// likes. A response body is a type byte followed by:
+//   NOTHING     nothing (create_parking_lot, delete_parking_lot)
+//   VALUE       a signed varint (add_truck, the counts, or -1 for a ready that found no lot)
+//   PAIR        two signed varints, truck ID and lot capacity (a successful ready)
+//   PLACEMENTS  an unsigned varint count, then a truck ID and a capacity, signed, per moved truck (load)
+//   ERROR       a UTF-8 message
+public final class WireProtocol {
+    public static final int NOTHING = 0;
+    public static final int VALUE = 1;
+    public static final int PAIR = 2;
+    public static final int PLACEMENTS = 3;
+    public static final int ERROR = 4;
+
+    // Longest request body: an opcode and two arguments
+    public static final int MAX_REQUEST = 1 + 2 * Varint.MAX_BYTES;
+
+    private WireProtocol() {
+    }
+
+    public static int unsignedSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static int signedSize(int value) {
+        return unsignedSize((value << 1) ^ (value >> 31));
+    }
+
+    // Length of the frame starting at the buffer's position, which moves to the body if the whole frame is there.
+    // Returns -1 and leaves the position alone if the frame is incomplete. A frame longer than maxLength is
+    // rejected as soon as its length has arrived.
+    public static int openFrame(ByteBuffer buffer, int maxLength) {
+        int position = buffer.position();
+        int length = 0;
+        for (int shift = 0; position < buffer.limit(); shift += 7) {
+            if (shift >= 7 * Varint.MAX_BYTES) {
+                throw new IllegalStateException("Malformed frame length");
+            }
+            byte b = buffer.get(position++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (length < 0 || length > maxLength) {
+                    throw new IllegalStateException("Bad frame length: " + length);
+                }
+                if (buffer.limit() - position < length) {
+                    return -1;
+                }
+                buffer.position(position);
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    // Appends a request frame; the buffer needs room for MAX_REQUEST plus the length byte
+    public static void putRequest(ByteBuffer buffer, int opcode, int arg0, int arg1) {
+        int arity = Opcode.arity(opcode);
+        int length = 1 + (arity > 0 ? signedSize(arg0) : 0) + (arity > 1 ? signedSize(arg1) : 0);
+        Varint.putUnsigned(buffer, length);
+        buffer.put((byte) opcode);
+        if (arity > 0) {
+            Varint.putSigned(buffer, arg0);
+        }
+        if (arity > 1) {
+            Varint.putSigned(buffer, arg1);
+        }
+    }
+}
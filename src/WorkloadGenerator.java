@@ -0,0 +1,333 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+// Streams a synthetic command file in Main's format. The lots are created up front; after that every command is
+// drawn from a weighted mix and written straight into a fixed buffer, so memory depends on the number of lots and
+// not on the number of commands. The same options and seed always give the same file.
+public class WorkloadGenerator {
+    private static final String USAGE = "Usage: java WorkloadGenerator <output file or -> <commands> [--lots=N]"
+            + " [--max-capacity=N] [--capacities=uniform|zipf[:s]|clustered[:k]] [--trucks-per-lot=N]"
+            + " [--mix=add:40,ready:25,load:25,count:5,range:0,churn:5]"
+            + " [--load-size=fixed:k|uniform:k|geometric:k] [--seed=N]";
+
+    // Mix entries, in the order --mix names them
+    private static final String[] KINDS = {"add", "ready", "load", "count", "range", "churn"};
+    private static final int ADD = 0;
+    private static final int READY = 1;
+    private static final int LOAD = 2;
+    private static final int COUNT = 3;
+    private static final int RANGE = 4;
+    private static final int CHURN = 5; // Deletes a lot and creates another in its place, two commands
+
+    private static final byte[][] NAMES = new byte[Opcode.count()][];
+
+    static {
+        for (int i = 1; i < NAMES.length; i++) {
+            NAMES[i] = Opcode.name(i).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final SplittableRandom random;
+    private final int maxCapacity;
+    private final String capacities;
+    private final double zipfExponent;
+    private final int[] clusterCenters;
+    private final int trucksPerLot;
+    private final int[] mix = new int[KINDS.length];
+    private final String loadSize;
+    private final int loadTrucks;
+
+    // Capacities of the lots that currently exist; churn swaps one for a fresh one
+    private int[] lots;
+    private final HashSet<Integer> live = new HashSet<>();
+    private int nextTruckID = 1;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        long commands = Long.parseLong(args[1]);
+        int lots = 1000;
+        int maxCapacity = 1_000_000;
+        String capacities = "uniform";
+        int trucksPerLot = 8;
+        String mix = "add:40,ready:25,load:25,count:5,range:0,churn:5";
+        String loadSize = "uniform:4";
+        long seed = 1;
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--lots=")) {
+                lots = Integer.parseInt(arg.substring("--lots=".length()));
+            } else if (arg.startsWith("--max-capacity=")) {
+                maxCapacity = Integer.parseInt(arg.substring("--max-capacity=".length()));
+            } else if (arg.startsWith("--capacities=")) {
+                capacities = arg.substring("--capacities=".length());
+            } else if (arg.startsWith("--trucks-per-lot=")) {
+                trucksPerLot = Integer.parseInt(arg.substring("--trucks-per-lot=".length()));
+            } else if (arg.startsWith("--mix=")) {
+                mix = arg.substring("--mix=".length());
+            } else if (arg.startsWith("--load-size=")) {
+                loadSize = arg.substring("--load-size=".length());
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (lots < 1 || lots > maxCapacity / 2) {
+            System.out.println("--lots must be between 1 and half of --max-capacity");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (OutputStream out = args[0].equals("-") ? System.out : new FileOutputStream(args[0])) {
+            WorkloadGenerator generator = new WorkloadGenerator(out, seed, maxCapacity, capacities, trucksPerLot, mix,
+                    loadSize);
+            long written = generator.generate(lots, commands);
+            if (out != System.out) {
+                System.out.println("Wrote " + written + " commands to " + args[0] + " in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing workload: " + e.getMessage());
+        }
+    }
+
+    public WorkloadGenerator(OutputStream out, long seed, int maxCapacity, String capacities, int trucksPerLot,
+                             String mix, String loadSize) {
+        this.out = out;
+        this.random = new SplittableRandom(seed);
+        this.maxCapacity = maxCapacity;
+        this.trucksPerLot = trucksPerLot;
+
+        this.capacities = kind(capacities);
+        if (this.capacities.equals("zipf")) {
+            this.zipfExponent = parameter(capacities, 1.0);
+            this.clusterCenters = null;
+        } else if (this.capacities.equals("clustered")) {
+            this.zipfExponent = 0;
+            this.clusterCenters = new int[(int) parameter(capacities, 8)];
+            for (int i = 0; i < clusterCenters.length; i++) {
+                clusterCenters[i] = 1 + random.nextInt(maxCapacity);
+            }
+        } else if (this.capacities.equals("uniform")) {
+            this.zipfExponent = 0;
+            this.clusterCenters = null;
+        } else {
+            throw new IllegalArgumentException("Unknown capacity distribution: " + capacities);
+        }
+
+        for (String entry : mix.split(",")) {
+            String name = kind(entry);
+            int weight = (int) parameter(entry, 0);
+            int index = Arrays.asList(KINDS).indexOf(name);
+            if (index < 0 || weight < 0) {
+                throw new IllegalArgumentException("Bad mix entry: " + entry);
+            }
+            this.mix[index] = weight;
+        }
+        for (int i = 1; i < KINDS.length; i++) {
+            this.mix[i] += this.mix[i - 1]; // Cumulative, for drawing
+        }
+        if (this.mix[KINDS.length - 1] == 0) {
+            throw new IllegalArgumentException("The mix has no weight: " + mix);
+        }
+
+        this.loadSize = kind(loadSize);
+        this.loadTrucks = (int) parameter(loadSize, 4);
+        if (!this.loadSize.equals("fixed") && !this.loadSize.equals("uniform") && !this.loadSize.equals("geometric")) {
+            throw new IllegalArgumentException("Unknown load size distribution: " + loadSize);
+        }
+    }
+
+    // Writes the lot creations and then commands until the total is reached; returns the number written
+    public long generate(int lotCount, long commands) throws IOException {
+        lots = new int[lotCount];
+        long written = 0;
+        for (int i = 0; i < lotCount && written < commands; i++) {
+            lots[i] = freshCapacity();
+            writeCreate(lots[i]);
+            written++;
+        }
+
+        int total = mix[KINDS.length - 1];
+        while (written < commands) {
+            int draw = random.nextInt(total);
+            int kind = 0;
+            while (draw >= mix[kind]) {
+                kind++;
+            }
+
+            int capacity = lots[random.nextInt(lots.length)];
+            switch (kind) {
+                case ADD:
+                    write(Opcode.ADD_TRUCK, nextTruckID++, capacity);
+                    break;
+                case READY:
+                    write(Opcode.READY, capacity);
+                    break;
+                case LOAD:
+                    write(Opcode.LOAD, capacity, loadAmount(capacity));
+                    break;
+                case COUNT:
+                    write(Opcode.COUNT, capacity);
+                    break;
+                case RANGE:
+                    int other = lots[random.nextInt(lots.length)];
+                    write(Opcode.COUNT_RANGE, Math.min(capacity, other), Math.max(capacity, other));
+                    break;
+                default: // CHURN
+                    int slot = random.nextInt(lots.length);
+                    write(Opcode.DELETE_PARKING_LOT, lots[slot]);
+                    live.remove(lots[slot]);
+                    if (written + 1 == commands) {
+                        break; // The last command; there is no room for the replacement
+                    }
+                    lots[slot] = freshCapacity();
+                    writeCreate(lots[slot]);
+                    written++;
+                    break;
+            }
+            written++;
+        }
+        flush();
+        out.flush();
+        return written;
+    }
+
+    private void writeCreate(int capacity) throws IOException {
+        write(Opcode.CREATE_PARKING_LOT, capacity, 1 + random.nextInt(trucksPerLot));
+    }
+
+    // A capacity from the distribution that no current lot has. A steep distribution may not have enough distinct
+    // values, so after repeated collisions the capacity is drawn uniformly.
+    private int freshCapacity() {
+        for (int attempt = 0; ; attempt++) {
+            int capacity = attempt < 64 ? drawCapacity() : 1 + random.nextInt(maxCapacity);
+            if (live.add(capacity)) {
+                return capacity;
+            }
+        }
+    }
+
+    private int drawCapacity() {
+        switch (capacities) {
+            case "zipf": {
+                // Inverse of the continuous power law on [1, maxCapacity + 1), floored
+                double u = random.nextDouble();
+                double s = zipfExponent;
+                double x;
+                if (Math.abs(s - 1) < 1e-9) {
+                    x = Math.pow(maxCapacity + 1.0, u);
+                } else {
+                    x = Math.pow((Math.pow(maxCapacity + 1.0, 1 - s) - 1) * u + 1, 1 / (1 - s));
+                }
+                return (int) Math.min(maxCapacity, Math.max(1, x));
+            }
+            case "clustered": {
+                // Normal around a random center, with a spread of 1% of the range
+                int center = clusterCenters[random.nextInt(clusterCenters.length)];
+                double x = center + nextGaussian() * Math.max(1, maxCapacity / 100.0);
+                return (int) Math.min(maxCapacity, Math.max(1, Math.round(x)));
+            }
+            default:
+                return 1 + random.nextInt(maxCapacity);
+        }
+    }
+
+    // Whole truckloads for a number of trucks drawn from the load size distribution, minus part of one
+    private int loadAmount(int capacity) {
+        long trucks;
+        switch (loadSize) {
+            case "fixed":
+                trucks = loadTrucks;
+                break;
+            case "geometric":
+                trucks = 1 + (long) (Math.log(1 - random.nextDouble()) / Math.log(1 - 1.0 / Math.max(1, loadTrucks)));
+                break;
+            default:
+                trucks = 1 + random.nextInt(Math.max(1, loadTrucks));
+                break;
+        }
+        long amount = trucks * capacity - random.nextInt(capacity);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, amount));
+    }
+
+    private double nextGaussian() {
+        // Box-Muller, one value per call so the stream depends only on the seed
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    // "name:parameter" options
+    private static String kind(String option) {
+        int colon = option.indexOf(':');
+        return colon < 0 ? option : option.substring(0, colon);
+    }
+
+    private static double parameter(String option, double fallback) {
+        int colon = option.indexOf(':');
+        return colon < 0 ? fallback : Double.parseDouble(option.substring(colon + 1));
+    }
+
+    private void write(int opcode, int arg) throws IOException {
+        ensureRoom();
+        putName(opcode);
+        putInt(arg);
+        buffer[position++] = '\n';
+    }
+
+    private void write(int opcode, int arg0, int arg1) throws IOException {
+        ensureRoom();
+        putName(opcode);
+        putInt(arg0);
+        buffer[position++] = ' ';
+        putInt(arg1);
+        buffer[position++] = '\n';
+    }
+
+    // Every command fits in 64 bytes: a name of at most 18 and two numbers of at most 11
+    private void ensureRoom() throws IOException {
+        if (buffer.length - position < 64) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void putName(int opcode) {
+        byte[] name = NAMES[opcode];
+        System.arraycopy(name, 0, buffer, position, name.length);
+        position += name.length;
+        buffer[position++] = ' ';
+    }
+
+    // Non-negative values only, which is all the generator writes
+    private void putInt(int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        position += digits;
+        for (int i = position - 1; i >= position - digits; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}